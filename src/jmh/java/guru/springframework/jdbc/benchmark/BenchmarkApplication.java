@@ -0,0 +1,69 @@
+package guru.springframework.jdbc.benchmark;
+
+import guru.springframework.jdbc.SdjpaJdbcApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Starts the application for a benchmark trial with SQL logging turned off, on its own in-memory H2 database (MySQL
+ * mode, like the default profile) or on the databases of the given profiles.
+ */
+final class BenchmarkApplication {
+
+    private static final List<String> QUIET_LOGGING = List.of(
+            "logging.level.org.hibernate.SQL=warn",
+            "spring.jpa.properties.hibernate.format_sql=false",
+            "logging.level.root=warn",
+            "logging.level.org.hibernate.type.descriptor.sql=warn");
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String... properties) {
+        return run(h2(properties), WebApplicationType.NONE);
+    }
+
+    /**
+     * Like {@link #start(String...)} with the embedded web server listening on a random port, see {@link #port}.
+     */
+    static ConfigurableApplicationContext startWeb(String... properties) {
+        List<String> defaults = h2(properties);
+        defaults.add("server.port=0");
+        return run(defaults, WebApplicationType.SERVLET);
+    }
+
+    static int port(ConfigurableApplicationContext context) {
+        return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+    }
+
+    /**
+     * @param profiles comma separated, e.g. {@code local,perf} for the MySQL database of the local profile
+     */
+    static ConfigurableApplicationContext startWithProfiles(String profiles, String... properties) {
+        List<String> defaults = new ArrayList<>(QUIET_LOGGING);
+        defaults.add("spring.profiles.active=" + profiles);
+        defaults.addAll(Arrays.asList(properties));
+        return run(defaults, WebApplicationType.NONE);
+    }
+
+    private static List<String> h2(String... properties) {
+        List<String> defaults = new ArrayList<>(List.of(
+                "spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE;MODE=MYSQL;" +
+                        "DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE"));
+        defaults.addAll(QUIET_LOGGING);
+        defaults.addAll(Arrays.asList(properties));
+        return defaults;
+    }
+
+    private static ConfigurableApplicationContext run(List<String> properties, WebApplicationType webApplicationType) {
+        // como argumentos de linea de comandos para que tengan prioridad sobre application.properties
+        return new SpringApplicationBuilder(SdjpaJdbcApplication.class)
+                .web(webApplicationType)
+                .run(properties.stream().map(property -> "--" + property).toArray(String[]::new));
+    }
+}
@@ -0,0 +1,128 @@
+package guru.springframework.jdbc.benchmark;
+
+import guru.springframework.jdbc.dao.AuthorDao;
+import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.domain.Book;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the catalog REST API over HTTP on the default in-memory H2 database, with concurrent clients.
+ * Throughput is reported in requests per millisecond and the sample time mode reports the latency percentiles,
+ * p0.99 included:
+ * <pre>
+ * mvn -Pbenchmark compile exec:exec -Dbenchmark.args="CatalogApiBenchmark -t 32"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class CatalogApiBenchmark {
+
+    private static final String PUBLISHER = "CatalogApiBenchmark";
+
+    @Param("10000")
+    int datasetSize;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private String baseUrl;
+    private List<Long> bookIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.startWeb("sdjpa.search.index-directory=");
+        baseUrl = "http://localhost:" + BenchmarkApplication.port(context) + "/api";
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        List<Author> authors = new ArrayList<>();
+        for (int i = 0; i < datasetSize / 10; i++) {
+            Author author = new Author();
+            author.setFirstName("Api" + i);
+            author.setLastName("Benchmark");
+            authors.add(author);
+        }
+        List<Author> saved = context.getBean(AuthorDao.class).saveAll(authors);
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < datasetSize; i++) {
+            Book book = new Book("Catalog API " + i, "API" + i, PUBLISHER);
+            book.setAuthor(saved.get(i % saved.size()));
+            books.add(book);
+        }
+        bookIds = context.getBean(BookDao.class).saveAll(books).stream().map(Book::getId).toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int getBook() throws Exception {
+        return send(get("/books/" + randomBookId()), 200);
+    }
+
+    /**
+     * Revalidation of a cached copy, answered with 304 from the version.
+     */
+    @Benchmark
+    public int revalidateBook() throws Exception {
+        long id = randomBookId();
+        return send(get("/books/" + id).header("If-None-Match", "\"book-" + id + "-0\""), 304);
+    }
+
+    @Benchmark
+    public int listBooks() throws Exception {
+        return send(get("/books?pageSize=50"), 200);
+    }
+
+    @Benchmark
+    public int searchBooks() throws Exception {
+        return send(get("/books/search?q=catalog+api+" + ThreadLocalRandom.current().nextInt(datasetSize)), 200);
+    }
+
+    /**
+     * The whole catalog as NDJSON, {@code datasetSize} rows per request.
+     */
+    @Benchmark
+    public long streamBooks() throws Exception {
+        HttpResponse<InputStream> response = client.send(get("/books/stream").build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            return body.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private long randomBookId() {
+        return bookIds.get(ThreadLocalRandom.current().nextInt(bookIds.size()));
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET();
+    }
+
+    private int send(HttpRequest.Builder request, int expectedStatus) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != expectedStatus) {
+            throw new IllegalStateException("Unexpected status " + response.statusCode() + " for " + response.uri());
+        }
+        return response.body().length;
+    }
+}
@@ -0,0 +1,112 @@
+package guru.springframework.jdbc.benchmark;
+
+import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.transfer.CatalogExporter;
+import guru.springframework.jdbc.transfer.CatalogImporter;
+import guru.springframework.jdbc.transfer.TransferProgress;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second of a catalog import and export of a generated file of a million books by ten thousand authors.
+ * Every import iteration starts without the books, so all of them are inserts; the authors already exist. The export
+ * reads the books of the first import.
+ * <pre>
+ * mvn -Pbenchmark compile exec:exec -Dbenchmark.args="CatalogTransferBenchmark -p format=csv"
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CatalogTransferBenchmark {
+
+    static final int ROWS = 1_000_000;
+
+    private static final int AUTHORS = 10_000;
+    private static final String PUBLISHER = "CatalogTransferBenchmark";
+
+    @State(Scope.Benchmark)
+    public static class Catalog {
+
+        @Param({"csv", "jsonl"})
+        String format;
+
+        ConfigurableApplicationContext context;
+        CatalogImporter importer;
+        CatalogExporter exporter;
+        BookDao bookDao;
+        Path directory;
+        Path file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            // índice de búsqueda en memoria y sin reconstruir, la sincronización por lote sí cuenta
+            context = BenchmarkApplication.start("sdjpa.search.index-directory=",
+                    "sdjpa.search.rebuild-on-startup=false");
+            importer = context.getBean(CatalogImporter.class);
+            exporter = context.getBean(CatalogExporter.class);
+            bookDao = context.getBean(BookDao.class);
+            directory = Files.createTempDirectory("catalog-transfer");
+            file = generate(directory.resolve("catalog." + format), format);
+            importer.importFile(file);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            bookDao.deleteBooksByPublisher(PUBLISHER);
+            context.close();
+            FileSystemUtils.deleteRecursively(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class EmptyCatalog {
+
+        @Setup(Level.Iteration)
+        public void setUp(Catalog catalog) {
+            catalog.bookDao.deleteBooksByPublisher(PUBLISHER);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public TransferProgress importCatalog(Catalog catalog, EmptyCatalog empty) {
+        return catalog.importer.importFile(catalog.file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public TransferProgress exportCatalog(Catalog catalog) {
+        return catalog.exporter.export(catalog.directory.resolve("export." + catalog.format));
+    }
+
+    private static Path generate(Path file, String format) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            if (format.equals("csv")) {
+                out.write("isbn,title,publisher,authorFirstName,authorLastName");
+                out.newLine();
+            }
+            for (int i = 0; i < ROWS; i++) {
+                String isbn = "BENCH" + i;
+                String title = "Catalog book " + i;
+                String lastName = "Author" + i % AUTHORS;
+                out.write(format.equals("csv")
+                        ? isbn + "," + title + "," + PUBLISHER + ",Transfer," + lastName
+                        : "{\"isbn\":\"" + isbn + "\",\"title\":\"" + title + "\",\"publisher\":\"" + PUBLISHER +
+                        "\",\"authorFirstName\":\"Transfer\",\"authorLastName\":\"" + lastName + "\"}");
+                out.newLine();
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,113 @@
+package guru.springframework.jdbc.benchmark;
+
+import guru.springframework.jdbc.dao.AuthorDao;
+import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.domain.Book;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Same lookup through every access style of the DAOs: JPQL, named query, Criteria and native query, for authors by
+ * name and books by title. Throughput and latency percentiles (sample mode) per method, run with {@code -prof gc}
+ * for the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DaoAccessStyleBenchmark {
+
+    @Param("1000")
+    int datasetSize;
+
+    /**
+     * Off by default so every call reaches the database and the access styles are compared on equal terms.
+     */
+    @Param("false")
+    boolean secondLevelCache;
+
+    private ConfigurableApplicationContext context;
+    private AuthorDao authorDao;
+    private BookDao bookDao;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start(
+                "spring.jpa.properties.hibernate.cache.use_second_level_cache=" + secondLevelCache,
+                "spring.jpa.properties.hibernate.cache.use_query_cache=" + secondLevelCache);
+        authorDao = context.getBean(AuthorDao.class);
+        bookDao = context.getBean(BookDao.class);
+
+        List<Author> authors = new ArrayList<>();
+        for (int i = 0; i < datasetSize; i++) {
+            Author author = new Author();
+            author.setFirstName("First" + i);
+            author.setLastName("Last" + i);
+            author.addBook(new Book("Title " + i, "BENCH" + i, "Benchmark"));
+            authors.add(author);
+        }
+        authorDao.saveAll(authors);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Author authorJpql() {
+        int i = nextIndex();
+        return authorDao.findAuthorByName("First" + i, "Last" + i);
+    }
+
+    @Benchmark
+    public Optional<Author> authorNamedQuery() {
+        int i = nextIndex();
+        return authorDao.findByNamedName("First" + i, "Last" + i);
+    }
+
+    @Benchmark
+    public Author authorCriteria() {
+        int i = nextIndex();
+        return authorDao.findAuthorByNameCriteria("First" + i, "Last" + i);
+    }
+
+    @Benchmark
+    public Author authorNative() {
+        int i = nextIndex();
+        return authorDao.findAuthorByNameNative("First" + i, "Last" + i);
+    }
+
+    @Benchmark
+    public Book bookJpql() {
+        return bookDao.findBookByTitle("Title " + nextIndex());
+    }
+
+    @Benchmark
+    public Optional<Book> bookNamedQuery() {
+        return bookDao.findByTitleNamedQuery("Title " + nextIndex());
+    }
+
+    @Benchmark
+    public Book bookCriteria() {
+        return bookDao.findBookByTitleCriteria("Title " + nextIndex());
+    }
+
+    @Benchmark
+    public Book bookNative() {
+        return bookDao.findBookByTitleNative("Title " + nextIndex());
+    }
+
+    private int nextIndex() {
+        return ThreadLocalRandom.current().nextInt(datasetSize);
+    }
+}
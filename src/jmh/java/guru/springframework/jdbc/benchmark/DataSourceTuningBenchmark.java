@@ -0,0 +1,93 @@
+package guru.springframework.jdbc.benchmark;
+
+import guru.springframework.jdbc.dao.AuthorDao;
+import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.domain.Book;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DAO batch insert and lookup paths on the MySQL database of the {@code local} profile, with the default pool and
+ * driver settings and with the {@code perf} profile on top. Needs the MySQL server of {@code application-local}:
+ * <pre>
+ * mvn -Pbenchmark compile exec:exec -Dbenchmark.args="DataSourceTuningBenchmark -t 8"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DataSourceTuningBenchmark {
+
+    private static final String PUBLISHER = "DataSourceTuningBenchmark";
+
+    @Param({"local", "local,perf"})
+    String profiles;
+
+    @Param("1000")
+    int datasetSize;
+
+    @Param("100")
+    int batchSize;
+
+    private final AtomicLong isbnSequence = new AtomicLong();
+
+    private ConfigurableApplicationContext context;
+    private AuthorDao authorDao;
+    private BookDao bookDao;
+    private List<Long> authorIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // sin cache de segundo nivel, cada busqueda llega a la base de datos
+        context = BenchmarkApplication.startWithProfiles(profiles,
+                "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                "spring.jpa.properties.hibernate.cache.use_query_cache=false");
+        authorDao = context.getBean(AuthorDao.class);
+        bookDao = context.getBean(BookDao.class);
+
+        List<Author> authors = new ArrayList<>();
+        for (int i = 0; i < datasetSize; i++) {
+            Author author = new Author();
+            author.setFirstName("Tuning" + i);
+            author.setLastName("Benchmark" + System.nanoTime());
+            authors.add(author);
+        }
+        authorIds = authorDao.saveAll(authors).stream().map(Author::getId).toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bookDao.deleteBooksByPublisher(PUBLISHER);
+        authorDao.deleteAuthorsByIds(authorIds);
+        context.close();
+    }
+
+    @Benchmark
+    public List<Book> saveAllBatch() {
+        List<Book> books = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            books.add(new Book("Tuning " + i, "TUNING" + isbnSequence.incrementAndGet(), PUBLISHER));
+        }
+        return bookDao.saveAll(books);
+    }
+
+    @Benchmark
+    public Author getById() {
+        return authorDao.getById(authorIds.get(ThreadLocalRandom.current().nextInt(authorIds.size())));
+    }
+
+    @Benchmark
+    public List<Author> listByLastName() {
+        return authorDao.listAuthorByLastNameLike("Benchmark", 10, null).getContent();
+    }
+}
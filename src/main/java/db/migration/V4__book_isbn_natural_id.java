@@ -0,0 +1,100 @@
+package db.migration;
+
+import org.flywaydb.core.api.FlywayException;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Rewrites the stored ISBNs in their canonical form and adds the {@code book_isbn_uq} unique index. The rules are a
+ * copy of {@code IsbnNormalizer} as it was when the migration was written, so later changes to the normalizer do not
+ * change what this version did. Books that only differed in the spelling of their ISBN fail the migration before
+ * anything is written, one of them has to be removed by hand first.
+ */
+public class V4__book_isbn_natural_id extends BaseJavaMigration {
+
+    private static final Pattern SEPARATORS = Pattern.compile("[\\s-]");
+    private static final Pattern ISBN_10 = Pattern.compile("\\d{9}[\\dX]");
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        Connection connection = context.getConnection();
+        Map<String, List<Long>> idsByIsbn = new LinkedHashMap<>();
+        Map<Long, String> changed = new LinkedHashMap<>();
+
+        try (Statement select = connection.createStatement();
+             ResultSet rows = select.executeQuery("select id, isbn from book where isbn is not null")) {
+            while (rows.next()) {
+                long id = rows.getLong(1);
+                String isbn = rows.getString(2);
+                String normalized = normalize(isbn);
+                idsByIsbn.computeIfAbsent(normalized, key -> new ArrayList<>()).add(id);
+                if (!normalized.equals(isbn)) {
+                    changed.put(id, normalized);
+                }
+            }
+        }
+
+        // se comprueba antes de escribir, así el índice único nunca falla con un error del motor
+        List<String> duplicates = new ArrayList<>();
+        idsByIsbn.forEach((isbn, ids) -> {
+            if (ids.size() > 1) {
+                duplicates.add(isbn + " (book ids " + ids + ")");
+            }
+        });
+        if (!duplicates.isEmpty()) {
+            throw new FlywayException("Books with the same normalized ISBN, remove the duplicates before " +
+                    "book_isbn_uq can be created: " + String.join(", ", duplicates));
+        }
+
+        try (PreparedStatement update = connection.prepareStatement("update book set isbn = ? where id = ?")) {
+            for (Map.Entry<Long, String> row : changed.entrySet()) {
+                update.setString(1, row.getValue());
+                update.setLong(2, row.getKey());
+                update.addBatch();
+            }
+            update.executeBatch();
+        }
+
+        try (Statement index = connection.createStatement()) {
+            index.execute("create unique index book_isbn_uq on book (isbn)");
+        }
+    }
+
+    static String normalize(String isbn) {
+        String compact = SEPARATORS.matcher(isbn).replaceAll("").toUpperCase(Locale.ROOT);
+        if (ISBN_10.matcher(compact).matches() && isValidIsbn10(compact)) {
+            String isbn13 = "978" + compact.substring(0, 9);
+            return isbn13 + isbn13CheckDigit(isbn13);
+        }
+        return compact;
+    }
+
+    private static boolean isValidIsbn10(String isbn) {
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            char c = isbn.charAt(i);
+            int digit = c == 'X' ? 10 : c - '0';
+            sum += digit * (10 - i);
+        }
+        return sum % 11 == 0;
+    }
+
+    private static int isbn13CheckDigit(String first12) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (first12.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
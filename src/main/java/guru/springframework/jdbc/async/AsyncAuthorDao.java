@@ -0,0 +1,92 @@
+package guru.springframework.jdbc.async;
+
+import guru.springframework.jdbc.dao.AuthorDao;
+import guru.springframework.jdbc.dao.AuthorFetchPlan;
+import guru.springframework.jdbc.dao.KeysetPage;
+import guru.springframework.jdbc.dao.LookupResult;
+import guru.springframework.jdbc.dao.UpsertOutcome;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.dto.AuthorSummary;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * {@link AuthorDao} whose operations run on the {@link DaoExecutor}, so independent lookups can run in parallel.
+ * {@link AuthorDao#streamAll(int)} is left out, a stream holds its connection for as long as the caller reads it.
+ */
+public interface AsyncAuthorDao {
+
+    /**
+     * Same DAO with every operation failing with a {@link java.util.concurrent.TimeoutException} when it does not
+     * complete within {@code timeout}.
+     */
+    AsyncAuthorDao withTimeout(Duration timeout);
+
+    CompletableFuture<List<Author>> findAllNamed();
+
+    CompletableFuture<List<Author>> findAllNamed(AuthorFetchPlan fetchPlan);
+
+    CompletableFuture<List<Author>> listAuthorByLastNameLike(String lastName);
+
+    CompletableFuture<List<Author>> listAuthorByLastNameLike(String lastName, AuthorFetchPlan fetchPlan);
+
+    CompletableFuture<KeysetPage<Author>> listAuthorByLastNameLike(String lastName, int pageSize, String pageToken);
+
+    CompletableFuture<List<AuthorSummary>> findAllSummaries();
+
+    CompletableFuture<List<AuthorSummary>> listAuthorSummariesByLastNameLike(String lastName);
+
+    CompletableFuture<Optional<Author>> findById(Integer id);
+
+    CompletableFuture<List<Author>> findAll();
+
+    CompletableFuture<List<Author>> findAll(AuthorFetchPlan fetchPlan);
+
+    CompletableFuture<Optional<Author>> findByName(String firstName, String lastName);
+
+    CompletableFuture<Optional<Author>> findByNamedName(String firstName, String lastName);
+
+    CompletableFuture<Author> findAuthorByNameCriteria(String firstName, String lastName);
+
+    CompletableFuture<Author> findAuthorByNameNative(String firstName, String lastName);
+
+    CompletableFuture<Optional<Author>> save(Author author);
+
+    CompletableFuture<Author> getById(Long id);
+
+    CompletableFuture<Author> getById(Long id, AuthorFetchPlan fetchPlan);
+
+    CompletableFuture<LookupResult<Author>> findAllByIds(Collection<Long> ids);
+
+    CompletableFuture<Author> findAuthorByName(String firstName, String lastName);
+
+    CompletableFuture<Author> findAuthorByName(String firstName, String lastName, AuthorFetchPlan fetchPlan);
+
+    CompletableFuture<Author> saveNewAuthor(Author author);
+
+    CompletableFuture<List<Author>> saveAll(Collection<Author> authors);
+
+    CompletableFuture<Author> updateAuthor(Author author);
+
+    CompletableFuture<Author> updateAuthor(Long id, Consumer<Author> changes);
+
+    CompletableFuture<Void> deleteAuthorById(Long id);
+
+    CompletableFuture<Integer> deleteAuthorsByIds(Collection<Long> ids);
+
+    CompletableFuture<UpsertOutcome> upsertAuthorByName(Author author);
+
+    CompletableFuture<List<UpsertOutcome>> upsertAllAuthorsByName(Collection<Author> authors);
+
+    CompletableFuture<Map<Long, Long>> countBooksByAuthor();
+
+    CompletableFuture<List<AuthorSummary>> topAuthorsByBookCount(int limit);
+
+    CompletableFuture<Integer> recountBooks();
+}
@@ -0,0 +1,205 @@
+package guru.springframework.jdbc.async;
+
+import guru.springframework.jdbc.dao.AuthorDao;
+import guru.springframework.jdbc.dao.AuthorFetchPlan;
+import guru.springframework.jdbc.dao.KeysetPage;
+import guru.springframework.jdbc.dao.LookupResult;
+import guru.springframework.jdbc.dao.UpsertOutcome;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.dto.AuthorSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+@Component
+public class AsyncAuthorDaoImpl implements AsyncAuthorDao {
+
+    private final AuthorDao authorDao;
+    private final DaoExecutor executor;
+    private final Duration timeout;
+
+    @Autowired
+    public AsyncAuthorDaoImpl(AuthorDao authorDao, DaoExecutor executor,
+                              @Value("${sdjpa.async.default-timeout:}") Duration timeout) {
+        this.authorDao = authorDao;
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public AsyncAuthorDao withTimeout(Duration timeout) {
+        return new AsyncAuthorDaoImpl(authorDao, executor, timeout);
+    }
+
+    @Override
+    public CompletableFuture<List<Author>> findAllNamed() {
+        return submit(() -> authorDao.findAllNamed());
+    }
+
+    @Override
+    public CompletableFuture<List<Author>> findAllNamed(AuthorFetchPlan fetchPlan) {
+        return submit(() -> authorDao.findAllNamed(fetchPlan));
+    }
+
+    @Override
+    public CompletableFuture<List<Author>> listAuthorByLastNameLike(String lastName) {
+        return submit(() -> authorDao.listAuthorByLastNameLike(lastName));
+    }
+
+    @Override
+    public CompletableFuture<List<Author>> listAuthorByLastNameLike(String lastName, AuthorFetchPlan fetchPlan) {
+        return submit(() -> authorDao.listAuthorByLastNameLike(lastName, fetchPlan));
+    }
+
+    @Override
+    public CompletableFuture<KeysetPage<Author>> listAuthorByLastNameLike(String lastName, int pageSize,
+                                                                          String pageToken) {
+        return submit(() -> authorDao.listAuthorByLastNameLike(lastName, pageSize, pageToken));
+    }
+
+    @Override
+    public CompletableFuture<List<AuthorSummary>> findAllSummaries() {
+        return submit(() -> authorDao.findAllSummaries());
+    }
+
+    @Override
+    public CompletableFuture<List<AuthorSummary>> listAuthorSummariesByLastNameLike(String lastName) {
+        return submit(() -> authorDao.listAuthorSummariesByLastNameLike(lastName));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Author>> findById(Integer id) {
+        return submit(() -> authorDao.findById(id));
+    }
+
+    @Override
+    public CompletableFuture<List<Author>> findAll() {
+        return submit(() -> authorDao.findAll());
+    }
+
+    @Override
+    public CompletableFuture<List<Author>> findAll(AuthorFetchPlan fetchPlan) {
+        return submit(() -> authorDao.findAll(fetchPlan));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Author>> findByName(String firstName, String lastName) {
+        return submit(() -> authorDao.findByName(firstName, lastName));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Author>> findByNamedName(String firstName, String lastName) {
+        return submit(() -> authorDao.findByNamedName(firstName, lastName));
+    }
+
+    @Override
+    public CompletableFuture<Author> findAuthorByNameCriteria(String firstName, String lastName) {
+        return submit(() -> authorDao.findAuthorByNameCriteria(firstName, lastName));
+    }
+
+    @Override
+    public CompletableFuture<Author> findAuthorByNameNative(String firstName, String lastName) {
+        return submit(() -> authorDao.findAuthorByNameNative(firstName, lastName));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Author>> save(Author author) {
+        return submit(() -> authorDao.save(author));
+    }
+
+    @Override
+    public CompletableFuture<Author> getById(Long id) {
+        return submit(() -> authorDao.getById(id));
+    }
+
+    @Override
+    public CompletableFuture<Author> getById(Long id, AuthorFetchPlan fetchPlan) {
+        return submit(() -> authorDao.getById(id, fetchPlan));
+    }
+
+    @Override
+    public CompletableFuture<LookupResult<Author>> findAllByIds(Collection<Long> ids) {
+        return submit(() -> authorDao.findAllByIds(ids));
+    }
+
+    @Override
+    public CompletableFuture<Author> findAuthorByName(String firstName, String lastName) {
+        return submit(() -> authorDao.findAuthorByName(firstName, lastName));
+    }
+
+    @Override
+    public CompletableFuture<Author> findAuthorByName(String firstName, String lastName, AuthorFetchPlan fetchPlan) {
+        return submit(() -> authorDao.findAuthorByName(firstName, lastName, fetchPlan));
+    }
+
+    @Override
+    public CompletableFuture<Author> saveNewAuthor(Author author) {
+        return submit(() -> authorDao.saveNewAuthor(author));
+    }
+
+    @Override
+    public CompletableFuture<List<Author>> saveAll(Collection<Author> authors) {
+        return submit(() -> authorDao.saveAll(authors));
+    }
+
+    @Override
+    public CompletableFuture<Author> updateAuthor(Author author) {
+        return submit(() -> authorDao.updateAuthor(author));
+    }
+
+    @Override
+    public CompletableFuture<Author> updateAuthor(Long id, Consumer<Author> changes) {
+        return submit(() -> authorDao.updateAuthor(id, changes));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAuthorById(Long id) {
+        return submit(() -> {
+            authorDao.deleteAuthorById(id);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Integer> deleteAuthorsByIds(Collection<Long> ids) {
+        return submit(() -> authorDao.deleteAuthorsByIds(ids));
+    }
+
+    @Override
+    public CompletableFuture<UpsertOutcome> upsertAuthorByName(Author author) {
+        return submit(() -> authorDao.upsertAuthorByName(author));
+    }
+
+    @Override
+    public CompletableFuture<List<UpsertOutcome>> upsertAllAuthorsByName(Collection<Author> authors) {
+        return submit(() -> authorDao.upsertAllAuthorsByName(authors));
+    }
+
+    @Override
+    public CompletableFuture<Map<Long, Long>> countBooksByAuthor() {
+        return submit(() -> authorDao.countBooksByAuthor());
+    }
+
+    @Override
+    public CompletableFuture<List<AuthorSummary>> topAuthorsByBookCount(int limit) {
+        return submit(() -> authorDao.topAuthorsByBookCount(limit));
+    }
+
+    @Override
+    public CompletableFuture<Integer> recountBooks() {
+        return submit(() -> authorDao.recountBooks());
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        return executor.submit(call, timeout);
+    }
+}
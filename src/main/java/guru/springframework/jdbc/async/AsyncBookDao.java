@@ -0,0 +1,100 @@
+package guru.springframework.jdbc.async;
+
+import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.dao.BookFetchPlan;
+import guru.springframework.jdbc.dao.KeysetPage;
+import guru.springframework.jdbc.dao.LookupResult;
+import guru.springframework.jdbc.dao.UpsertOutcome;
+import guru.springframework.jdbc.domain.Book;
+import guru.springframework.jdbc.dto.BookSummary;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * {@link BookDao} whose operations run on the {@link DaoExecutor}, so independent lookups can run in parallel.
+ * {@link BookDao#streamAll(int)} is left out, a stream holds its connection for as long as the caller reads it.
+ */
+public interface AsyncBookDao {
+
+    /**
+     * Same DAO with every operation failing with a {@link java.util.concurrent.TimeoutException} when it does not
+     * complete within {@code timeout}.
+     */
+    AsyncBookDao withTimeout(Duration timeout);
+
+    CompletableFuture<Book> findByISBN(String isbn);
+
+    CompletableFuture<Book> findByISBN(String isbn, BookFetchPlan fetchPlan);
+
+    CompletableFuture<Optional<Book>> lookupByISBN(String isbn);
+
+    CompletableFuture<List<Book>> findAll();
+
+    CompletableFuture<List<Book>> findAll(BookFetchPlan fetchPlan);
+
+    CompletableFuture<List<Book>> findByAuthor(Long authorId);
+
+    CompletableFuture<KeysetPage<Book>> findAllPage(int pageSize, String pageToken);
+
+    CompletableFuture<KeysetPage<Book>> findAllOrderByTitle(int pageSize, String pageToken);
+
+    CompletableFuture<List<BookSummary>> findAllSummaries();
+
+    CompletableFuture<KeysetPage<BookSummary>> findSummaryPage(int pageSize, String pageToken);
+
+    CompletableFuture<List<Book>> findAllNamed();
+
+    CompletableFuture<List<Book>> findAllNamed(BookFetchPlan fetchPlan);
+
+    CompletableFuture<Book> getById(Long id);
+
+    CompletableFuture<Book> getById(Long id, BookFetchPlan fetchPlan);
+
+    CompletableFuture<LookupResult<Book>> findAllByIds(Collection<Long> ids);
+
+    CompletableFuture<Optional<Book>> findById(Integer id);
+
+    CompletableFuture<Optional<Book>> findByTitle(String title);
+
+    CompletableFuture<Optional<Book>> findByTitleNamedQuery(String title);
+
+    CompletableFuture<Book> findBookByTitleCriteria(String title);
+
+    CompletableFuture<Book> findBookByTitleNative(String title);
+
+    CompletableFuture<Book> findBookByTitle(String title);
+
+    CompletableFuture<Book> findBookByTitle(String title, BookFetchPlan fetchPlan);
+
+    CompletableFuture<Book> saveNewBook(Book book);
+
+    CompletableFuture<Optional<Book>> save(Book book);
+
+    CompletableFuture<List<Book>> saveAll(Collection<Book> books);
+
+    CompletableFuture<Book> updateBook(Book book);
+
+    CompletableFuture<Book> updateBook(Long id, Consumer<Book> changes);
+
+    CompletableFuture<Void> deleteBookById(Long id);
+
+    CompletableFuture<Integer> deleteBooksByIds(Collection<Long> ids);
+
+    CompletableFuture<Integer> deleteBooksByPublisher(String publisher);
+
+    CompletableFuture<Integer> updatePublisher(String oldPublisher, String newPublisher);
+
+    CompletableFuture<Integer> reassignBooks(Long fromAuthorId, Long toAuthorId);
+
+    CompletableFuture<UpsertOutcome> upsertByIsbn(Book book);
+
+    CompletableFuture<List<UpsertOutcome>> upsertAllByIsbn(Collection<Book> books);
+
+    CompletableFuture<Map<String, Long>> countBooksByPublisher();
+}
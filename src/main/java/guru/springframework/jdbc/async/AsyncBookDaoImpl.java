@@ -0,0 +1,224 @@
+package guru.springframework.jdbc.async;
+
+import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.dao.BookFetchPlan;
+import guru.springframework.jdbc.dao.KeysetPage;
+import guru.springframework.jdbc.dao.LookupResult;
+import guru.springframework.jdbc.dao.UpsertOutcome;
+import guru.springframework.jdbc.domain.Book;
+import guru.springframework.jdbc.dto.BookSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+@Component
+public class AsyncBookDaoImpl implements AsyncBookDao {
+
+    private final BookDao bookDao;
+    private final DaoExecutor executor;
+    private final Duration timeout;
+
+    @Autowired
+    public AsyncBookDaoImpl(BookDao bookDao, DaoExecutor executor,
+                            @Value("${sdjpa.async.default-timeout:}") Duration timeout) {
+        this.bookDao = bookDao;
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public AsyncBookDao withTimeout(Duration timeout) {
+        return new AsyncBookDaoImpl(bookDao, executor, timeout);
+    }
+
+    @Override
+    public CompletableFuture<Book> findByISBN(String isbn) {
+        return submit(() -> bookDao.findByISBN(isbn));
+    }
+
+    @Override
+    public CompletableFuture<Book> findByISBN(String isbn, BookFetchPlan fetchPlan) {
+        return submit(() -> bookDao.findByISBN(isbn, fetchPlan));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Book>> lookupByISBN(String isbn) {
+        return submit(() -> bookDao.lookupByISBN(isbn));
+    }
+
+    @Override
+    public CompletableFuture<List<Book>> findAll() {
+        return submit(() -> bookDao.findAll());
+    }
+
+    @Override
+    public CompletableFuture<List<Book>> findAll(BookFetchPlan fetchPlan) {
+        return submit(() -> bookDao.findAll(fetchPlan));
+    }
+
+    @Override
+    public CompletableFuture<List<Book>> findByAuthor(Long authorId) {
+        return submit(() -> bookDao.findByAuthor(authorId));
+    }
+
+    @Override
+    public CompletableFuture<KeysetPage<Book>> findAllPage(int pageSize, String pageToken) {
+        return submit(() -> bookDao.findAllPage(pageSize, pageToken));
+    }
+
+    @Override
+    public CompletableFuture<KeysetPage<Book>> findAllOrderByTitle(int pageSize, String pageToken) {
+        return submit(() -> bookDao.findAllOrderByTitle(pageSize, pageToken));
+    }
+
+    @Override
+    public CompletableFuture<List<BookSummary>> findAllSummaries() {
+        return submit(() -> bookDao.findAllSummaries());
+    }
+
+    @Override
+    public CompletableFuture<KeysetPage<BookSummary>> findSummaryPage(int pageSize, String pageToken) {
+        return submit(() -> bookDao.findSummaryPage(pageSize, pageToken));
+    }
+
+    @Override
+    public CompletableFuture<List<Book>> findAllNamed() {
+        return submit(() -> bookDao.findAllNamed());
+    }
+
+    @Override
+    public CompletableFuture<List<Book>> findAllNamed(BookFetchPlan fetchPlan) {
+        return submit(() -> bookDao.findAllNamed(fetchPlan));
+    }
+
+    @Override
+    public CompletableFuture<Book> getById(Long id) {
+        return submit(() -> bookDao.getById(id));
+    }
+
+    @Override
+    public CompletableFuture<Book> getById(Long id, BookFetchPlan fetchPlan) {
+        return submit(() -> bookDao.getById(id, fetchPlan));
+    }
+
+    @Override
+    public CompletableFuture<LookupResult<Book>> findAllByIds(Collection<Long> ids) {
+        return submit(() -> bookDao.findAllByIds(ids));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Book>> findById(Integer id) {
+        return submit(() -> bookDao.findById(id));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Book>> findByTitle(String title) {
+        return submit(() -> bookDao.findByTitle(title));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Book>> findByTitleNamedQuery(String title) {
+        return submit(() -> bookDao.findByTitleNamedQuery(title));
+    }
+
+    @Override
+    public CompletableFuture<Book> findBookByTitleCriteria(String title) {
+        return submit(() -> bookDao.findBookByTitleCriteria(title));
+    }
+
+    @Override
+    public CompletableFuture<Book> findBookByTitleNative(String title) {
+        return submit(() -> bookDao.findBookByTitleNative(title));
+    }
+
+    @Override
+    public CompletableFuture<Book> findBookByTitle(String title) {
+        return submit(() -> bookDao.findBookByTitle(title));
+    }
+
+    @Override
+    public CompletableFuture<Book> findBookByTitle(String title, BookFetchPlan fetchPlan) {
+        return submit(() -> bookDao.findBookByTitle(title, fetchPlan));
+    }
+
+    @Override
+    public CompletableFuture<Book> saveNewBook(Book book) {
+        return submit(() -> bookDao.saveNewBook(book));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Book>> save(Book book) {
+        return submit(() -> bookDao.save(book));
+    }
+
+    @Override
+    public CompletableFuture<List<Book>> saveAll(Collection<Book> books) {
+        return submit(() -> bookDao.saveAll(books));
+    }
+
+    @Override
+    public CompletableFuture<Book> updateBook(Book book) {
+        return submit(() -> bookDao.updateBook(book));
+    }
+
+    @Override
+    public CompletableFuture<Book> updateBook(Long id, Consumer<Book> changes) {
+        return submit(() -> bookDao.updateBook(id, changes));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteBookById(Long id) {
+        return submit(() -> {
+            bookDao.deleteBookById(id);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Integer> deleteBooksByIds(Collection<Long> ids) {
+        return submit(() -> bookDao.deleteBooksByIds(ids));
+    }
+
+    @Override
+    public CompletableFuture<Integer> deleteBooksByPublisher(String publisher) {
+        return submit(() -> bookDao.deleteBooksByPublisher(publisher));
+    }
+
+    @Override
+    public CompletableFuture<Integer> updatePublisher(String oldPublisher, String newPublisher) {
+        return submit(() -> bookDao.updatePublisher(oldPublisher, newPublisher));
+    }
+
+    @Override
+    public CompletableFuture<Integer> reassignBooks(Long fromAuthorId, Long toAuthorId) {
+        return submit(() -> bookDao.reassignBooks(fromAuthorId, toAuthorId));
+    }
+
+    @Override
+    public CompletableFuture<UpsertOutcome> upsertByIsbn(Book book) {
+        return submit(() -> bookDao.upsertByIsbn(book));
+    }
+
+    @Override
+    public CompletableFuture<List<UpsertOutcome>> upsertAllByIsbn(Collection<Book> books) {
+        return submit(() -> bookDao.upsertAllByIsbn(books));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Long>> countBooksByPublisher() {
+        return submit(() -> bookDao.countBooksByPublisher());
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        return executor.submit(call, timeout);
+    }
+}
@@ -0,0 +1,40 @@
+package guru.springframework.jdbc.async;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * {@link DaoExecutor} limited by default to the maximum size of the Hikari pool, the number of DAO calls that can
+ * hold a connection at the same time.
+ */
+@Configuration(proxyBeanMethods = false)
+public class AsyncDaoConfiguration {
+
+    // el valor por defecto de Hikari
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    @Bean
+    public DaoExecutor daoExecutor(DataSource dataSource,
+                                   @Value("${sdjpa.async.max-concurrency:0}") int maxConcurrency,
+                                   @Value("${sdjpa.async.queue-capacity:1000}") int queueCapacity,
+                                   @Value("${sdjpa.async.virtual-threads:false}") boolean virtualThreads) {
+        return new DaoExecutor(maxConcurrency > 0 ? maxConcurrency : poolSize(dataSource), queueCapacity,
+                virtualThreads);
+    }
+
+    static int poolSize(DataSource dataSource) {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+            }
+        } catch (SQLException e) {
+            // sin pool conocido se usa el tamaño por defecto
+        }
+        return DEFAULT_POOL_SIZE;
+    }
+}
@@ -0,0 +1,128 @@
+package guru.springframework.jdbc.async;
+
+import guru.springframework.jdbc.routing.ReadYourWrites;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking DAO calls off the caller thread, at most {@code maxConcurrency} at a time so a fan-out never asks
+ * for more connections than the pool has. Calls run on virtual threads when the JVM supports them (Java 21+) and
+ * they are enabled, otherwise on a fixed pool of {@code maxConcurrency} platform threads with a bounded queue.
+ * <p>
+ * A timeout completes the future with a {@link java.util.concurrent.TimeoutException}. A call still waiting for a
+ * thread or a permit is then skipped, one already running against the database finishes and its result is dropped.
+ * The caller's {@link ReadYourWrites} time is carried to the call, so async reads keep reading its own writes.
+ */
+public class DaoExecutor implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(DaoExecutor.class);
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    public DaoExecutor(int maxConcurrency, int queueCapacity, boolean virtualThreads) {
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency, true);
+        ExecutorService virtual = virtualThreads ? virtualThreadPerTaskExecutor() : null;
+        this.executor = virtual != null ? virtual : platformThreadPool(maxConcurrency, queueCapacity);
+        log.info("DAO executor limited to {} concurrent calls on {} threads", maxConcurrency,
+                virtual != null ? "virtual" : "platform");
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @param timeout {@code null} to wait as long as the call takes
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> call, Duration timeout) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Instant lastWrite = ReadYourWrites.lastWrite();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> run(call, result, lastWrite));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        if (timeout != null) {
+            result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        // no se interrumpe una llamada en curso, el driver podría dejar la conexión inservible
+        result.whenComplete((value, e) -> task.cancel(false));
+        return result;
+    }
+
+    private <T> void run(Supplier<T> call, CompletableFuture<T> result, Instant lastWrite) {
+        ReadYourWrites.restore(lastWrite);
+        try {
+            call(call, result);
+        } finally {
+            ReadYourWrites.clear();
+        }
+    }
+
+    private <T> void call(Supplier<T> call, CompletableFuture<T> result) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+            return;
+        }
+        try {
+            // ha expirado o se ha cancelado mientras esperaba
+            if (!result.isDone()) {
+                result.complete(call.get());
+            }
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ExecutorService platformThreadPool(int threads, int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "dao-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static ExecutorService virtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads need Java 21, using platform threads");
+            return null;
+        }
+    }
+}
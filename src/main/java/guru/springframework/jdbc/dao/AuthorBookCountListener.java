@@ -0,0 +1,72 @@
+package guru.springframework.jdbc.dao;
+
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.domain.Book;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Objects;
+
+/**
+ * Keeps {@code author.book_count} up to date with the books Hibernate inserts, deletes or moves to another author,
+ * see {@link AuthorBookCounts}. The DAOs recount the authors touched by their bulk statements themselves.
+ */
+@Component
+public class AuthorBookCountListener implements PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener {
+
+    public AuthorBookCountListener(EntityManagerFactory emf) {
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class).getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Book) {
+            AuthorBookCounts.change(event.getSession(), authorId(event.getPersister(), event.getState()), 1);
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Book && event.getOldState() != null) {
+            Long oldAuthorId = authorId(event.getPersister(), event.getOldState());
+            Long newAuthorId = authorId(event.getPersister(), event.getState());
+            if (!Objects.equals(oldAuthorId, newAuthorId)) {
+                AuthorBookCounts.change(event.getSession(), oldAuthorId, -1);
+                AuthorBookCounts.change(event.getSession(), newAuthorId, 1);
+            }
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Book) {
+            AuthorBookCounts.change(event.getSession(), authorId(event.getPersister(), event.getDeletedState()), -1);
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private static Long authorId(EntityPersister persister, Object[] state) {
+        // un proxy devuelve el id sin inicializarse
+        Object author = state[persister.getEntityMetamodel().getPropertyIndex("author")];
+        return author != null ? ((Author) author).getId() : null;
+    }
+}
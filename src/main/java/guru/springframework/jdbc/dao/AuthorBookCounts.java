@@ -0,0 +1,143 @@
+package guru.springframework.jdbc.dao;
+
+import guru.springframework.jdbc.domain.Author;
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.query.NativeQuery;
+
+import javax.persistence.EntityManager;
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Maintenance of the materialized {@code author.book_count} column. The changes of a transaction are collected per
+ * session and written right before it commits: a {@code +/-n} per author for the books Hibernate inserts, deletes or
+ * moves ({@link AuthorBookCountListener}), a recount from {@code book} for the authors touched by bulk statements,
+ * which supersedes their deltas. The committed authors are evicted from the second-level cache.
+ * <p>
+ * The changes are kept by the {@link SessionCounts} interceptor of the session, so they live and die with it, also
+ * when its transaction never completes.
+ */
+final class AuthorBookCounts {
+
+    private static final String RECOUNT = "UPDATE author SET book_count = " +
+            "(SELECT COUNT(*) FROM book WHERE book.author_id = author.id)";
+
+    private AuthorBookCounts() {
+    }
+
+    static void change(SessionImplementor session, Long authorId, int delta) {
+        if (authorId != null) {
+            pending(session).deltas.merge(authorId, delta, Integer::sum);
+        }
+    }
+
+    /**
+     * Recounts the books of the authors when the transaction of the {@link EntityManager} commits.
+     */
+    static void recount(EntityManager em, Collection<Long> authorIds) {
+        Set<Long> recount = pending(em.unwrap(SessionImplementor.class)).recount;
+        authorIds.stream().filter(id -> id != null).forEach(recount::add);
+    }
+
+    /**
+     * Recounts the books of every author right away.
+     *
+     * @return number of authors
+     */
+    static int recountAll(EntityManager em) {
+        NativeQuery<?> query = em.createNativeQuery(RECOUNT).unwrap(NativeQuery.class);
+        // invalida la región de autores y las queries sobre author
+        query.addSynchronizedEntityClass(Author.class);
+        return query.executeUpdate();
+    }
+
+    private static Pending pending(SessionImplementor session) {
+        if (session.getInterceptor() instanceof SessionCounts counts) {
+            if (counts.pending == null) {
+                counts.pending = register(session, () -> counts.pending = null);
+            }
+            return counts.pending;
+        }
+        // sesión sin el interceptor: los cambios de cada llamada se escriben por separado
+        return register(session, () -> {
+        });
+    }
+
+    /**
+     * Registers the processes that write the changes before the transaction of the session commits and evict the
+     * authors after.
+     */
+    private static Pending register(SessionImplementor session, Runnable completed) {
+        Pending pending = new Pending();
+        session.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) s -> write(s, pending));
+        session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, s) -> {
+            completed.run();
+            if (success) {
+                pending.touched().forEach(id -> s.getFactory().getCache().evictEntityData(Author.class, id));
+            }
+        });
+        return pending;
+    }
+
+    private static void write(SessionImplementor session, Pending pending) {
+        Map<Long, Integer> deltas = pending.deltas.entrySet().stream()
+                .filter(delta -> delta.getValue() != 0 && !pending.recount.contains(delta.getKey()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        if (deltas.isEmpty() && pending.recount.isEmpty()) {
+            return;
+        }
+        session.doWork(connection -> {
+            for (List<Long> chunk : BulkOperations.chunks(pending.recount)) {
+                String in = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+                try (PreparedStatement statement = connection.prepareStatement(RECOUNT + " WHERE id IN (" + in + ")")) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setLong(i + 1, chunk.get(i));
+                    }
+                    statement.executeUpdate();
+                }
+            }
+            if (!deltas.isEmpty()) {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "UPDATE author SET book_count = book_count + ? WHERE id = ?")) {
+                    for (Map.Entry<Long, Integer> delta : deltas.entrySet()) {
+                        statement.setInt(1, delta.getValue());
+                        statement.setLong(2, delta.getKey());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+        });
+    }
+
+    /**
+     * Session scoped interceptor, Hibernate creates one per session
+     * ({@code hibernate.session_factory.session_scoped_interceptor}). Holds the changes of the current transaction of
+     * the session, one set of processes is registered per transaction.
+     */
+    public static class SessionCounts extends EmptyInterceptor {
+
+        private Pending pending;
+    }
+
+    private static final class Pending {
+        private final Map<Long, Integer> deltas = new HashMap<>();
+        private final Set<Long> recount = new HashSet<>();
+
+        private Set<Long> touched() {
+            Set<Long> touched = new HashSet<>(recount);
+            touched.addAll(deltas.keySet());
+            return touched;
+        }
+    }
+}
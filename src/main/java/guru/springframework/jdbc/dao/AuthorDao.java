@@ -1,9 +1,14 @@
 package guru.springframework.jdbc.dao;
 
 import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.dto.AuthorSummary;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Created by jt on 8/22/21.
@@ -12,29 +17,176 @@ public interface AuthorDao {
 
     List<Author> findAllNamed();
 
+    List<Author> findAllNamed(AuthorFetchPlan fetchPlan);
+
     List<Author> listAuthorByLastNameLike(String lastName);
 
+    List<Author> listAuthorByLastNameLike(String lastName, AuthorFetchPlan fetchPlan);
+
+    /**
+     * Keyset paginated version of {@link #listAuthorByLastNameLike(String)} sorted by {@code (lastName, id)}.
+     *
+     * @param pageSize  rows per page, at least 1
+     * @param pageToken {@code null} for the first page, {@link KeysetPage#getNextPageToken()} for the next ones
+     * @throws IllegalArgumentException if {@code pageSize} is less than 1
+     */
+    KeysetPage<Author> listAuthorByLastNameLike(String lastName, int pageSize, String pageToken);
+
+    /**
+     * Summaries of all the authors with their number of books sorted by {@code (lastName, firstName)}, read as a
+     * projection so no entity is loaded or tracked.
+     */
+    List<AuthorSummary> findAllSummaries();
+
+    /**
+     * Projection version of {@link #listAuthorByLastNameLike(String)}.
+     */
+    List<AuthorSummary> listAuthorSummariesByLastNameLike(String lastName);
+
+    /**
+     * Number of books of every author, zero included, by author id in id order. Counted with a {@code GROUP BY},
+     * nothing is loaded.
+     */
+    Map<Long, Long> countBooksByAuthor();
+
+    /**
+     * The {@code limit} authors with most books, ties by id. Authors without books are never listed.
+     */
+    List<AuthorSummary> topAuthorsByBookCount(int limit);
+
+    /**
+     * Recounts the materialized {@link Author#getBookCount()} of every author from the books table, for when books
+     * were changed outside the DAOs. With sharding every shard is recounted in a transaction of its own.
+     *
+     * @return number of authors
+     * @throws IllegalStateException with several shards, if the caller has a transaction
+     */
+    int recountBooks();
+
     Optional<Author> findById(Integer id);
 
     List<Author> findAll();
 
+    List<Author> findAll(AuthorFetchPlan fetchPlan);
+
+    /**
+     * Streams every author over a forward-only cursor reading {@code fetchSize} rows per round trip. The entities
+     * are detached as the stream advances. The stream holds a connection until it is closed, so callers must use
+     * try-with-resources. With sharding the shards are read one after the other, each in id order.
+     */
+    Stream<Author> streamAll(int fetchSize);
+
+    /**
+     * Author with the name, empty when there is none. A name looked up without result is remembered for a short
+     * while by the {@link NegativeLookupCache}.
+     */
     Optional<Author> findByName(String firstName, String lastName);
 
     Optional<Author> findByNamedName(String firstName, String lastName);
 
     Author findAuthorByNameCriteria(String firstName, String lastName);
 
+    /**
+     * Like {@link #findAuthorByNameCriteria(String, String)} but empty instead of throwing when there is no such
+     * author. Misses are remembered by the {@link NegativeLookupCache} like those of {@link #findByName}.
+     */
+    Optional<Author> lookupAuthorByNameCriteria(String firstName, String lastName);
+
     Author findAuthorByNameNative(String firstName, String lastName);
 
+    /**
+     * Like {@link #findAuthorByNameNative(String, String)} but empty instead of throwing when there is no such
+     * author. Misses are remembered by the {@link NegativeLookupCache} like those of {@link #findByName}.
+     */
+    Optional<Author> lookupAuthorByNameNative(String firstName, String lastName);
+
+    /**
+     * Persists the author in a transaction of its own, even inside a caller's transaction. With sharding the id comes
+     * from the id generator of shard 0 and the author is written to the shard of its id.
+     *
+     * @return the author, empty if the insert failed. The caller's transaction is not affected by the failure
+     */
     Optional<Author> save(Author author);
 
     Author getById(Long id);
 
+    Author getById(Long id, AuthorFetchPlan fetchPlan);
+
+    /**
+     * Authors by id, without their books. Authors in the persistence context or the second-level cache are not read
+     * again, the rest are read with a few padded {@code IN} queries instead of one query per id.
+     *
+     * @return the authors in the order of the ids, duplicates once, and the ids without author
+     */
+    LookupResult<Author> findAllByIds(Collection<Long> ids);
+
     Author findAuthorByName(String firstName, String lastName);
 
+    Author findAuthorByName(String firstName, String lastName, AuthorFetchPlan fetchPlan);
+
+    /**
+     * Like {@link #findAuthorByName(String, String, AuthorFetchPlan)} but empty instead of throwing when there is no
+     * such author, {@link #findByName} is the same lookup without a fetch plan. Misses are remembered by the
+     * {@link NegativeLookupCache}.
+     */
+    Optional<Author> lookupAuthorByName(String firstName, String lastName, AuthorFetchPlan fetchPlan);
+
     Author saveNewAuthor(Author author);
 
+    /**
+     * Persists all the authors, and their books by cascade, in a single transaction using JDBC batching, the caller's
+     * one if there is one. The persistence context is flushed every {@code hibernate.jdbc.batch_size} entities and
+     * the authors of the batch and their books are detached, so the returned authors are detached. Other entities the
+     * caller has loaded in its transaction stay managed.
+     *
+     * @throws IllegalStateException with sharding, the shard of an author is only known once its id is generated
+     */
+    List<Author> saveAll(Collection<Author> authors);
+
+    /**
+     * Merges a detached author, only if nobody has updated it since it was read: its {@code version} must still be
+     * the current one.
+     *
+     * @throws OptimisticConflictException if the author has been changed or deleted in the meantime
+     */
     Author updateAuthor(Author author);
 
+    /**
+     * Applies {@code changes} to the current state of the author and saves it, re-reading it and applying them again
+     * when a concurrent update wins. {@code changes} may run more than once, so it must be idempotent.
+     *
+     * @return the updated author, {@code null} if it does not exist
+     * @throws OptimisticConflictException if the author is still contended after a few attempts
+     */
+    Author updateAuthor(Long id, Consumer<Author> changes);
+
     void deleteAuthorById(Long id);
+
+    /**
+     * Deletes the authors and their books with bulk statements, without loading them. The author, book and
+     * {@code Author.books} cache regions are evicted. With sharding the authors of each shard are deleted in a
+     * transaction of their own, see {@link CatalogShards#write}.
+     *
+     * @return number of deleted authors
+     * @throws IllegalStateException if the authors span shards and the caller has a transaction
+     */
+    int deleteAuthorsByIds(Collection<Long> ids);
+
+    /**
+     * Inserts the author unless one with the same first and last name exists, in a single atomic statement. The id
+     * of the author is set, its version is not. With sharding the name is looked up in every shard first and a new
+     * author is inserted in the shard of its id.
+     *
+     * @return {@link UpsertOutcome#INSERTED} or {@link UpsertOutcome#UNCHANGED}, the name is all there is to update
+     */
+    UpsertOutcome upsertAuthorByName(Author author);
+
+    /**
+     * Batched {@link #upsertAuthorByName(Author)}, one statement per few hundred authors. With sharding the new
+     * authors of each shard are inserted in a transaction routed to it, see {@link CatalogShards#write}.
+     *
+     * @return the outcome of every author, in the same order
+     * @throws IllegalStateException if the new authors span shards and the caller has a transaction
+     */
+    List<UpsertOutcome> upsertAllAuthorsByName(Collection<Author> authors);
 }
@@ -1,164 +1,368 @@
 package guru.springframework.jdbc.dao;
 
 import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.domain.Book;
+import guru.springframework.jdbc.dto.AuthorSummary;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.NoResultException;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Created by jt on 8/28/21.
  */
 @Component
+@Transactional(readOnly = true)
 public class AuthorDaoImpl implements AuthorDao {
 
-    private final EntityManagerFactory emf;
+    private static final String[] UPSERT_H2_TYPES = {"BIGINT", "VARCHAR(255)", "VARCHAR(255)"};
+    private static final Type[] UPSERT_TYPES = {StandardBasicTypes.LONG, StandardBasicTypes.STRING,
+            StandardBasicTypes.STRING};
 
-    public AuthorDaoImpl(EntityManagerFactory emf) {
+    private final EntityManagerFactory emf;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate newTransaction;
+    private final NegativeLookupCache negativeLookups;
+    private final CatalogShards shards;
+    private final int batchSize;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    public AuthorDaoImpl(EntityManagerFactory emf, ApplicationEventPublisher eventPublisher,
+                         PlatformTransactionManager transactionManager, NegativeLookupCache negativeLookups,
+                         ObjectProvider<CatalogShards> catalogShards,
+                         @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int batchSize) {
         this.emf = emf;
+        this.eventPublisher = eventPublisher;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.negativeLookups = negativeLookups;
+        this.shards = catalogShards.getIfAvailable(CatalogShards::single);
+        this.batchSize = batchSize;
     }
 
     @Override
     public List<Author> findAllNamed() {
-        EntityManager em = getEntityManager();
-        try {
-            TypedQuery<Author> typedQuery = em.createNamedQuery("author_find_all", Author.class);
+        return findAllNamed(AuthorFetchPlan.AUTHOR_ONLY);
+    }
 
-            return typedQuery.getResultList();
-        } finally {
-            em.close();
-        }
+    @Override
+    public List<Author> findAllNamed(AuthorFetchPlan fetchPlan) {
+        return shards.gather(shard -> {
+            TypedQuery<Author> typedQuery = shards.withoutQueryCache(em.createNamedQuery("author_find_all",
+                    Author.class));
+            fetchPlan.hints(em).forEach(typedQuery::setHint);
+
+            return distinct(typedQuery.getResultList(), fetchPlan);
+        }, Comparator.comparing(Author::getId));
     }
 
     @Override
     public List<Author> listAuthorByLastNameLike(String lastName) {
-        EntityManager em = getEntityManager();
-        try {
-            TypedQuery<Author> query = em.createQuery("SELECT a from Author a where a.lastName like :last_name", Author.class);
+        return listAuthorByLastNameLike(lastName, AuthorFetchPlan.AUTHOR_ONLY);
+    }
+
+    @Override
+    public List<Author> listAuthorByLastNameLike(String lastName, AuthorFetchPlan fetchPlan) {
+        return shards.gather(shard -> {
+            TypedQuery<Author> query = em.createQuery("SELECT a from Author a where a.lastName like :last_name",
+                    Author.class);
             query.setParameter("last_name", lastName + "%");
+            fetchPlan.hints(em).forEach(query::setHint);
+            return distinct(query.getResultList(), fetchPlan);
+        }, Comparator.comparing(Author::getId));
+    }
+
+    @Override
+    public List<AuthorSummary> findAllSummaries() {
+        return findSummaries("", null);
+    }
+
+    @Override
+    public List<AuthorSummary> listAuthorSummariesByLastNameLike(String lastName) {
+        return findSummaries("WHERE a.lastName LIKE :last_name ", lastName + "%");
+    }
+
+    @Override
+    public Map<Long, Long> countBooksByAuthor() {
+        return shards.sum(shard -> {
+            Map<Long, Long> counts = new LinkedHashMap<>();
+            em.createQuery("SELECT a.id, COUNT(b) FROM Author a LEFT JOIN a.books b GROUP BY a.id ORDER BY a.id",
+                            Object[].class)
+                    .getResultList()
+                    .forEach(row -> counts.put((Long) row[0], (Long) row[1]));
+            return counts;
+        }, Comparator.naturalOrder());
+    }
+
+    @Override
+    public List<AuthorSummary> topAuthorsByBookCount(int limit) {
+        // los primeros de cada shard, de entre ellos los primeros de todos
+        List<AuthorSummary> top = shards.gather(shard -> {
+            TypedQuery<AuthorSummary> query = em.createQuery("SELECT new guru.springframework.jdbc.dto.AuthorSummary(" +
+                    "a.id, a.firstName, a.lastName, COUNT(b)) FROM Author a JOIN a.books b " +
+                    "GROUP BY a.id, a.firstName, a.lastName ORDER BY COUNT(b) DESC, a.id", AuthorSummary.class);
+            query.setMaxResults(limit);
+            query.setHint(QueryHints.HINT_READONLY, true);
             return query.getResultList();
-        } finally {
-            em.close();
-        }
+        }, Comparator.comparingLong(AuthorSummary::bookCount).reversed().thenComparing(AuthorSummary::id));
+        return top.size() > limit ? top.subList(0, limit) : top;
+    }
+
+    @Override
+    @Transactional
+    public int recountBooks() {
+        AtomicInteger recounted = new AtomicInteger();
+        shards.writeEveryShard(TransactionAspectSupport.currentTransactionStatus(),
+                () -> recounted.addAndGet(AuthorBookCounts.recountAll(em)));
+        return recounted.get();
+    }
+
+    private List<AuthorSummary> findSummaries(String where, String lastName) {
+        Comparator<String> names = Comparator.nullsFirst(Comparator.naturalOrder());
+        return shards.gather(shard -> {
+            // el LEFT JOIN solo cuenta los libros, no los carga
+            TypedQuery<AuthorSummary> query = em.createQuery("SELECT new guru.springframework.jdbc.dto.AuthorSummary(" +
+                    "a.id, a.firstName, a.lastName, COUNT(b)) FROM Author a LEFT JOIN a.books b " + where +
+                    "GROUP BY a.id, a.firstName, a.lastName ORDER BY a.lastName, a.firstName, a.id",
+                    AuthorSummary.class);
+            if (lastName != null) {
+                query.setParameter("last_name", lastName);
+            }
+            query.setHint(QueryHints.HINT_READONLY, true);
+            return query.getResultList();
+        }, Comparator.comparing(AuthorSummary::lastName, names).thenComparing(AuthorSummary::firstName, names)
+                .thenComparing(AuthorSummary::id));
+    }
+
+    @Override
+    public KeysetPage<Author> listAuthorByLastNameLike(String lastName, int pageSize, String pageToken) {
+        KeysetPage.checkPageSize(pageSize);
+        KeysetToken token = pageToken != null ? KeysetToken.decode(pageToken) : null;
+        String seek = token != null ? "and (a.lastName > :key or (a.lastName = :key and a.id > :id)) " : "";
+
+        List<Author> rows = shards.gather(shard -> {
+            TypedQuery<Author> query = em.createQuery("SELECT a from Author a where a.lastName like :last_name " +
+                    seek + "order by a.lastName, a.id", Author.class);
+            query.setParameter("last_name", lastName + "%");
+            if (token != null) {
+                query.setParameter("key", token.getKey());
+                query.setParameter("id", token.getId());
+            }
+            query.setMaxResults(pageSize + 1);
+            return query.getResultList();
+        }, Comparator.comparing(Author::getLastName).thenComparing(Author::getId));
+
+        return KeysetPage.of(rows, pageSize, author -> KeysetToken.encode(author.getLastName(), author.getId()));
     }
 
     @Override
     public Optional<Author> findById(Integer id) {
-        EntityManager em = getEntityManager();
-        Author author = em.find(Author.class, id);
-        em.close();
-        return author != null ? Optional.of(author) : Optional.empty();
+        return shards.findFirst(shard -> Optional.ofNullable(em.find(Author.class, id)));
     }
 
     @Override
     public List<Author> findAll() {
-        EntityManager em = getEntityManager();
-        TypedQuery<Author> query = em.createQuery("SELECT a FROM Author a", Author.class);
-        List<Author> authors = query.getResultList();
-        em.close();
-        System.out.println("authors: " + authors);
-        return authors;
+        return findAll(AuthorFetchPlan.AUTHOR_ONLY);
+    }
+
+    @Override
+    public List<Author> findAll(AuthorFetchPlan fetchPlan) {
+        return shards.gather(shard -> {
+            TypedQuery<Author> query = em.createQuery("SELECT a FROM Author a", Author.class);
+            fetchPlan.hints(em).forEach(query::setHint);
+            return distinct(query.getResultList(), fetchPlan);
+        }, Comparator.comparing(Author::getId));
+    }
+
+    /**
+     * The cursor outlives the call, so the stream gets its own {@link EntityManager} and connection instead of the
+     * transactional one; with sharding one per shard, opened in turn.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Stream<Author> streamAll(int fetchSize) {
+        return EntityStreams.concat(shards, shard -> shards.onShard(shard, () -> {
+            EntityManager streamEm = emf.createEntityManager();
+            TypedQuery<Author> query = streamEm.createQuery("SELECT a FROM Author a ORDER BY a.id", Author.class);
+            return EntityStreams.stream(streamEm, query, fetchSize);
+        }));
     }
 
     @Override
     public Optional<Author> findByNamedName(String firstName, String lastName) {
-        EntityManager em = getEntityManager();
-        TypedQuery<Author> query = em.createNamedQuery("Author.findByName", Author.class);
-        query.setParameter("first_name", firstName);
-        query.setParameter("last_name", lastName);
-        Author author = query.getSingleResult();
-        em.close();
-        return author != null ? Optional.of(author) : Optional.empty();
+        return negativeLookups.lookup(em, NegativeLookupCache.nameKey(firstName, lastName),
+                () -> shards.findUnique(shard -> {
+                    TypedQuery<Author> query = shards.withoutQueryCache(em.createNamedQuery("Author.findByName",
+                            Author.class));
+                    query.setParameter("first_name", firstName);
+                    query.setParameter("last_name", lastName);
+                    return NegativeLookupCache.singleResult(query);
+                }));
     }
 
     @Override
     public Optional<Author> findByName(String firstName, String lastName) {
-        EntityManager em = getEntityManager();
-        TypedQuery<Author> query = em.createQuery("SELECT a FROM Author a " +
-                "WHERE a.firstName = :first_name and a.lastName = :last_name", Author.class);
-        query.setParameter("first_name", firstName);
-        query.setParameter("last_name", lastName);
-        Author author = query.getSingleResult();
-        em.close();
-        return author != null ? Optional.of(author) : Optional.empty();
+        return negativeLookups.lookup(em, NegativeLookupCache.nameKey(firstName, lastName),
+                () -> shards.findUnique(shard -> {
+                    TypedQuery<Author> query = em.createQuery("SELECT a FROM Author a " +
+                            "WHERE a.firstName = :first_name and a.lastName = :last_name", Author.class);
+                    query.setParameter("first_name", firstName);
+                    query.setParameter("last_name", lastName);
+                    query.setHint(QueryHints.HINT_CACHEABLE, true);
+                    return NegativeLookupCache.singleResult(shards.withoutQueryCache(query));
+                }));
     }
 
     @Override
     public Author findAuthorByNameCriteria(String firstName, String lastName) {
-        EntityManager em = getEntityManager();
+        return shards.findUnique(shard -> NegativeLookupCache.singleResult(nameCriteria(firstName, lastName)))
+                .orElseThrow(() -> noAuthorNamed(firstName, lastName));
+    }
 
-        try {
-            CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
-            CriteriaQuery<Author> criteriaQuery = criteriaBuilder.createQuery(Author.class);
+    @Override
+    public Optional<Author> lookupAuthorByNameCriteria(String firstName, String lastName) {
+        return negativeLookups.lookup(em, NegativeLookupCache.nameKey(firstName, lastName),
+                () -> shards.findUnique(shard -> NegativeLookupCache.singleResult(nameCriteria(firstName, lastName))));
+    }
 
-            Root<Author> root = criteriaQuery.from(Author.class);
+    private TypedQuery<Author> nameCriteria(String firstName, String lastName) {
+        CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
+        CriteriaQuery<Author> criteriaQuery = criteriaBuilder.createQuery(Author.class);
 
-            ParameterExpression<String> firstNameParam = criteriaBuilder.parameter(String.class);
-            ParameterExpression<String> lastNameParam = criteriaBuilder.parameter(String.class);
+        Root<Author> root = criteriaQuery.from(Author.class);
 
-            Predicate firstNamePred = criteriaBuilder.equal(root.get("firstName"), firstNameParam);
-            Predicate lastNamePred = criteriaBuilder.equal(root.get("lastName"), lastNameParam);
+        ParameterExpression<String> firstNameParam = criteriaBuilder.parameter(String.class);
+        ParameterExpression<String> lastNameParam = criteriaBuilder.parameter(String.class);
 
-            criteriaQuery.select(root).where(criteriaBuilder.and(firstNamePred, lastNamePred));
+        Predicate firstNamePred = criteriaBuilder.equal(root.get("firstName"), firstNameParam);
+        Predicate lastNamePred = criteriaBuilder.equal(root.get("lastName"), lastNameParam);
 
-            TypedQuery<Author> typedQuery = em.createQuery(criteriaQuery);
-            typedQuery.setParameter(firstNameParam, firstName);
-            typedQuery.setParameter(lastNameParam, lastName);
+        criteriaQuery.select(root).where(criteriaBuilder.and(firstNamePred, lastNamePred));
 
-            return typedQuery.getSingleResult();
-        } finally {
-            em.close();
-        }
+        TypedQuery<Author> typedQuery = em.createQuery(criteriaQuery);
+        typedQuery.setParameter(firstNameParam, firstName);
+        typedQuery.setParameter(lastNameParam, lastName);
+        return typedQuery;
     }
 
     @Override
     public Author findAuthorByNameNative(String firstName, String lastName) {
-        EntityManager em = getEntityManager();
+        return uniqueByNameNative(firstName, lastName).orElseThrow(() -> noAuthorNamed(firstName, lastName));
+    }
 
-        try {
-            Query query = em.createNativeQuery("SELECT * FROM author a WHERE a.first_name = ? and a.last_name = ?", Author.class);
-            query.setParameter(1, firstName);
-            query.setParameter(2, lastName);
-            return (Author) query.getSingleResult();
-        } finally {
-            em.close();
-        }
+    @Override
+    public Optional<Author> lookupAuthorByNameNative(String firstName, String lastName) {
+        return negativeLookups.lookup(em, NegativeLookupCache.nameKey(firstName, lastName),
+                () -> uniqueByNameNative(firstName, lastName));
+    }
+
+    private Optional<Author> uniqueByNameNative(String firstName, String lastName) {
+        return shards.findUnique(shard -> NegativeLookupCache.singleResult(nameNative(firstName, lastName),
+                Author.class));
+    }
+
+    private Query nameNative(String firstName, String lastName) {
+        Query query = em.createNativeQuery("SELECT * FROM author a WHERE a.first_name = ? and a.last_name = ?",
+                Author.class);
+        query.setParameter(1, firstName);
+        query.setParameter(2, lastName);
+        return query;
     }
 
+    /**
+     * Runs in a transaction of its own, a failed insert rolls back only that one.
+     */
     @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
     public Optional<Author> save(Author author) {
-        EntityManager em = getEntityManager();
         try {
-            em.getTransaction().begin();
-            em.persist(author);
+            // el id decide el shard: sale del generador del shard 0 y la transacción se enruta antes del insert
+            shards.generateIds(() -> em.persist(author));
+            shards.route(shards.shardOf(author.getId()));
             em.flush();
-            em.getTransaction().commit();
-            em.close();
             return Optional.of(author);
-        } catch (Exception e) {
-            e.printStackTrace();
+        } catch (PersistenceException e) {
+            // transacción propia: el rollback no marca como rollback-only la del llamador
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return Optional.empty();
         }
-        return Optional.empty();
     }
 
     @Override
     public Author getById(Long id) {
-        EntityManager em = getEntityManager();
-        Author author = em.find(Author.class, id);
-        em.close();
-        System.out.println("getById author OUT: " + author);
-        return author;
+        return getById(id, AuthorFetchPlan.AUTHOR_ONLY);
+    }
+
+    @Override
+    public Author getById(Long id, AuthorFetchPlan fetchPlan) {
+        shards.route(shards.shardOf(id));
+        return em.find(Author.class, id, fetchPlan.hints(em));
+    }
+
+    @Override
+    public LookupResult<Author> findAllByIds(Collection<Long> ids) {
+        return MultiIdLoader.load(em, Author.class, ids, shards);
     }
 
     @Override
     public Author findAuthorByName(String firstName, String lastName) {
-        EntityManager em = getEntityManager();
+        return findAuthorByName(firstName, lastName, AuthorFetchPlan.AUTHOR_ONLY);
+    }
+
+    @Override
+    public Author findAuthorByName(String firstName, String lastName, AuthorFetchPlan fetchPlan) {
+        return uniqueByName(firstName, lastName, fetchPlan).orElseThrow(() -> noAuthorNamed(firstName, lastName));
+    }
+
+    @Override
+    public Optional<Author> lookupAuthorByName(String firstName, String lastName, AuthorFetchPlan fetchPlan) {
+        return negativeLookups.lookup(em, NegativeLookupCache.nameKey(firstName, lastName),
+                () -> uniqueByName(firstName, lastName, fetchPlan));
+    }
+
+    private Optional<Author> uniqueByName(String firstName, String lastName, AuthorFetchPlan fetchPlan) {
+        // los nombres son únicos en todos los shards, los upserts los buscan en todos antes de insertar
+        return shards.findUnique(shard -> NegativeLookupCache.singleResult(name(firstName, lastName, fetchPlan)));
+    }
+
+    private static NoResultException noAuthorNamed(String firstName, String lastName) {
+        return new NoResultException("No author found named " + firstName + " " + lastName);
+    }
 
+    private TypedQuery<Author> name(String firstName, String lastName, AuthorFetchPlan fetchPlan) {
         //Typed query por posicion "Positional Parameters"
 
 //        TypedQuery<Author> query = em.createQuery("SELECT a FROM Author a " +
@@ -171,82 +375,220 @@ public class AuthorDaoImpl implements AuthorDao {
                 "WHERE a.firstName = :first_name and a.lastName = :last_name", Author.class);
         query.setParameter("first_name", firstName);
         query.setParameter("last_name", lastName);
-
-        Author author = query.getSingleResult();
-        em.close();
-        return author;
+        fetchPlan.hints(em).forEach(query::setHint);
+        return query;
     }
 
     @Override
+    @Transactional
     public Author saveNewAuthor(Author author) {
-        EntityManager em = getEntityManager();
-
         /**
-         *  persist() -> JPA por defecto hace un lazy save en la BD, para forzarlo hay que incluirlo
-         *  en una transacción con joinTransaction o iniciandola nosotros explicitamente:
-         *
-         *  em.getTransaction().begin();
-         *  em.getTransaction().commit();
-         *
-         *  joinTransaction() lanza un excepcion si no hay una transacción en progreso mejor crearlo
-         *  explicitamente.
+         *  persist() -> JPA por defecto hace un lazy save en la BD, el flush lo fuerza dentro de la
+         *  transacción que abre @Transactional (o a la que se une si ya hay una en progreso).
          */
-
-        em.getTransaction().begin();
-        //em.joinTransaction(); //
-        em.persist(author);
+        // el id decide el shard: sale del generador del shard 0 y la transacción se enruta antes del insert
+        shards.generateIds(() -> em.persist(author));
+        shards.route(shards.shardOf(author.getId()));
         em.flush();
-        em.getTransaction().commit();
-        em.close();
-
-        System.out.println("author: " + author);
         return author;
     }
 
     @Override
-    public Author updateAuthor(Author author) {
-        System.out.println("author IN: " + author);
-        EntityManager em = getEntityManager();
-        em.getTransaction().begin();
-        em.merge(author);
-        // flush fuerza hibernate a actualizar la entidad en la bd no solo en el context
+    @Transactional
+    public List<Author> saveAll(Collection<Author> authors) {
+        if (shards.count() > 1) {
+            // el shard sale del id, que solo se conoce al hacer persist
+            throw new IllegalStateException("Authors cannot be saved in batches across shards, save them one by one " +
+                    "or upsert them by name");
+        }
+        List<Author> batch = new ArrayList<>(batchSize);
+        for (Author author : authors) {
+            em.persist(author);
+            batch.add(author);
+            // flush + detach cada batch para enviar el batch JDBC y no acumular entidades en el contexto, un clear
+            // también soltaría las entidades que el llamador tenga en su transacción
+            if (batch.size() == batchSize) {
+                em.flush();
+                batch.forEach(em::detach);
+                batch.clear();
+            }
+        }
         em.flush();
-        // clear fuerza hibernate a limpiar esta entidad de la cache e ir a buscarla de nuevo a la BD
-        em.clear();
-        em.getTransaction().commit();
-        em.close();
+        return new ArrayList<>(authors);
+    }
 
-        return author;
+    @Override
+    @Transactional
+    public Author updateAuthor(Author author) {
+        shards.route(shards.shardOf(author.getId()));
+        // flush fuerza hibernate a actualizar la entidad en la bd no solo en el context, y a comprobar la versión
+        return OptimisticUpdates.merge(em, Author.class, author.getId(), author);
+    }
+
+    /**
+     * Every attempt runs in a new transaction, a transaction that has hit a conflict can only be rolled back.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Author updateAuthor(Long id, Consumer<Author> changes) {
+        return OptimisticUpdates.retry(em, newTransaction, Author.class, id, () -> shards.route(shards.shardOf(id)),
+                changes);
     }
 
     @Override
+    @Transactional
     public void deleteAuthorById(Long id) {
-        EntityManager em = getEntityManager();
-        em.getTransaction().begin();
+        shards.route(shards.shardOf(id));
         Author author = em.find(Author.class, id);
         em.remove(author);
         em.flush();
-        em.getTransaction().commit();
-        em.close();
     }
 
-    private EntityManager getEntityManager() {
-        return emf.createEntityManager();
+    @Override
+    @Transactional
+    public int deleteAuthorsByIds(Collection<Long> ids) {
+        List<Long> bookIds = new ArrayList<>();
+        AtomicInteger deleted = new AtomicInteger();
+        // los libros de un autor están en su shard, cada shard borra los suyos
+        shards.write(TransactionAspectSupport.currentTransactionStatus(),
+                shards.byShard(new LinkedHashSet<>(ids), id -> id),
+                shardIds -> deleted.addAndGet(deleteAuthors(shardIds, bookIds)));
+        eventPublisher.publishEvent(new CatalogChangedEvent(Book.class, bookIds));
+        eventPublisher.publishEvent(new CatalogChangedEvent(Author.class, ids));
+        return deleted.get();
     }
-}
-
-
-
-
-
-
-
-
-
 
+    private int deleteAuthors(List<Long> ids, List<Long> bookIds) {
+        return BulkOperations.chunks(ids).stream()
+                .mapToInt(chunk -> {
+                    bookIds.addAll(em.createQuery("SELECT b.id FROM Book b WHERE b.author.id IN :ids", Long.class)
+                            .setParameter("ids", chunk)
+                            .getResultList());
+                    // sin cascade en bulk: primero los libros por la FK
+                    em.createQuery("DELETE FROM Book b WHERE b.author.id IN :ids")
+                            .setParameter("ids", chunk)
+                            .executeUpdate();
+                    return em.createQuery("DELETE FROM Author a WHERE a.id IN :ids")
+                            .setParameter("ids", chunk)
+                            .executeUpdate();
+                })
+                .sum();
+    }
 
+    @Override
+    @Transactional
+    public UpsertOutcome upsertAuthorByName(Author author) {
+        return upsertAllAuthorsByName(List.of(author)).get(0);
+    }
 
+    @Override
+    @Transactional
+    public List<UpsertOutcome> upsertAllAuthorsByName(Collection<Author> authors) {
+        // con un nombre a null el índice único no detecta el duplicado
+        Map<List<String>, Author> byName = new LinkedHashMap<>();
+        for (Author author : authors) {
+            if (author.getFirstName() == null || author.getLastName() == null) {
+                throw new IllegalArgumentException("Upserts by name need first and last name: " + author);
+            }
+            byName.put(name(author), author);
+        }
+        // el MERGE no pasa por los listeners de Hibernate
+        negativeLookups.invalidate(em, byName.values().stream()
+                .map(author -> NegativeLookupCache.nameKey(author.getFirstName(), author.getLastName()))
+                .collect(Collectors.toList()));
+
+        Map<List<String>, UpsertOutcome> outcomes = new LinkedHashMap<>();
+        Map<List<String>, Long> ids = new LinkedHashMap<>();
+        // un nombre puede estar en cualquier shard: primero se buscan en todos, los nuevos van al shard de su id
+        for (List<Author> chunk : BulkOperations.chunks(byName.values(), NaturalKeyUpserts.MAX_ROWS)) {
+            shards.scatter(shard -> idsByName(chunk)).forEach(found -> found.forEach((name, id) -> {
+                if (byName.containsKey(name)) {
+                    ids.put(name, id);
+                    outcomes.put(name, UpsertOutcome.UNCHANGED);
+                }
+            }));
+        }
+        List<Author> missing = byName.values().stream()
+                .filter(author -> !ids.containsKey(name(author)))
+                .collect(Collectors.toList());
+        Map<List<String>, Long> newIds = new LinkedHashMap<>();
+        shards.generateIds(() -> {
+            List<Long> generated = NaturalKeyUpserts.newIds(em, Author.class, missing);
+            for (int row = 0; row < missing.size(); row++) {
+                newIds.put(name(missing.get(row)), generated.get(row));
+            }
+        });
+        shards.write(TransactionAspectSupport.currentTransactionStatus(),
+                shards.byShard(missing, author -> newIds.get(name(author))),
+                group -> insert(group, newIds, outcomes, ids));
+
+        authors.forEach(author -> author.setId(ids.get(name(author))));
+        eventPublisher.publishEvent(new CatalogChangedEvent(Author.class,
+                authors.stream().map(Author::getId).collect(Collectors.toList())));
+        return authors.stream().map(author -> outcomes.get(name(author))).collect(Collectors.toList());
+    }
 
+    /**
+     * Inserts the new authors of one shard, in the transaction routed to it. The ones inserted meanwhile by another
+     * transaction are left as they are.
+     */
+    private void insert(List<Author> authors, Map<List<String>, Long> newIds,
+                        Map<List<String>, UpsertOutcome> outcomes, Map<List<String>, Long> ids) {
+        boolean h2 = NaturalKeyUpserts.isH2(em);
+        for (List<Author> chunk : BulkOperations.chunks(authors, NaturalKeyUpserts.MAX_ROWS)) {
+            String rows = NaturalKeyUpserts.rows(chunk.size(), UPSERT_H2_TYPES, h2);
+            String sql = h2
+                    ? "MERGE INTO author t USING (SELECT c1 AS id, c2 AS first_name, c3 AS last_name " +
+                    "FROM (VALUES " + rows + ")) s " +
+                    "ON t.first_name = s.first_name AND t.last_name = s.last_name " +
+                    "WHEN NOT MATCHED THEN INSERT (id, first_name, last_name, version) " +
+                    "VALUES (s.id, s.first_name, s.last_name, 0)"
+                    : "INSERT INTO author (id, first_name, last_name) VALUES " + rows + " " +
+                    "ON DUPLICATE KEY UPDATE id = id";
+
+            NativeQuery<?> query = em.createNativeQuery(sql).unwrap(NativeQuery.class);
+            query.addSynchronizedEntityClass(Author.class);
+            for (int row = 0; row < chunk.size(); row++) {
+                Author author = chunk.get(row);
+                NaturalKeyUpserts.bind(query, row, new Object[]{newIds.get(name(author)), author.getFirstName(),
+                        author.getLastName()}, UPSERT_TYPES);
+            }
+            query.executeUpdate();
+
+            Map<List<String>, Long> found = idsByName(chunk);
+            for (Author author : chunk) {
+                List<String> name = name(author);
+                ids.put(name, found.get(name));
+                boolean inserted = newIds.get(name).equals(found.get(name));
+                outcomes.put(name, inserted ? UpsertOutcome.INSERTED : UpsertOutcome.UNCHANGED);
+            }
+        }
+    }
 
+    /**
+     * Ids of the authors with the names of {@code authors}, by name.
+     */
+    private Map<List<String>, Long> idsByName(List<Author> authors) {
+        Map<List<String>, Long> ids = new LinkedHashMap<>();
+        // superconjunto por nombre y apellido por separado, se filtra por nombre completo
+        em.createQuery("SELECT a.firstName, a.lastName, a.id FROM Author a " +
+                        "WHERE a.firstName IN :firstNames AND a.lastName IN :lastNames", Object[].class)
+                .setParameter("firstNames", authors.stream().map(Author::getFirstName).collect(Collectors.toSet()))
+                .setParameter("lastNames", authors.stream().map(Author::getLastName).collect(Collectors.toSet()))
+                .getResultList()
+                .forEach(row -> ids.put(List.of((String) row[0], (String) row[1]), (Long) row[2]));
+        return ids;
+    }
 
+    private static List<String> name(Author author) {
+        return List.of(author.getFirstName(), author.getLastName());
+    }
 
+    /**
+     * Fetching the books collection joins one row per book, the persistence context returns the same instance for
+     * every row of an author so the duplicates are dropped keeping the query order.
+     */
+    private List<Author> distinct(List<Author> authors, AuthorFetchPlan fetchPlan) {
+        return fetchPlan.fetchesCollection() ? new ArrayList<>(new LinkedHashSet<>(authors)) : authors;
+    }
+}
@@ -0,0 +1,42 @@
+package guru.springframework.jdbc.dao;
+
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.EntityManager;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Associations the {@link AuthorDao} finders load together with the authors. {@code Author.books} is lazy, so
+ * callers that need the books ask for them here and get them in the same query instead of one query per author.
+ */
+public enum AuthorFetchPlan {
+
+    /**
+     * Only the author columns, the books are not loaded.
+     */
+    AUTHOR_ONLY(null),
+
+    /**
+     * The author and its books in one query.
+     */
+    WITH_BOOKS("Author.books");
+
+    private final String entityGraph;
+
+    AuthorFetchPlan(String entityGraph) {
+        this.entityGraph = entityGraph;
+    }
+
+    Map<String, Object> hints(EntityManager em) {
+        if (entityGraph == null) {
+            return Collections.emptyMap();
+        }
+        // cached entities and query results do not carry the association, the graph needs a database read
+        return Map.of("javax.persistence.fetchgraph", em.getEntityGraph(entityGraph),
+                "javax.persistence.cache.retrieveMode", CacheRetrieveMode.BYPASS);
+    }
+
+    boolean fetchesCollection() {
+        return this == WITH_BOOKS;
+    }
+}
@@ -1,9 +1,15 @@
 package guru.springframework.jdbc.dao;
 
 import guru.springframework.jdbc.domain.Book;
+import guru.springframework.jdbc.dto.BookSummary;
+import guru.springframework.jdbc.dto.CatalogRecord;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Created by jt on 8/29/21.
@@ -11,30 +17,214 @@ import java.util.Optional;
 public interface BookDao {
     Book findByISBN(String isbn);
 
+    Book findByISBN(String isbn, BookFetchPlan fetchPlan);
+
+    /**
+     * Like {@link #findByISBN(String)} but empty instead of throwing when there is no such book, and an ISBN looked
+     * up without result is remembered for a short while by the {@link NegativeLookupCache}, so repeated lookups of a
+     * missing ISBN cost neither a query nor an exception.
+     */
+    Optional<Book> lookupByISBN(String isbn);
+
     List<Book> findAll();
 
+    List<Book> findAll(BookFetchPlan fetchPlan);
+
+    /**
+     * Books of the author in id order. With a sharded catalog only the shard of the author is read.
+     */
+    List<Book> findByAuthor(Long authorId);
+
+    /**
+     * Streams every book over a forward-only cursor reading {@code fetchSize} rows per round trip. The entities
+     * are detached as the stream advances. The stream holds a connection until it is closed, so callers must use
+     * try-with-resources. With sharding the shards are read one after the other, each in id order.
+     */
+    Stream<Book> streamAll(int fetchSize);
+
+    /**
+     * Streams every book with the name of its author in id order, read as a projection over a forward-only cursor so
+     * no entity is loaded. Like {@link #streamAll(int)} the stream must be closed and reads the shards in turn.
+     */
+    Stream<CatalogRecord> streamCatalog(int fetchSize);
+
+    /**
+     * Keyset paginated list of all the books sorted by id.
+     *
+     * @param pageSize  rows per page, at least 1
+     * @param pageToken {@code null} for the first page, {@link KeysetPage#getNextPageToken()} for the next ones
+     * @throws IllegalArgumentException if {@code pageSize} is less than 1
+     */
+    KeysetPage<Book> findAllPage(int pageSize, String pageToken);
+
+    /**
+     * Keyset paginated list of the books sorted by {@code (title, id)}. Books without a title come first, by id.
+     *
+     * @param pageSize  rows per page, at least 1
+     * @param pageToken {@code null} for the first page, {@link KeysetPage#getNextPageToken()} for the next ones
+     * @throws IllegalArgumentException if {@code pageSize} is less than 1
+     */
+    KeysetPage<Book> findAllOrderByTitle(int pageSize, String pageToken);
+
+    /**
+     * Summaries of all the books sorted by title, read as a projection so no entity is loaded or tracked.
+     */
+    List<BookSummary> findAllSummaries();
+
+    /**
+     * Keyset paginated {@link #findAllSummaries()} sorted by id.
+     *
+     * @param pageSize  rows per page, at least 1
+     * @param pageToken {@code null} for the first page, {@link KeysetPage#getNextPageToken()} for the next ones
+     * @throws IllegalArgumentException if {@code pageSize} is less than 1
+     */
+    KeysetPage<BookSummary> findSummaryPage(int pageSize, String pageToken);
+
+    /**
+     * Number of books of every publisher in publisher order, the books without publisher under a {@code null} key.
+     * Counted with a {@code GROUP BY}, nothing is loaded.
+     */
+    Map<String, Long> countBooksByPublisher();
+
     List<Book> findAllNamed();
 
+    List<Book> findAllNamed(BookFetchPlan fetchPlan);
+
     Book getById(Long id);
 
+    Book getById(Long id, BookFetchPlan fetchPlan);
+
+    /**
+     * Books by id, without the author. Books in the persistence context or the second-level cache are not read
+     * again, the rest are read with a few padded {@code IN} queries instead of one query per id.
+     *
+     * @return the books in the order of the ids, duplicates once, and the ids without book
+     */
+    LookupResult<Book> findAllByIds(Collection<Long> ids);
+
     Optional<Book> findById(Integer id);
 
+    /**
+     * Book with the title, empty when there is none. A title looked up without result is remembered for a short
+     * while by the {@link NegativeLookupCache}.
+     *
+     * @throws javax.persistence.NonUniqueResultException if several books have the title
+     */
     Optional<Book> findByTitle(String title);
 
     Optional<Book> findByTitleNamedQuery(String title);
 
     Book findBookByTitleCriteria(String title);
 
+    /**
+     * Like {@link #findBookByTitleCriteria(String)} but empty instead of throwing when there is no such book. Misses
+     * are remembered by the {@link NegativeLookupCache} like those of {@link #findByTitle(String)}.
+     *
+     * @throws javax.persistence.NonUniqueResultException if several books have the title
+     */
+    Optional<Book> lookupBookByTitleCriteria(String title);
+
     Book findBookByTitleNative(String title);
 
+    /**
+     * Like {@link #findBookByTitleNative(String)} but empty instead of throwing when there is no such book. Misses
+     * are remembered by the {@link NegativeLookupCache} like those of {@link #findByTitle(String)}.
+     *
+     * @throws javax.persistence.NonUniqueResultException if several books have the title
+     */
+    Optional<Book> lookupBookByTitleNative(String title);
+
     Book findBookByTitle(String title);
 
+    Book findBookByTitle(String title, BookFetchPlan fetchPlan);
+
     Book saveNewBook(Book book);
 
+    /**
+     * Persists the book in a transaction of its own, even inside a caller's transaction.
+     *
+     * @return the book, empty if the insert failed. The caller's transaction is not affected by the failure
+     */
     Optional<Book> save(Book book);
 
+    /**
+     * Persists all the books in a single transaction using JDBC batching, the caller's one if there is one. The
+     * persistence context is flushed every {@code hibernate.jdbc.batch_size} entities and the books of the batch are
+     * detached, so the returned books are detached. Other entities the caller has loaded in its transaction stay
+     * managed. With sharding the books of each shard are written in a transaction routed to it, see
+     * {@link CatalogShards#write}.
+     *
+     * @throws IllegalStateException if the books span shards and the caller has a transaction
+     */
+    List<Book> saveAll(Collection<Book> books);
+
+    /**
+     * Merges a detached book, only if nobody has updated it since it was read: its {@code version} must still be the
+     * current one.
+     *
+     * @throws OptimisticConflictException if the book has been changed or deleted in the meantime
+     */
     Book updateBook(Book book);
 
+    /**
+     * Applies {@code changes} to the current state of the book and saves it, re-reading it and applying them again
+     * when a concurrent update wins. {@code changes} may run more than once, so it must be idempotent.
+     *
+     * @return the updated book, {@code null} if it does not exist
+     * @throws OptimisticConflictException if the book is still contended after a few attempts
+     */
+    Book updateBook(Long id, Consumer<Book> changes);
+
     void deleteBookById(Long id);
 
+    /**
+     * Deletes the books without loading them, see {@link #updatePublisher(String, String)} for the cache effects
+     * and the shards.
+     *
+     * @return number of deleted books
+     * @throws IllegalStateException with several shards, if the caller has a transaction
+     */
+    int deleteBooksByIds(Collection<Long> ids);
+
+    /**
+     * @return number of deleted books
+     * @throws IllegalStateException with several shards, if the caller has a transaction
+     */
+    int deleteBooksByPublisher(String publisher);
+
+    /**
+     * Renames a publisher with a single bulk update, which bumps the version of the books. Bulk statements bypass the
+     * persistence context, so the whole book entity, natural id and {@code Author.books} cache regions are evicted.
+     * With sharding every shard is updated in a transaction of its own, see {@link CatalogShards#write}.
+     *
+     * @return number of updated books
+     * @throws IllegalStateException with several shards, if the caller has a transaction
+     */
+    int updatePublisher(String oldPublisher, String newPublisher);
+
+    /**
+     * Moves every book of an author to another author with a single bulk update, which bumps the version of the
+     * books.
+     *
+     * @return number of updated books
+     * @throws IllegalStateException if the authors are in different shards, books do not move between shards
+     */
+    int reassignBooks(Long fromAuthorId, Long toAuthorId);
+
+    /**
+     * Inserts the book, or replaces title, publisher and author of the book with its ISBN, in a single atomic
+     * statement. The id of the book is set, its version is not.
+     */
+    UpsertOutcome upsertByIsbn(Book book);
+
+    /**
+     * Batched {@link #upsertByIsbn(Book)}, one statement per few hundred books. When an ISBN repeats the last book
+     * wins and all of them get its outcome. With sharding the books of each shard are upserted in a transaction
+     * routed to it, see {@link CatalogShards#write}.
+     *
+     * @return the outcome of every book, in the same order
+     * @throws IllegalStateException if the books span shards and the caller has a transaction
+     */
+    List<UpsertOutcome> upsertAllByIsbn(Collection<Book> books);
+
 }
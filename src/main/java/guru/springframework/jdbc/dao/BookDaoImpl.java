@@ -1,191 +1,642 @@
 package guru.springframework.jdbc.dao;
 
+import guru.springframework.jdbc.domain.Author;
 import guru.springframework.jdbc.domain.Book;
+import guru.springframework.jdbc.domain.IsbnNormalizer;
+import guru.springframework.jdbc.dto.BookSummary;
+import guru.springframework.jdbc.dto.CatalogRecord;
+import org.hibernate.Session;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.NoResultException;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Created by jt on 8/29/21.
  */
 @Component
+@Transactional(readOnly = true)
 public class BookDaoImpl implements BookDao {
+    private static final String[] UPSERT_H2_TYPES = {"BIGINT", "VARCHAR(255)", "VARCHAR(255)", "VARCHAR(255)",
+            "BIGINT"};
+    private static final Type[] UPSERT_TYPES = {StandardBasicTypes.LONG, StandardBasicTypes.STRING,
+            StandardBasicTypes.STRING, StandardBasicTypes.STRING, StandardBasicTypes.LONG};
+
     private final EntityManagerFactory emf;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate newTransaction;
+    private final NegativeLookupCache negativeLookups;
+    private final CatalogShards shards;
+    private final int batchSize;
+
+    @PersistenceContext
+    private EntityManager em;
 
-    public BookDaoImpl(EntityManagerFactory emf) {
+    public BookDaoImpl(EntityManagerFactory emf, ApplicationEventPublisher eventPublisher,
+                       PlatformTransactionManager transactionManager, NegativeLookupCache negativeLookups,
+                       ObjectProvider<CatalogShards> catalogShards,
+                       @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int batchSize) {
         this.emf = emf;
+        this.eventPublisher = eventPublisher;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.negativeLookups = negativeLookups;
+        this.shards = catalogShards.getIfAvailable(CatalogShards::single);
+        this.batchSize = batchSize;
     }
 
     @Override
     public Book findByISBN(String isbn) {
-        EntityManager em = getEntityManager();
-        try {
-            TypedQuery<Book> query = em.createQuery("SELECT b FROM Book b WHERE b.isbn = :isbn", Book.class);
-            query.setParameter("isbn", isbn);
+        return findByISBN(isbn, BookFetchPlan.BOOK_ONLY);
+    }
 
-            return query.getSingleResult();
-        } finally {
-            em.close();
+    @Override
+    public Book findByISBN(String isbn, BookFetchPlan fetchPlan) {
+        String naturalId = IsbnNormalizer.normalize(isbn);
+        return shards.findFirst(shard -> findByNaturalId(naturalId, fetchPlan))
+                .orElseThrow(() -> new NoResultException("No book found with ISBN " + isbn));
+    }
+
+    @Override
+    public Optional<Book> lookupByISBN(String isbn) {
+        String naturalId = IsbnNormalizer.normalize(isbn);
+        return negativeLookups.lookup(em, NegativeLookupCache.isbnKey(naturalId),
+                () -> shards.findFirst(shard -> findByNaturalId(naturalId, BookFetchPlan.BOOK_ONLY)));
+    }
+
+    private Optional<Book> findByNaturalId(String naturalId, BookFetchPlan fetchPlan) {
+        if (fetchPlan == BookFetchPlan.BOOK_ONLY) {
+            // natural id -> id resuelto por la cache de natural ids y la entidad por la cache de segundo nivel
+            return em.unwrap(Session.class).bySimpleNaturalId(Book.class).loadOptional(naturalId);
         }
+
+        TypedQuery<Book> query = em.createQuery("SELECT b FROM Book b WHERE b.isbn = :isbn", Book.class);
+        query.setParameter("isbn", naturalId);
+        fetchPlan.hints(em).forEach(query::setHint);
+        return NegativeLookupCache.singleResult(query);
     }
 
     @Override
     public List<Book> findAll() {
-        EntityManager em = getEntityManager();
-        TypedQuery<Book> query = em.createQuery("SELECT b FROM Book b", Book.class);
-        List<Book> bookList = query.getResultList();
-        em.close();
-        System.out.println("bookList: " + bookList);
-        return bookList;
+        return findAll(BookFetchPlan.BOOK_ONLY);
+    }
+
+    @Override
+    public List<Book> findAll(BookFetchPlan fetchPlan) {
+        return shards.gather(shard -> {
+            TypedQuery<Book> query = em.createQuery("SELECT b FROM Book b", Book.class);
+            fetchPlan.hints(em).forEach(query::setHint);
+            return query.getResultList();
+        }, Comparator.comparing(Book::getId));
+    }
+
+    @Override
+    public List<Book> findByAuthor(Long authorId) {
+        // los libros de un autor están en el shard del autor, la consulta no sale de él
+        shards.route(shards.shardOf(authorId));
+        return em.createQuery("SELECT b FROM Book b WHERE b.author.id = :authorId ORDER BY b.id", Book.class)
+                .setParameter("authorId", authorId)
+                .getResultList();
+    }
+
+    /**
+     * The cursor outlives the call, so the stream gets its own {@link EntityManager} and connection instead of the
+     * transactional one.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Stream<Book> streamAll(int fetchSize) {
+        return EntityStreams.concat(shards, shard -> shards.onShard(shard, () -> {
+            EntityManager streamEm = emf.createEntityManager();
+            TypedQuery<Book> query = streamEm.createQuery("SELECT b FROM Book b ORDER BY b.id", Book.class);
+            return EntityStreams.stream(streamEm, query, fetchSize);
+        }));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Stream<CatalogRecord> streamCatalog(int fetchSize) {
+        // el autor de un libro está en su shard, el LEFT JOIN no sale de él
+        return EntityStreams.concat(shards, shard -> shards.onShard(shard, () -> {
+            EntityManager streamEm = emf.createEntityManager();
+            TypedQuery<CatalogRecord> query = streamEm.createQuery(
+                    "SELECT new guru.springframework.jdbc.dto.CatalogRecord(" +
+                            "b.isbn, b.title, b.publisher, a.firstName, a.lastName) " +
+                            "FROM Book b LEFT JOIN b.author a ORDER BY b.id", CatalogRecord.class);
+            return EntityStreams.stream(streamEm, query, fetchSize);
+        }));
+    }
+
+    @Override
+    public KeysetPage<Book> findAllPage(int pageSize, String pageToken) {
+        KeysetPage.checkPageSize(pageSize);
+        KeysetToken token = pageToken != null ? KeysetToken.decode(pageToken) : null;
+        String seek = token != null ? "WHERE b.id > :id " : "";
+
+        // cada shard devuelve su página, la de la llamada son las primeras filas de todas
+        List<Book> rows = shards.gather(shard -> {
+            TypedQuery<Book> query = em.createQuery("SELECT b FROM Book b " + seek + "ORDER BY b.id", Book.class);
+            if (token != null) {
+                query.setParameter("id", token.getId());
+            }
+            query.setMaxResults(pageSize + 1);
+            return query.getResultList();
+        }, Comparator.comparing(Book::getId));
+
+        return KeysetPage.of(rows, pageSize, book -> KeysetToken.encode(book.getId()));
+    }
+
+    @Override
+    public KeysetPage<Book> findAllOrderByTitle(int pageSize, String pageToken) {
+        KeysetPage.checkPageSize(pageSize);
+        KeysetToken token = pageToken != null ? KeysetToken.decode(pageToken) : null;
+        // los libros sin título van primero, un token sin clave sigue dentro de ese bloque
+        String seek = token == null ? "" : token.getKey() == null
+                ? "WHERE b.title IS NOT NULL OR b.id > :id "
+                : "WHERE b.title > :key OR (b.title = :key AND b.id > :id) ";
+
+        List<Book> rows = shards.gather(shard -> {
+            TypedQuery<Book> query = em.createQuery("SELECT b FROM Book b " + seek +
+                    "ORDER BY CASE WHEN b.title IS NULL THEN 0 ELSE 1 END, b.title, b.id", Book.class);
+            if (token != null) {
+                if (token.getKey() != null) {
+                    query.setParameter("key", token.getKey());
+                }
+                query.setParameter("id", token.getId());
+            }
+            query.setMaxResults(pageSize + 1);
+            return query.getResultList();
+        }, Comparator.comparing(Book::getTitle, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                .thenComparing(Book::getId));
+
+        return KeysetPage.of(rows, pageSize, book -> KeysetToken.encode(book.getTitle(), book.getId()));
+    }
+
+    @Override
+    public List<BookSummary> findAllSummaries() {
+        return shards.gather(shard -> {
+            TypedQuery<BookSummary> query = em.createQuery("SELECT new guru.springframework.jdbc.dto.BookSummary(" +
+                    "b.id, b.title, b.isbn) FROM Book b ORDER BY b.title, b.id", BookSummary.class);
+            query.setHint(QueryHints.HINT_READONLY, true);
+            return query.getResultList();
+        }, Comparator.comparing(BookSummary::title, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(BookSummary::id));
+    }
+
+    @Override
+    public Map<String, Long> countBooksByPublisher() {
+        return shards.sum(shard -> {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            em.createQuery("SELECT b.publisher, COUNT(b) FROM Book b GROUP BY b.publisher ORDER BY b.publisher",
+                            Object[].class)
+                    .getResultList()
+                    .forEach(row -> counts.put((String) row[0], (Long) row[1]));
+            return counts;
+        }, Comparator.nullsFirst(Comparator.naturalOrder()));
+    }
+
+    @Override
+    public KeysetPage<BookSummary> findSummaryPage(int pageSize, String pageToken) {
+        KeysetPage.checkPageSize(pageSize);
+        KeysetToken token = pageToken != null ? KeysetToken.decode(pageToken) : null;
+        String seek = token != null ? "WHERE b.id > :id " : "";
+
+        List<BookSummary> rows = shards.gather(shard -> {
+            TypedQuery<BookSummary> query = em.createQuery("SELECT new guru.springframework.jdbc.dto.BookSummary(" +
+                    "b.id, b.title, b.isbn) FROM Book b " + seek + "ORDER BY b.id", BookSummary.class);
+            if (token != null) {
+                query.setParameter("id", token.getId());
+            }
+            query.setHint(QueryHints.HINT_READONLY, true);
+            query.setMaxResults(pageSize + 1);
+            return query.getResultList();
+        }, Comparator.comparing(BookSummary::id));
+
+        return KeysetPage.of(rows, pageSize, summary -> KeysetToken.encode(summary.id()));
     }
 
     @Override
     public List<Book> findAllNamed() {
-        EntityManager em = getEntityManager();
-        TypedQuery<Book> query = em.createNamedQuery("Book.findAll", Book.class);
-        List<Book> bookList = query.getResultList();
-        em.close();
-        System.out.println("bookList: " + bookList);
-        return bookList;
+        return findAllNamed(BookFetchPlan.BOOK_ONLY);
+    }
+
+    @Override
+    public List<Book> findAllNamed(BookFetchPlan fetchPlan) {
+        return shards.gather(shard -> {
+            TypedQuery<Book> query = shards.withoutQueryCache(em.createNamedQuery("Book.findAll", Book.class));
+            fetchPlan.hints(em).forEach(query::setHint);
+            return query.getResultList();
+        }, Comparator.comparing(Book::getId));
     }
 
     @Override
     public Book getById(Long id) {
-        EntityManager em = getEntityManager();
-        Book book = getEntityManager().find(Book.class, id);
-        em.close();
-        return book;
+        return getById(id, BookFetchPlan.BOOK_ONLY);
+    }
+
+    @Override
+    public Book getById(Long id, BookFetchPlan fetchPlan) {
+        return shards.findFirst(shard -> Optional.ofNullable(em.find(Book.class, id, fetchPlan.hints(em))))
+                .orElse(null);
+    }
+
+    @Override
+    public LookupResult<Book> findAllByIds(Collection<Long> ids) {
+        return MultiIdLoader.load(em, Book.class, ids, shards);
     }
 
     @Override
     public Optional<Book> findById(Integer id) {
-        EntityManager em = getEntityManager();
-        Book book = em.find(Book.class, id);
-        em.close();
-        return book != null ? Optional.of(book) : Optional.empty();
+        return shards.findFirst(shard -> Optional.ofNullable(em.find(Book.class, id)));
     }
 
     @Override
     public Optional<Book> findByTitle(String title) {
-        EntityManager em = getEntityManager();
-        TypedQuery<Book> query = em.createQuery("SELECT b FROM Book b WHERE b.title = :title", Book.class);
-        query.setParameter("title", title);
-        Book book = query.getSingleResult();
-        em.close();
-        return book != null ? Optional.of(book) : Optional.empty();
+        return negativeLookups.lookup(em, NegativeLookupCache.titleKey(title),
+                () -> uniqueByTitle(title, BookFetchPlan.BOOK_ONLY));
     }
 
     @Override
     public Optional<Book> findByTitleNamedQuery(String title) {
-        EntityManager em = getEntityManager();
-        TypedQuery<Book> query = em.createNamedQuery("Book.findByName", Book.class);
-        query.setParameter("title", title);
-        Book book = query.getSingleResult();
-        em.close();
-        return book != null ? Optional.of(book) : Optional.empty();
+        return negativeLookups.lookup(em, NegativeLookupCache.titleKey(title), () -> shards.findUnique(shard -> {
+            TypedQuery<Book> query = shards.withoutQueryCache(em.createNamedQuery("Book.findByName", Book.class));
+            query.setParameter("title", title);
+            return NegativeLookupCache.singleResult(query);
+        }));
     }
 
     @Override
     public Book findBookByTitleCriteria(String title) {
-        EntityManager em = getEntityManager();
+        return shards.findUnique(shard -> NegativeLookupCache.singleResult(titleCriteria(title)))
+                .orElseThrow(() -> noBookTitled(title));
+    }
 
-        try {
-            CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
-            CriteriaQuery<Book> criteriaQuery = criteriaBuilder.createQuery(Book.class);
-            Root<Book> root = criteriaQuery.from(Book.class);
+    @Override
+    public Optional<Book> lookupBookByTitleCriteria(String title) {
+        return negativeLookups.lookup(em, NegativeLookupCache.titleKey(title),
+                () -> shards.findUnique(shard -> NegativeLookupCache.singleResult(titleCriteria(title))));
+    }
 
-            ParameterExpression<String> titleParam = criteriaBuilder.parameter(String.class);
-            Predicate titlePredicate = criteriaBuilder.equal(root.get("title"), titleParam);
-            criteriaQuery.select(root).where(titlePredicate);
+    private TypedQuery<Book> titleCriteria(String title) {
+        CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
+        CriteriaQuery<Book> criteriaQuery = criteriaBuilder.createQuery(Book.class);
+        Root<Book> root = criteriaQuery.from(Book.class);
 
-            TypedQuery<Book> typedQuery = em.createQuery(criteriaQuery);
-            typedQuery.setParameter(titleParam, title);
+        ParameterExpression<String> titleParam = criteriaBuilder.parameter(String.class);
+        Predicate titlePredicate = criteriaBuilder.equal(root.get("title"), titleParam);
+        criteriaQuery.select(root).where(titlePredicate);
 
-            return typedQuery.getSingleResult();
-        } finally {
-            em.close();;
-        }
+        TypedQuery<Book> typedQuery = em.createQuery(criteriaQuery);
+        typedQuery.setParameter(titleParam, title);
+        return typedQuery;
     }
 
     @Override
     public Book findBookByTitleNative(String title) {
-        EntityManager em = getEntityManager();
-        try {
-            Query query = em.createNativeQuery("SELECT * FROM book WHERE title = :title", Book.class);
-            query.setParameter("title", title);
-            return (Book) query.getSingleResult();
-        } finally {
-            em.close();
-        }
+        return uniqueByTitleNative(title).orElseThrow(() -> noBookTitled(title));
     }
 
     @Override
-    public Book findBookByTitle(String title) {
-        EntityManager em = getEntityManager();
-        TypedQuery<Book> query = em.createQuery("SELECT b FROM Book b where b.title = :title", Book.class);
+    public Optional<Book> lookupBookByTitleNative(String title) {
+        return negativeLookups.lookup(em, NegativeLookupCache.titleKey(title), () -> uniqueByTitleNative(title));
+    }
+
+    private Optional<Book> uniqueByTitleNative(String title) {
+        return shards.findUnique(shard -> NegativeLookupCache.singleResult(titleNative(title), Book.class));
+    }
+
+    private Query titleNative(String title) {
+        Query query = em.createNativeQuery("SELECT * FROM book WHERE title = :title", Book.class);
         query.setParameter("title", title);
-        Book book = query.getSingleResult();
-        em.close();
-        return book;
+        return query;
+    }
+
+    @Override
+    public Book findBookByTitle(String title) {
+        return findBookByTitle(title, BookFetchPlan.BOOK_ONLY);
+    }
+
+    @Override
+    public Book findBookByTitle(String title, BookFetchPlan fetchPlan) {
+        return uniqueByTitle(title, fetchPlan).orElseThrow(() -> noBookTitled(title));
+    }
+
+    /**
+     * The title is not a key: books of different authors, and so of different shards, may share it.
+     *
+     * @throws NonUniqueResultException if several books have the title
+     */
+    private Optional<Book> uniqueByTitle(String title, BookFetchPlan fetchPlan) {
+        return shards.findUnique(shard -> {
+            TypedQuery<Book> query = em.createQuery("SELECT b FROM Book b where b.title = :title", Book.class);
+            query.setParameter("title", title);
+            fetchPlan.hints(em).forEach(query::setHint);
+            return NegativeLookupCache.singleResult(query);
+        });
+    }
+
+    private static NoResultException noBookTitled(String title) {
+        return new NoResultException("No book found titled " + title);
     }
 
     @Override
+    @Transactional
     public Book saveNewBook(Book book) {
-        EntityManager em = getEntityManager();
-        em.getTransaction().begin();
+        shards.route(shardOf(book));
         em.persist(book);
         em.flush();
-        em.getTransaction().commit();
-        em.close();
         return book;
     }
 
     @Override
+    @Transactional
+    public List<Book> saveAll(Collection<Book> books) {
+        shards.write(TransactionAspectSupport.currentTransactionStatus(), shards.byShard(books, BookDaoImpl::authorId),
+                this::persistAll);
+        return new ArrayList<>(books);
+    }
+
+    private void persistAll(List<Book> books) {
+        List<Book> batch = new ArrayList<>(batchSize);
+        for (Book book : books) {
+            em.persist(book);
+            batch.add(book);
+            // flush + detach cada batch para enviar el batch JDBC y no acumular entidades en el contexto, un clear
+            // también soltaría las entidades que el llamador tenga en su transacción
+            if (batch.size() == batchSize) {
+                em.flush();
+                batch.forEach(em::detach);
+                batch.clear();
+            }
+        }
+        em.flush();
+    }
+
+    /**
+     * Runs in a transaction of its own, a failed insert rolls back only that one.
+     */
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
     public Optional<Book> save(Book book) {
-        EntityManager em = getEntityManager();
+        shards.route(shardOf(book));
         try {
-            em.getTransaction().begin();
             em.persist(book);
             em.flush();
-            em.getTransaction().commit();
-            em.close();
             return Optional.of(book);
-        } catch (Exception e) {
-            e.printStackTrace();
+        } catch (PersistenceException e) {
+            // transacción propia: el rollback no marca como rollback-only la del llamador
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return Optional.empty();
         }
-        return Optional.empty();
     }
 
     @Override
+    @Transactional
     public Book updateBook(Book book) {
-        EntityManager em = getEntityManager();
-        em.getTransaction().begin();
-        em.merge(book);
-        em.flush();
-        em.clear();
-        Book savedBook = em.find(Book.class, book.getId());
-        em.getTransaction().commit();
-        em.close();
-        return savedBook;
+        shards.route(shardOf(book));
+        return OptimisticUpdates.merge(em, Book.class, book.getId(), book);
+    }
+
+    /**
+     * Every attempt runs in a new transaction, a transaction that has hit a conflict can only be rolled back.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Book updateBook(Long id, Consumer<Book> changes) {
+        // los libros solo cambian de autor dentro del shard, el de la primera lectura vale para todos los intentos
+        int shard = shardOfBook(id);
+        return OptimisticUpdates.retry(em, newTransaction, Book.class, id, () -> shards.route(shard), changes);
     }
 
     @Override
+    @Transactional
     public void deleteBookById(Long id) {
-        EntityManager em = getEntityManager();
-        em.getTransaction().begin();
+        shards.route(shardOfBook(id));
         Book book = em.find(Book.class, id);
         em.remove(book);
-        em.getTransaction().commit();
-        em.close();
     }
 
-    private EntityManager getEntityManager() {
-        return emf.createEntityManager();
+    @Override
+    @Transactional
+    public int deleteBooksByIds(Collection<Long> ids) {
+        // el id no dice el shard: cada shard borra los suyos
+        AtomicInteger deleted = new AtomicInteger();
+        shards.writeEveryShard(TransactionAspectSupport.currentTransactionStatus(),
+                () -> deleted.addAndGet(deleteBooks(ids)));
+        eventPublisher.publishEvent(new CatalogChangedEvent(Book.class, ids));
+        return deleted.get();
+    }
+
+    private int deleteBooks(Collection<Long> ids) {
+        return BulkOperations.chunks(ids).stream()
+                .mapToInt(chunk -> {
+                    AuthorBookCounts.recount(em, authorIds("b.id IN :value", chunk));
+                    return em.createQuery("DELETE FROM Book b WHERE b.id IN :ids")
+                            .setParameter("ids", chunk)
+                            .executeUpdate();
+                })
+                .sum();
+    }
+
+    @Override
+    @Transactional
+    public int deleteBooksByPublisher(String publisher) {
+        List<Long> ids = new ArrayList<>();
+        AtomicInteger deleted = new AtomicInteger();
+        shards.writeEveryShard(TransactionAspectSupport.currentTransactionStatus(), () -> {
+            ids.addAll(bookIds("b.publisher = :value", publisher));
+            AuthorBookCounts.recount(em, authorIds("b.publisher = :value", publisher));
+            deleted.addAndGet(em.createQuery("DELETE FROM Book b WHERE b.publisher = :publisher")
+                    .setParameter("publisher", publisher)
+                    .executeUpdate());
+        });
+        eventPublisher.publishEvent(new CatalogChangedEvent(Book.class, ids));
+        return deleted.get();
+    }
+
+    @Override
+    @Transactional
+    public int updatePublisher(String oldPublisher, String newPublisher) {
+        List<Long> ids = new ArrayList<>();
+        AtomicInteger updated = new AtomicInteger();
+        shards.writeEveryShard(TransactionAspectSupport.currentTransactionStatus(), () -> {
+            ids.addAll(bookIds("b.publisher = :value", oldPublisher));
+            updated.addAndGet(em.createQuery("UPDATE VERSIONED Book b SET b.publisher = :newPublisher " +
+                            "WHERE b.publisher = :oldPublisher")
+                    .setParameter("newPublisher", newPublisher)
+                    .setParameter("oldPublisher", oldPublisher)
+                    .executeUpdate());
+        });
+        eventPublisher.publishEvent(new CatalogChangedEvent(Book.class, ids));
+        return updated.get();
+    }
+
+    @Override
+    @Transactional
+    public int reassignBooks(Long fromAuthorId, Long toAuthorId) {
+        int shard = shards.shardOf(fromAuthorId);
+        if (shard != shards.shardOf(toAuthorId)) {
+            throw new IllegalStateException("Books cannot move between shards, authors " + fromAuthorId + " and " +
+                    toAuthorId + " are in different ones");
+        }
+        shards.route(shard);
+        List<Long> ids = bookIds("b.author.id = :value", fromAuthorId);
+        AuthorBookCounts.recount(em, List.of(fromAuthorId, toAuthorId));
+        int updated = em.createQuery("UPDATE VERSIONED Book b SET b.author = :toAuthor " +
+                        "WHERE b.author.id = :fromAuthorId")
+                .setParameter("toAuthor", em.getReference(Author.class, toAuthorId))
+                .setParameter("fromAuthorId", fromAuthorId)
+                .executeUpdate();
+        eventPublisher.publishEvent(new CatalogChangedEvent(Book.class, ids));
+        return updated;
+    }
+
+    @Override
+    @Transactional
+    public UpsertOutcome upsertByIsbn(Book book) {
+        return upsertAllByIsbn(List.of(book)).get(0);
+    }
+
+    @Override
+    @Transactional
+    public List<UpsertOutcome> upsertAllByIsbn(Collection<Book> books) {
+        // la última escritura de cada isbn gana, un MERGE no admite dos filas con la misma clave
+        Map<String, Book> byIsbn = new LinkedHashMap<>();
+        for (Book book : books) {
+            book.setIsbn(IsbnNormalizer.normalize(book.getIsbn()));
+            if (book.getIsbn() == null || book.getIsbn().isEmpty()) {
+                throw new IllegalArgumentException("Upserts by ISBN need an ISBN: " + book);
+            }
+            byIsbn.put(book.getIsbn(), book);
+        }
+        // el MERGE no pasa por los listeners de Hibernate
+        negativeLookups.invalidate(em, byIsbn.values().stream()
+                .flatMap(book -> Stream.of(NegativeLookupCache.isbnKey(book.getIsbn()),
+                        NegativeLookupCache.titleKey(book.getTitle())))
+                .collect(Collectors.toList()));
+
+        Map<String, UpsertOutcome> outcomes = new LinkedHashMap<>();
+        Map<String, Long> ids = new LinkedHashMap<>();
+        shards.write(TransactionAspectSupport.currentTransactionStatus(),
+                shards.byShard(byIsbn.values(), BookDaoImpl::authorId), group -> upsert(group, outcomes, ids));
+
+        books.forEach(book -> book.setId(ids.get(book.getIsbn())));
+        eventPublisher.publishEvent(new CatalogChangedEvent(Book.class, ids.values()));
+        return books.stream().map(book -> outcomes.get(book.getIsbn())).collect(Collectors.toList());
+    }
+
+    /**
+     * Upserts the books of one shard, in the transaction routed to it.
+     */
+    private void upsert(List<Book> books, Map<String, UpsertOutcome> outcomes, Map<String, Long> ids) {
+        boolean h2 = NaturalKeyUpserts.isH2(em);
+        for (List<Book> chunk : BulkOperations.chunks(books, NaturalKeyUpserts.MAX_ROWS)) {
+            List<Long> newIds = NaturalKeyUpserts.newIds(em, Book.class, chunk);
+            // autores de antes y de después del upsert
+            AuthorBookCounts.recount(em, authorIds("b.isbn IN :value",
+                    chunk.stream().map(Book::getIsbn).collect(Collectors.toList())));
+            AuthorBookCounts.recount(em, chunk.stream().filter(book -> book.getAuthor() != null)
+                    .map(book -> book.getAuthor().getId()).collect(Collectors.toList()));
+            String rows = NaturalKeyUpserts.rows(chunk.size(), UPSERT_H2_TYPES, h2);
+            String sql = h2
+                    ? "MERGE INTO book t USING (SELECT c1 AS id, c2 AS isbn, c3 AS title, c4 AS publisher, " +
+                    "c5 AS author_id FROM (VALUES " + rows + ")) s " +
+                    "ON t.isbn = s.isbn " +
+                    "WHEN MATCHED THEN UPDATE SET title = s.title, publisher = s.publisher, author_id = s.author_id, " +
+                    "version = t.version + 1 " +
+                    "WHEN NOT MATCHED THEN INSERT (id, isbn, title, publisher, author_id, version) " +
+                    "VALUES (s.id, s.isbn, s.title, s.publisher, s.author_id, 0)"
+                    : "INSERT INTO book (id, isbn, title, publisher, author_id) VALUES " + rows + " " +
+                    "ON DUPLICATE KEY UPDATE title = VALUES(title), publisher = VALUES(publisher), " +
+                    "author_id = VALUES(author_id), version = version + 1";
+
+            // los espacios sincronizados hacen que Hibernate invalide la cache de libros y las queries sobre book
+            NativeQuery<?> query = em.createNativeQuery(sql).unwrap(NativeQuery.class);
+            query.addSynchronizedEntityClass(Book.class);
+            for (int row = 0; row < chunk.size(); row++) {
+                Book book = chunk.get(row);
+                Long authorId = book.getAuthor() != null ? book.getAuthor().getId() : null;
+                NaturalKeyUpserts.bind(query, row, new Object[]{newIds.get(row), book.getIsbn(), book.getTitle(),
+                        book.getPublisher(), authorId}, UPSERT_TYPES);
+            }
+            query.executeUpdate();
+
+            em.createQuery("SELECT b.isbn, b.id FROM Book b WHERE b.isbn IN :isbns", Object[].class)
+                    .setParameter("isbns", chunk.stream().map(Book::getIsbn).collect(Collectors.toList()))
+                    .getResultList()
+                    .forEach(row -> ids.put((String) row[0], (Long) row[1]));
+            for (int row = 0; row < chunk.size(); row++) {
+                String isbn = chunk.get(row).getIsbn();
+                boolean inserted = newIds.get(row).equals(ids.get(isbn));
+                outcomes.put(isbn, inserted ? UpsertOutcome.INSERTED : UpsertOutcome.UPDATED);
+            }
+        }
+    }
+
+    /**
+     * The shard that has the book, 0 if none has it. The id does not tell the shard and neither does the second-level
+     * cache, which is shared by all of them.
+     */
+    private int shardOfBook(Long id) {
+        return shards.locate(shard -> em.createQuery("SELECT COUNT(b) FROM Book b WHERE b.id = :id", Long.class)
+                .setParameter("id", id)
+                .getSingleResult() > 0);
+    }
+
+    private int shardOf(Book book) {
+        return shards.shardOf(authorId(book));
+    }
+
+    private static Long authorId(Book book) {
+        return book.getAuthor() != null ? book.getAuthor().getId() : null;
+    }
+
+    /**
+     * Ids of the books a bulk statement is about to change, for the {@link CatalogChangedEvent}.
+     */
+    private List<Long> bookIds(String where, Object value) {
+        return em.createQuery("SELECT b.id FROM Book b WHERE " + where, Long.class)
+                .setParameter("value", value)
+                .getResultList();
+    }
+
+    /**
+     * Authors of the books a bulk statement is about to change, their book counts are recounted on commit.
+     */
+    private List<Long> authorIds(String where, Object value) {
+        return em.createQuery("SELECT DISTINCT b.author.id FROM Book b WHERE " + where, Long.class)
+                .setParameter("value", value)
+                .getResultList();
     }
 }
@@ -0,0 +1,38 @@
+package guru.springframework.jdbc.dao;
+
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.EntityManager;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Associations the {@link BookDao} finders load together with the books. {@code Book.author} is lazy, so callers
+ * that need the author ask for it here and get it in the same query instead of one query per book.
+ */
+public enum BookFetchPlan {
+
+    /**
+     * Only the book columns, the author is not loaded.
+     */
+    BOOK_ONLY(null),
+
+    /**
+     * The book and its author in one query.
+     */
+    WITH_AUTHOR("Book.author");
+
+    private final String entityGraph;
+
+    BookFetchPlan(String entityGraph) {
+        this.entityGraph = entityGraph;
+    }
+
+    Map<String, Object> hints(EntityManager em) {
+        if (entityGraph == null) {
+            return Collections.emptyMap();
+        }
+        // cached entities and query results do not carry the association, the graph needs a database read
+        return Map.of("javax.persistence.fetchgraph", em.getEntityGraph(entityGraph),
+                "javax.persistence.cache.retrieveMode", CacheRetrieveMode.BYPASS);
+    }
+}
@@ -0,0 +1,40 @@
+package guru.springframework.jdbc.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers for JPQL bulk statements. Hibernate evicts the second-level cache regions of the entities a bulk statement
+ * touches (entity, natural id and the collections holding them) and invalidates the cached queries on their tables,
+ * so nothing stale is served after the update.
+ */
+final class BulkOperations {
+
+    /**
+     * Ids bound per {@code IN} list, keeps the statements below the driver and database parameter limits.
+     */
+    static final int MAX_IN_PARAMETERS = 1000;
+
+    private BulkOperations() {
+    }
+
+    static <T> List<List<T>> chunks(Iterable<T> values) {
+        return chunks(values, MAX_IN_PARAMETERS);
+    }
+
+    static <T> List<List<T>> chunks(Iterable<T> values, int size) {
+        List<List<T>> chunks = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(size);
+        for (T value : values) {
+            chunk.add(value);
+            if (chunk.size() == size) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(size);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
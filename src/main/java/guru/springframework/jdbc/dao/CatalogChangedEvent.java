@@ -0,0 +1,14 @@
+package guru.springframework.jdbc.dao;
+
+import java.util.Collection;
+
+/**
+ * Published by the DAOs for the rows a bulk or native statement changed. Those statements bypass the persistence
+ * context, so the Hibernate entity events that keep derived state like the search index in sync do not see them.
+ * Listeners should use {@code @TransactionalEventListener} to act after the commit only.
+ *
+ * @param entityType {@code Author} or {@code Book}
+ * @param ids        ids of the inserted, updated or deleted rows
+ */
+public record CatalogChangedEvent(Class<?> entityType, Collection<Long> ids) {
+}
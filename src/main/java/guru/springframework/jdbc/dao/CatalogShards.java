@@ -0,0 +1,168 @@
+package guru.springframework.jdbc.dao;
+
+import org.hibernate.jpa.QueryHints;
+import org.springframework.transaction.TransactionStatus;
+
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.TypedQuery;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * The databases the catalog is split across. An author and its books live in shard {@code floorMod(authorId, count)},
+ * books without author in shard 0. Without sharding there is one shard and every call runs in place, in the
+ * transaction of the caller.
+ */
+public interface CatalogShards {
+
+    static CatalogShards single() {
+        return SingleCatalogShard.INSTANCE;
+    }
+
+    int count();
+
+    default int shardOf(Long authorId) {
+        return authorId != null ? Math.floorMod(authorId, count()) : 0;
+    }
+
+    /**
+     * Sends the statements of the current transaction to the shard. Must be called before its first statement, a
+     * transaction cannot span shards.
+     *
+     * @throws IllegalStateException if the transaction was already routed to another shard
+     */
+    void route(int shard);
+
+    /**
+     * The rows grouped by the shard of their author, in shard order.
+     */
+    default <T> Map<Integer, List<T>> byShard(Collection<T> rows, Function<T, Long> authorId) {
+        return rows.stream().collect(Collectors.groupingBy(row -> shardOf(authorId.apply(row)), TreeMap::new,
+                Collectors.toList()));
+    }
+
+    /**
+     * Writes the rows of every shard in a transaction routed to it. The rows of one shard are written in the
+     * transaction of the call. Rows of several shards are written each in a transaction of their own, so the call
+     * must have started its transaction and not routed it yet; a failure leaves the shards written before committed.
+     *
+     * @param transaction the transaction of the call
+     * @throws IllegalStateException if the rows span shards and the transaction of the call is not a new one
+     */
+    <T> void write(TransactionStatus transaction, Map<Integer, List<T>> byShard, Consumer<List<T>> write);
+
+    /**
+     * Runs a bulk write on every shard, for rows whose shard is not known. See {@link #write}.
+     *
+     * @throws IllegalStateException if there are several shards and the transaction of the call is not a new one
+     */
+    default void writeEveryShard(TransactionStatus transaction, Runnable bulk) {
+        Map<Integer, List<Integer>> every = new TreeMap<>();
+        for (int shard = 0; shard < count(); shard++) {
+            every.put(shard, List.of(shard));
+        }
+        write(transaction, every, shard -> bulk.run());
+    }
+
+    /**
+     * Runs {@code persist} with the id generators of shard 0, whatever shard the thread is routed to. For entities
+     * whose generated id picks their shard: their ids come from one range, and the transaction is routed once they
+     * have it, before its first statement.
+     */
+    default void generateIds(Runnable persist) {
+        persist.run();
+    }
+
+    /**
+     * Runs the read on every shard, each in a read-only transaction of its own and in parallel.
+     *
+     * @return the result of every shard, in shard order
+     */
+    <T> List<T> scatter(IntFunction<T> read);
+
+    /**
+     * The rows of every shard, sorted by {@code order}. From a single shard they are returned as read.
+     */
+    default <T> List<T> gather(IntFunction<List<T>> read, Comparator<? super T> order) {
+        List<List<T>> results = scatter(read);
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+        return results.stream().flatMap(List::stream).sorted(order).collect(Collectors.toList());
+    }
+
+    /**
+     * The counts of every shard added up by key, sorted by {@code order}. From a single shard they are returned as
+     * read.
+     */
+    default <K> Map<K, Long> sum(IntFunction<Map<K, Long>> read, Comparator<? super K> order) {
+        List<Map<K, Long>> results = scatter(read);
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+        Map<K, Long> sums = new TreeMap<>(order);
+        results.forEach(counts -> counts.forEach((key, count) -> sums.merge(key, count, Long::sum)));
+        return new LinkedHashMap<>(sums);
+    }
+
+    /**
+     * The result of the first shard that has one, for rows that live in a single shard.
+     */
+    default <T> Optional<T> findFirst(IntFunction<Optional<T>> read) {
+        return scatter(read).stream().flatMap(Optional::stream).findFirst();
+    }
+
+    /**
+     * The result of the only shard that has one, for rows whose key is not unique across shards.
+     *
+     * @throws NonUniqueResultException if several shards have one
+     */
+    default <T> Optional<T> findUnique(IntFunction<Optional<T>> read) {
+        List<T> found = scatter(read).stream().flatMap(Optional::stream).collect(Collectors.toList());
+        if (found.size() > 1) {
+            throw new NonUniqueResultException("Results in " + found.size() + " shards");
+        }
+        return found.stream().findFirst();
+    }
+
+    /**
+     * Keeps a cacheable query out of the query cache when there are several shards. The cache is shared by the
+     * shards and keyed by the query and its parameters, the result of one shard would be returned for the others.
+     */
+    default <T> TypedQuery<T> withoutQueryCache(TypedQuery<T> query) {
+        if (count() > 1) {
+            query.setHint(QueryHints.HINT_CACHEABLE, false);
+        }
+        return query;
+    }
+
+    /**
+     * Runs {@code open} outside of any transaction with the connections it opens sent to the shard, for cursors that
+     * outlive the call and so cannot be read in a scatter. With a single shard it just runs.
+     */
+    default <T> T onShard(int shard, Supplier<T> open) {
+        return open.get();
+    }
+
+    /**
+     * The first shard where {@code hasRow} holds, 0 if there is none. With a single shard it is not evaluated.
+     */
+    default int locate(IntPredicate hasRow) {
+        if (count() == 1) {
+            return 0;
+        }
+        List<Boolean> found = scatter(hasRow::test);
+        return Math.max(0, found.indexOf(Boolean.TRUE));
+    }
+}
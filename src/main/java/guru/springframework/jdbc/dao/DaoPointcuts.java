@@ -0,0 +1,42 @@
+package guru.springframework.jdbc.dao;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.core.Ordered;
+
+/**
+ * Pointcuts shared by the aspects that observe the DAO layer.
+ */
+public final class DaoPointcuts {
+
+    /**
+     * Order of {@code DaoMetricsAspect}, outside the transaction advisor ({@link Ordered#LOWEST_PRECEDENCE}) so the
+     * commit, and the flush that comes with it, is part of the measured call.
+     */
+    public static final int METRICS_ORDER = Ordered.LOWEST_PRECEDENCE - 20;
+
+    /**
+     * Order of {@code SqlInspectionAspect}, inside the metrics and outside the transaction advisor so the statements
+     * executed on commit count for the call.
+     */
+    public static final int INSPECTION_ORDER = Ordered.LOWEST_PRECEDENCE - 10;
+
+    private DaoPointcuts() {
+    }
+
+    /**
+     * Any public method of an {@link AuthorDao} or {@link BookDao} implementation.
+     */
+    @Pointcut("execution(public * guru.springframework.jdbc.dao.AuthorDao+.*(..)) || " +
+            "execution(public * guru.springframework.jdbc.dao.BookDao+.*(..))")
+    public void daoOperation() {
+    }
+
+    /**
+     * DAO interface the intercepted call belongs to.
+     */
+    public static String daoName(JoinPoint joinPoint) {
+        return joinPoint.getTarget() instanceof AuthorDao ? AuthorDao.class.getSimpleName()
+                : BookDao.class.getSimpleName();
+    }
+}
@@ -0,0 +1,134 @@
+package guru.springframework.jdbc.dao;
+
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.query.Query;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Turns a query into a {@link Stream} backed by a forward-only cursor. Every entity is detached before it is handed
+ * to the consumer and the persistence context is cleared every {@code fetchSize} rows, so memory stays flat no
+ * matter how many rows the query returns. Projections are handed over as they are. Closing the stream closes the
+ * cursor and the {@link EntityManager}.
+ */
+final class EntityStreams {
+
+    private EntityStreams() {
+    }
+
+    static <T> Stream<T> stream(EntityManager em, TypedQuery<T> typedQuery, int fetchSize) {
+        ScrollableResults results;
+        try {
+            Query<?> query = typedQuery.unwrap(Query.class);
+            query.setFetchSize(fetchSize);
+            query.setReadOnly(true);
+            query.setCacheMode(CacheMode.IGNORE);
+            results = query.scroll(ScrollMode.FORWARD_ONLY);
+        } catch (RuntimeException e) {
+            em.close();
+            throw e;
+        }
+
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            private long count;
+            private Boolean entities;
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (!results.next()) {
+                    return false;
+                }
+                T entity = (T) results.get(0);
+                if (entities == null) {
+                    entities = isEntity(em, entity);
+                }
+                if (entities) {
+                    em.detach(entity);
+                }
+                // las asociaciones EAGER se quedan en el contexto, se limpia cada fetchSize filas
+                if (++count % fetchSize == 0) {
+                    em.clear();
+                }
+                action.accept(entity);
+                return true;
+            }
+        };
+
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                results.close();
+            } finally {
+                em.close();
+            }
+        });
+    }
+
+    /**
+     * The streams of every shard one after the other, each opened once the previous one is exhausted and closed
+     * then, so a single cursor is open at a time. Unlike {@link Stream#flatMap} nothing is buffered when the stream
+     * is read through its iterator.
+     */
+    static <T> Stream<T> concat(CatalogShards shards, IntFunction<Stream<T>> open) {
+        if (shards.count() == 1) {
+            return open.apply(0);
+        }
+        ShardCursors<T> cursors = new ShardCursors<>(shards.count(), open);
+        return StreamSupport.stream(cursors, false).onClose(cursors::close);
+    }
+
+    private static boolean isEntity(EntityManager em, Object row) {
+        return em.getMetamodel().getEntities().stream().anyMatch(type -> type.getJavaType().isInstance(row));
+    }
+
+    private static final class ShardCursors<T> extends Spliterators.AbstractSpliterator<T> {
+
+        private final int count;
+        private final IntFunction<Stream<T>> open;
+        private int next;
+        private Stream<T> current;
+        private Spliterator<T> rows;
+
+        private ShardCursors(int count, IntFunction<Stream<T>> open) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.count = count;
+            this.open = open;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            while (true) {
+                if (rows == null) {
+                    if (next == count) {
+                        return false;
+                    }
+                    current = open.apply(next++);
+                    rows = current.spliterator();
+                }
+                if (rows.tryAdvance(action)) {
+                    return true;
+                }
+                close();
+            }
+        }
+
+        private void close() {
+            if (current != null) {
+                Stream<T> closing = current;
+                current = null;
+                rows = null;
+                closing.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package guru.springframework.jdbc.dao;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset (seek) paginated query. The next page is requested with {@link #getNextPageToken()}, an
+ * opaque token holding the sort key of the last row, so every page costs the same as the first one.
+ */
+public class KeysetPage<T> {
+
+    private final List<T> content;
+    private final String nextPageToken;
+
+    public KeysetPage(List<T> content, String nextPageToken) {
+        this.content = Collections.unmodifiableList(content);
+        this.nextPageToken = nextPageToken;
+    }
+
+    /**
+     * Checked before the query runs, the query fetches {@code pageSize + 1} rows.
+     *
+     * @throws IllegalArgumentException if {@code pageSize} is less than 1
+     */
+    static int checkPageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1: " + pageSize);
+        }
+        return pageSize;
+    }
+
+    /**
+     * Builds a page from a query that fetched {@code pageSize + 1} rows, the extra row only tells if there is a
+     * next page.
+     */
+    static <T> KeysetPage<T> of(List<T> rows, int pageSize, Function<T, String> tokenOf) {
+        checkPageSize(pageSize);
+        if (rows.size() <= pageSize) {
+            return new KeysetPage<>(rows, null);
+        }
+        List<T> content = rows.subList(0, pageSize);
+        return new KeysetPage<>(content, tokenOf.apply(content.get(pageSize - 1)));
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    public boolean hasNext() {
+        return nextPageToken != null;
+    }
+
+    @Override
+    public String toString() {
+        return "KeysetPage{" +
+                "size=" + content.size() +
+                ", nextPageToken='" + nextPageToken + '\'' +
+                '}';
+    }
+}
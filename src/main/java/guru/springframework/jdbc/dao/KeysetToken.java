@@ -0,0 +1,51 @@
+package guru.springframework.jdbc.dao;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Sort key of the last row of a {@link KeysetPage}, encoded as an opaque url safe token. The key is optional, pages
+ * sorted only by id just carry the id.
+ */
+final class KeysetToken {
+
+    private static final char SEPARATOR = '|';
+
+    private final String key;
+    private final Long id;
+
+    private KeysetToken(String key, Long id) {
+        this.key = key;
+        this.id = id;
+    }
+
+    static String encode(Long id) {
+        return encode(null, id);
+    }
+
+    static String encode(String key, Long id) {
+        String raw = key == null ? String.valueOf(id) : key + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static KeysetToken decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(SEPARATOR);
+            if (separator < 0) {
+                return new KeysetToken(null, Long.valueOf(raw));
+            }
+            return new KeysetToken(raw.substring(0, separator), Long.valueOf(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page token: " + token, e);
+        }
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    Long getId() {
+        return id;
+    }
+}
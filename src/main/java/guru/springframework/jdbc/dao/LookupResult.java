@@ -0,0 +1,44 @@
+package guru.springframework.jdbc.dao;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Entities found for a list of ids, in the order of the ids, and the ids that matched nothing.
+ */
+public class LookupResult<T> {
+
+    private final List<T> found;
+    private final List<Long> missingIds;
+
+    public LookupResult(List<T> found, List<Long> missingIds) {
+        this.found = Collections.unmodifiableList(found);
+        this.missingIds = Collections.unmodifiableList(missingIds);
+    }
+
+    /**
+     * One entity per distinct id found, in the order the ids were given.
+     */
+    public List<T> getFound() {
+        return found;
+    }
+
+    /**
+     * Ids without entity, in the order they were given.
+     */
+    public List<Long> getMissingIds() {
+        return missingIds;
+    }
+
+    public boolean hasMissing() {
+        return !missingIds.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "LookupResult{" +
+                "found=" + found.size() +
+                ", missingIds=" + missingIds +
+                '}';
+    }
+}
@@ -0,0 +1,114 @@
+package guru.springframework.jdbc.dao;
+
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads entities by a list of ids. Entities already in the persistence context or the second-level cache are taken
+ * from there, the rest are read with {@code IN} queries. The {@code IN} lists are padded, repeating the last id, to
+ * one of a few fixed sizes so any number of ids maps to the same handful of SQL strings and the prepared statement
+ * caches stay warm.
+ */
+final class MultiIdLoader {
+
+    /**
+     * Padded {@code IN} list sizes, the largest is {@link BulkOperations#MAX_IN_PARAMETERS}.
+     */
+    static final int[] BATCH_SIZES = {1, 4, 16, 64, 256, BulkOperations.MAX_IN_PARAMETERS};
+
+    private MultiIdLoader() {
+    }
+
+    static <T> LookupResult<T> load(EntityManager em, Class<T> type, Collection<Long> ids) {
+        Set<Long> distinct = new LinkedHashSet<>(ids);
+        if (distinct.contains(null)) {
+            throw new IllegalArgumentException("Null id in " + ids);
+        }
+
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(type);
+        Cache cache = em.getEntityManagerFactory().getCache();
+        Map<Long, T> found = new HashMap<>();
+        List<Long> unresolved = new ArrayList<>();
+        for (Long id : distinct) {
+            boolean managed = session.getPersistenceContext()
+                    .getEntity(session.generateEntityKey(id, persister)) != null;
+            // find lo resuelve sin SQL desde el contexto de persistencia o la cache de segundo nivel
+            if (managed || cache.contains(type, id)) {
+                T entity = em.find(type, id);
+                if (entity != null) {
+                    found.put(id, entity);
+                    continue;
+                }
+            }
+            unresolved.add(id);
+        }
+
+        String jpql = "SELECT e FROM " + persister.getEntityName() + " e WHERE e.id IN :ids";
+        for (List<Long> batch : BulkOperations.chunks(unresolved, BulkOperations.MAX_IN_PARAMETERS)) {
+            for (T entity : em.createQuery(jpql, type).setParameter("ids", pad(batch)).getResultList()) {
+                found.put((Long) persister.getIdentifier(entity, session), entity);
+            }
+        }
+        return result(distinct, found);
+    }
+
+    /**
+     * Loads the ids on every shard, an id lives in one of them. With a single shard it is {@link #load}.
+     */
+    static <T> LookupResult<T> load(EntityManager em, Class<T> type, Collection<Long> ids, CatalogShards shards) {
+        if (shards.count() == 1) {
+            return load(em, type, ids);
+        }
+        Set<Long> distinct = new LinkedHashSet<>(ids);
+        if (distinct.contains(null)) {
+            throw new IllegalArgumentException("Null id in " + ids);
+        }
+
+        PersistenceUnitUtil util = em.getEntityManagerFactory().getPersistenceUnitUtil();
+        Map<Long, T> found = new HashMap<>();
+        shards.scatter(shard -> load(em, type, distinct).getFound())
+                .forEach(entities -> entities.forEach(entity -> found.put((Long) util.getIdentifier(entity), entity)));
+        return result(distinct, found);
+    }
+
+    private static <T> LookupResult<T> result(Set<Long> distinct, Map<Long, T> found) {
+        List<T> ordered = new ArrayList<>(found.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : distinct) {
+            T entity = found.get(id);
+            if (entity != null) {
+                ordered.add(entity);
+            } else {
+                missing.add(id);
+            }
+        }
+        return new LookupResult<>(ordered, missing);
+    }
+
+    static List<Long> pad(List<Long> batch) {
+        int size = BATCH_SIZES[BATCH_SIZES.length - 1];
+        for (int candidate : BATCH_SIZES) {
+            if (candidate >= batch.size()) {
+                size = candidate;
+                break;
+            }
+        }
+        List<Long> padded = new ArrayList<>(size);
+        padded.addAll(batch);
+        padded.addAll(Collections.nCopies(size - batch.size(), batch.get(batch.size() - 1)));
+        return padded;
+    }
+}
@@ -0,0 +1,75 @@
+package guru.springframework.jdbc.dao;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.Type;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Helpers for the native upserts by natural key: one {@code INSERT ... ON DUPLICATE KEY UPDATE} on MySQL, one
+ * {@code MERGE ... USING (VALUES ...)} on H2, per chunk of rows. Every row carries an id taken from the Hibernate
+ * generator of the entity, so a row was inserted if it ends up with that id.
+ */
+final class NaturalKeyUpserts {
+
+    /**
+     * Rows per statement, keeps the number of bound parameters well below the MySQL limit.
+     */
+    static final int MAX_ROWS = 500;
+
+    private NaturalKeyUpserts() {
+    }
+
+    static boolean isH2(EntityManager em) {
+        return em.unwrap(Session.class).doReturningWork(connection ->
+                "H2".equals(connection.getMetaData().getDatabaseProductName()));
+    }
+
+    /**
+     * New ids for the rows from the id generator of the entity, the ones not inserted are lost like with a rollback.
+     */
+    static List<Long> newIds(EntityManager em, Class<?> entityType, List<?> entities) {
+        SharedSessionContractImplementor session = em.unwrap(SharedSessionContractImplementor.class);
+        IdentifierGenerator generator = session.getFactory().getMetamodel().entityPersister(entityType)
+                .getIdentifierGenerator();
+        List<Long> ids = new ArrayList<>(entities.size());
+        for (Object entity : entities) {
+            ids.add((Long) generator.generate(session, entity));
+        }
+        return ids;
+    }
+
+    /**
+     * {@code rowCount} rows of {@code types.length} numbered parameters, {@code (?1, ?2), (?3, ?4)}. On H2 every
+     * parameter is cast to its column type, the {@code VALUES} of a {@code MERGE} can not infer it, and the columns
+     * are named {@code c1, c2...}.
+     */
+    static String rows(int rowCount, String[] h2Types, boolean h2) {
+        StringJoiner rows = new StringJoiner(", ");
+        int position = 1;
+        for (int row = 0; row < rowCount; row++) {
+            StringJoiner values = new StringJoiner(", ", "(", ")");
+            for (String h2Type : h2Types) {
+                values.add(h2 ? "CAST(?" + position++ + " AS " + h2Type + ")" : "?" + position++);
+            }
+            rows.add(values.toString());
+        }
+        return rows.toString();
+    }
+
+    /**
+     * Binds one row of values, {@code null} values included, starting at the parameter of the row.
+     */
+    static void bind(NativeQuery<?> query, int row, Object[] values, Type[] types) {
+        int position = row * values.length + 1;
+        for (int i = 0; i < values.length; i++) {
+            query.setParameter(position + i, values[i], types[i]);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package guru.springframework.jdbc.dao;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.domain.Book;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Remembers for {@code ttl} the lookups by ISBN, title and author name that found nothing, so a lookup repeated for a
+ * key the catalog does not have is answered without a query. At most {@code max-size} keys are kept.
+ * <p>
+ * Books and authors inserted or updated through Hibernate drop their keys, at flush and again once the transaction
+ * completes; the DAO upserts drop the keys they write. A miss is only remembered when no key was dropped while its
+ * query ran, so a lookup racing with an insert never caches a stale miss. Rows written outside the application are
+ * seen after {@code ttl} at worst.
+ */
+@Component
+public class NegativeLookupCache implements PostInsertEventListener, PostUpdateEventListener {
+
+    private final Cache<List<Object>, Boolean> misses;
+    // cambia con cada invalidación, una consulta solo guarda su fallo si no ha cambiado mientras se ejecutaba
+    private final AtomicLong generation = new AtomicLong();
+
+    public NegativeLookupCache(EntityManagerFactory emf,
+                               @Value("${sdjpa.lookup.negative-cache.max-size:10000}") long maxSize,
+                               @Value("${sdjpa.lookup.negative-cache.ttl:30s}") Duration ttl) {
+        this.misses = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).build();
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class).getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+    }
+
+    static List<Object> isbnKey(String isbn) {
+        return key("Book.isbn", isbn);
+    }
+
+    static List<Object> titleKey(String title) {
+        return key("Book.title", title);
+    }
+
+    static List<Object> nameKey(String firstName, String lastName) {
+        return key("Author.name", firstName, lastName);
+    }
+
+    /**
+     * Runs {@code query} unless {@code key} is a remembered miss. The cache is skipped while the persistence context
+     * has inserts or updates waiting for a flush, the query flushes them and may find them.
+     */
+    <T> Optional<T> lookup(EntityManager em, List<Object> key, Supplier<Optional<T>> query) {
+        if (key.contains(null)) {
+            return query.get();
+        }
+        if (!em.unwrap(SessionImplementor.class).getActionQueue().hasAnyQueuedActions()
+                && misses.getIfPresent(key) != null) {
+            return Optional.empty();
+        }
+        long before = generation.get();
+        Optional<T> result = query.get();
+        if (result.isEmpty() && generation.get() == before) {
+            misses.put(key, Boolean.TRUE);
+        }
+        return result;
+    }
+
+    /**
+     * Drops the keys now and once the current transaction completes, for writes Hibernate does not see.
+     */
+    void invalidate(EntityManager em, Collection<List<Object>> keys) {
+        invalidateAfterCompletion(em.unwrap(SessionImplementor.class), keys);
+    }
+
+    public long size() {
+        misses.cleanUp();
+        return misses.estimatedSize();
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        misses.invalidateAll();
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        invalidateAfterCompletion(event.getSession(), keys(event.getEntity(), event.getPersister(), event.getState()));
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        invalidateAfterCompletion(event.getSession(), keys(event.getEntity(), event.getPersister(), event.getState()));
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private void invalidateAfterCompletion(SessionImplementor session, Collection<List<Object>> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        invalidateNow(keys);
+        // una consulta de otra transacción entre el flush y el commit no ve la fila y podría guardar el fallo
+        session.getActionQueue().registerProcess(
+                (AfterTransactionCompletionProcess) (success, completed) -> invalidateNow(keys));
+    }
+
+    private void invalidateNow(Collection<List<Object>> keys) {
+        generation.incrementAndGet();
+        misses.invalidateAll(keys);
+    }
+
+    /**
+     * The single result of the query, empty instead of {@link javax.persistence.NoResultException}.
+     *
+     * @throws NonUniqueResultException if there is more than one
+     */
+    static <T> Optional<T> singleResult(TypedQuery<T> query) {
+        List<T> results = query.setMaxResults(2).getResultList();
+        if (results.size() > 1) {
+            throw new NonUniqueResultException("More than one result for " + query);
+        }
+        return results.stream().findFirst();
+    }
+
+    /**
+     * Same for a native query mapped to {@code type}.
+     *
+     * @throws NonUniqueResultException if there is more than one
+     */
+    static <T> Optional<T> singleResult(Query query, Class<T> type) {
+        List<?> results = query.setMaxResults(2).getResultList();
+        if (results.size() > 1) {
+            throw new NonUniqueResultException("More than one result for " + query);
+        }
+        return results.stream().findFirst().map(type::cast);
+    }
+
+    private static List<List<Object>> keys(Object entity, EntityPersister persister, Object[] state) {
+        if (entity instanceof Book) {
+            return List.of(isbnKey((String) property(persister, state, "isbn")),
+                    titleKey((String) property(persister, state, "title")));
+        }
+        if (entity instanceof Author) {
+            return List.of(nameKey((String) property(persister, state, "firstName"),
+                    (String) property(persister, state, "lastName")));
+        }
+        return List.of();
+    }
+
+    private static Object property(EntityPersister persister, Object[] state, String name) {
+        return state[persister.getEntityMetamodel().getPropertyIndex(name)];
+    }
+
+    private static List<Object> key(Object... values) {
+        // Arrays.asList admite nulos, List.of no
+        return Arrays.asList(values);
+    }
+}
@@ -0,0 +1,28 @@
+package guru.springframework.jdbc.dao;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+
+/**
+ * An update was based on a version of the entity that someone else has changed or deleted in the meantime. The
+ * caller has to re-read the entity and decide again, or use one of the {@code update(id, changes)} DAO methods that
+ * do it for idempotent changes.
+ */
+public class OptimisticConflictException extends OptimisticLockingFailureException {
+
+    private final Class<?> entityType;
+    private final Object id;
+
+    public OptimisticConflictException(Class<?> entityType, Object id, Throwable cause) {
+        super(entityType.getSimpleName() + " " + id + " was changed or deleted by another transaction", cause);
+        this.entityType = entityType;
+        this.id = id;
+    }
+
+    public Class<?> getEntityType() {
+        return entityType;
+    }
+
+    public Object getId() {
+        return id;
+    }
+}
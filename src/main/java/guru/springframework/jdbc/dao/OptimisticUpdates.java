@@ -0,0 +1,91 @@
+package guru.springframework.jdbc.dao;
+
+import org.hibernate.StaleStateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionOperations;
+
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.EntityManager;
+import javax.persistence.OptimisticLockException;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Helpers for the versioned updates of the DAOs. An update only succeeds if the entity still has the version it was
+ * read with, {@code @Version} adds the check to the {@code UPDATE} statement.
+ */
+final class OptimisticUpdates {
+
+    private static final Logger log = LoggerFactory.getLogger(OptimisticUpdates.class);
+
+    /**
+     * Attempts of {@link #retry}, a conflict left after them reaches the caller.
+     */
+    static final int MAX_ATTEMPTS = 3;
+
+    private OptimisticUpdates() {
+    }
+
+    /**
+     * Merges a detached entity. Merging an entity that no longer exists would insert it again, so that is a conflict
+     * too.
+     */
+    static <T> T merge(EntityManager em, Class<T> entityType, Object id, T entity) {
+        // merge reutiliza la entidad que find deja en el contexto, no hay una select más
+        if (id != null && em.find(entityType, id) == null) {
+            throw new OptimisticConflictException(entityType, id, null);
+        }
+        return flush(em, entityType, id, () -> em.merge(entity));
+    }
+
+    /**
+     * Flushes a change, turning a version mismatch into an {@link OptimisticConflictException}.
+     */
+    static <T> T flush(EntityManager em, Class<?> entityType, Object id, Supplier<T> change) {
+        try {
+            T result = change.get();
+            em.flush();
+            return result;
+        } catch (OptimisticLockException | StaleStateException e) {
+            throw new OptimisticConflictException(entityType, id, e);
+        }
+    }
+
+    /**
+     * Re-reads the entity from the database, bypassing the second-level cache, applies {@code changes} and flushes,
+     * each attempt in its own transaction, until it does not conflict with a concurrent update. {@code changes} may
+     * run more than once, so it must be idempotent.
+     *
+     * @param route runs first in every attempt, to send its transaction to the shard of the entity
+     * @return the updated entity, {@code null} if it does not exist
+     */
+    static <T> T retry(EntityManager em, TransactionOperations transactions, Class<T> entityType, Object id,
+                       Runnable route, Consumer<T> changes) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactions.execute(status -> {
+                    route.run();
+                    T entity = em.find(entityType, id,
+                            Map.of("javax.persistence.cache.retrieveMode", CacheRetrieveMode.BYPASS));
+                    if (entity == null) {
+                        return null;
+                    }
+                    return flush(em, entityType, id, () -> {
+                        changes.accept(entity);
+                        return entity;
+                    });
+                });
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    throw e instanceof OptimisticConflictException conflict ? conflict
+                            : new OptimisticConflictException(entityType, id, e);
+                }
+                log.debug("Optimistic conflict updating {} {}, attempt {} of {}", entityType.getSimpleName(), id,
+                        attempt, MAX_ATTEMPTS);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package guru.springframework.jdbc.dao;
+
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * The whole catalog in the one database of {@code spring.datasource}.
+ */
+final class SingleCatalogShard implements CatalogShards {
+
+    static final SingleCatalogShard INSTANCE = new SingleCatalogShard();
+
+    private SingleCatalogShard() {
+    }
+
+    @Override
+    public int count() {
+        return 1;
+    }
+
+    @Override
+    public void route(int shard) {
+    }
+
+    @Override
+    public <T> void write(TransactionStatus transaction, Map<Integer, List<T>> byShard, Consumer<List<T>> write) {
+        byShard.values().forEach(write);
+    }
+
+    @Override
+    public <T> List<T> scatter(IntFunction<T> read) {
+        // singletonList admite null, List.of no
+        return Collections.singletonList(read.apply(0));
+    }
+}
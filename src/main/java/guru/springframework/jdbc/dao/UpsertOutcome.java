@@ -0,0 +1,16 @@
+package guru.springframework.jdbc.dao;
+
+/**
+ * What an upsert by natural key did with a row.
+ */
+public enum UpsertOutcome {
+
+    INSERTED,
+
+    UPDATED,
+
+    /**
+     * The row already existed and the upsert has nothing else to write, an author is all natural key.
+     */
+    UNCHANGED
+}
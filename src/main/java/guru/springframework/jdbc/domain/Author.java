@@ -1,5 +1,11 @@
 package guru.springframework.jdbc.domain;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -7,23 +13,48 @@ import java.util.List;
 @NamedQueries({
         @NamedQuery(name = "Author.findByName",
                 query = "SELECT a FROM Author a WHERE a.firstName = :first_name " +
-                        "and a.lastName = :last_name"),
-        @NamedQuery(name = "author_find_all", query = "FROM Author")
+                        "and a.lastName = :last_name",
+                hints = @QueryHint(name = "org.hibernate.cacheable", value = "true")),
+        @NamedQuery(name = "author_find_all", query = "FROM Author",
+                hints = @QueryHint(name = "org.hibernate.cacheable", value = "true"))
 })
+@NamedEntityGraph(name = "Author.books", attributeNodes = @NamedAttributeNode("books"))
 @Entity
 //@Table(name="AUTHOR")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "author")
 public class Author {
 
+    // IDENTITY desactiva el batching de inserts en Hibernate, el generador de tabla reserva bloques de ids
+    // (pooled-lo) y permite agrupar los inserts en batches JDBC
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "author_id")
+    @GenericGenerator(name = "author_id", strategy = "org.hibernate.id.enhanced.TableGenerator",
+            parameters = {
+                    @Parameter(name = "table_name", value = "id_generator"),
+                    @Parameter(name = "segment_column_name", value = "sequence_name"),
+                    @Parameter(name = "value_column_name", value = "next_val"),
+                    @Parameter(name = "segment_value", value = "author"),
+                    @Parameter(name = "increment_size", value = "50"),
+                    @Parameter(name = "optimizer", value = "pooled-lo")
+            })
     private Long id;
 
     private String firstName;
     private String lastName;
 
-    // fetch = FetchType.EAGER es necesario si cuando recupero authors quiero acceder a sus book,
-    // si no es asi puede ser LAZY
-    @OneToMany(mappedBy = "author", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    // primitivo: con un Long a null Hibernate trataría un merge de una entidad detached sin versión como un insert
+    @Version
+    private long version;
+
+    // columna materializada, solo la escribe la base de datos (AuthorBookCounts)
+    @Column(insertable = false, updatable = false)
+    private int bookCount;
+
+    // LAZY para no lanzar una query por autor, los que necesitan los books los piden con AuthorFetchPlan.WITH_BOOKS
+    // (entity graph "Author.books") y se cargan en la misma query
+    @OneToMany(mappedBy = "author", cascade = CascadeType.ALL)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "author-books")
     private List<Book> books = new ArrayList<>();
 
     public Long getId() {
@@ -50,6 +81,21 @@ public class Author {
         this.lastName = lastName;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Number of books of the author as of when it was read, kept by the database so it needs no collection load.
+     */
+    public int getBookCount() {
+        return bookCount;
+    }
+
     public List<Book> getBooks() {
         return books;
     }
@@ -69,7 +115,7 @@ public class Author {
                 "id=" + id +
                 ", firstName='" + firstName + '\'' +
                 ", lastName='" + lastName + '\'' +
-                ", books=" + books +
+                ", books=" + (Hibernate.isInitialized(books) ? books : "<not loaded>") +
                 '}';
     }
 }
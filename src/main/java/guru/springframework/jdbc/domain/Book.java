@@ -1,26 +1,60 @@
 package guru.springframework.jdbc.domain;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.annotations.Parameter;
+
 import javax.persistence.*;
 import java.util.Objects;
 
 @Entity
 //@Table(name = "BOOK")
+@NamedEntityGraph(name = "Book.author", attributeNodes = @NamedAttributeNode("author"))
 @NamedQueries({
         @NamedQuery(name = "Book.findByName",
-                query = "SELECT b FROM Book b WHERE b.title = :title"),
+                query = "SELECT b FROM Book b WHERE b.title = :title",
+                hints = @QueryHint(name = "org.hibernate.cacheable", value = "true")),
         @NamedQuery(name = "Book.findAll",
-                query = "SELECT b FROM Book b")
+                query = "SELECT b FROM Book b",
+                hints = @QueryHint(name = "org.hibernate.cacheable", value = "true"))
 })
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "book")
+@NaturalIdCache(region = "book-natural-id")
 public class Book {
 
+    // IDENTITY desactiva el batching de inserts en Hibernate, el generador de tabla reserva bloques de ids
+    // (pooled-lo) y permite agrupar los inserts en batches JDBC
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "book_id")
+    @GenericGenerator(name = "book_id", strategy = "org.hibernate.id.enhanced.TableGenerator",
+            parameters = {
+                    @Parameter(name = "table_name", value = "id_generator"),
+                    @Parameter(name = "segment_column_name", value = "sequence_name"),
+                    @Parameter(name = "value_column_name", value = "next_val"),
+                    @Parameter(name = "segment_value", value = "book"),
+                    @Parameter(name = "increment_size", value = "50"),
+                    @Parameter(name = "optimizer", value = "pooled-lo")
+            })
     private Long id;
 
     private String title;
+
+    // siempre normalizado (IsbnNormalizer), unique index book_isbn_uq
+    @NaturalId(mutable = true)
     private String isbn;
+
     private String publisher;
-    @ManyToOne
+
+    // primitivo: con un Long a null Hibernate trataría un merge de una entidad detached sin versión como un insert
+    @Version
+    private long version;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "AUTHOR_ID")
     private Author author;
 
@@ -34,6 +68,12 @@ public class Book {
         this.publisher = publisher;
     }
 
+    @PrePersist
+    @PreUpdate
+    void normalizeIsbn() {
+        isbn = IsbnNormalizer.normalize(isbn);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -81,6 +121,14 @@ public class Book {
         this.publisher = publisher;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public Author getAuthor() {
         return author;
     }
@@ -89,6 +137,13 @@ public class Book {
         this.author = author;
     }
 
+    private String authorName() {
+        if (author == null) {
+            return null;
+        }
+        return Hibernate.isInitialized(author) ? author.getFirstName() + " " + author.getLastName() : "<not loaded>";
+    }
+
     @Override
     public String toString() {
         return "Book{" +
@@ -96,7 +151,7 @@ public class Book {
                 ", title='" + title + '\'' +
                 ", isbn='" + isbn + '\'' +
                 ", publisher='" + publisher + '\'' +
-                ", author=" + author.getFirstName() + " " + author.getLastName() +
+                ", author=" + authorName() +
                 '}';
     }
 }
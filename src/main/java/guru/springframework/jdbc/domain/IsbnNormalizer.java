@@ -0,0 +1,48 @@
+package guru.springframework.jdbc.domain;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Canonical form of an ISBN, used as the {@link Book} natural id: no hyphens or spaces, upper case and ISBN-10
+ * converted to ISBN-13, so every spelling of the same book resolves to the same key. Values that are not a valid
+ * ISBN-10 are only compacted.
+ */
+public final class IsbnNormalizer {
+
+    private static final Pattern SEPARATORS = Pattern.compile("[\\s-]");
+    private static final Pattern ISBN_10 = Pattern.compile("\\d{9}[\\dX]");
+
+    private IsbnNormalizer() {
+    }
+
+    public static String normalize(String isbn) {
+        if (isbn == null) {
+            return null;
+        }
+        String compact = SEPARATORS.matcher(isbn).replaceAll("").toUpperCase(Locale.ROOT);
+        if (ISBN_10.matcher(compact).matches() && isValidIsbn10(compact)) {
+            String isbn13 = "978" + compact.substring(0, 9);
+            return isbn13 + isbn13CheckDigit(isbn13);
+        }
+        return compact;
+    }
+
+    private static boolean isValidIsbn10(String isbn) {
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            char c = isbn.charAt(i);
+            int digit = c == 'X' ? 10 : c - '0';
+            sum += digit * (10 - i);
+        }
+        return sum % 11 == 0;
+    }
+
+    private static int isbn13CheckDigit(String first12) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (first12.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,7 @@
+package guru.springframework.jdbc.dto;
+
+/**
+ * Read-only view of an author for listings, built straight from the query without loading the entity or its books.
+ */
+public record AuthorSummary(Long id, String firstName, String lastName, long bookCount) {
+}
@@ -0,0 +1,7 @@
+package guru.springframework.jdbc.dto;
+
+/**
+ * Read-only view of a book for listings, built straight from the query without loading the entity.
+ */
+public record BookSummary(Long id, String title, String isbn) {
+}
@@ -0,0 +1,12 @@
+package guru.springframework.jdbc.dto;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * A book with the name of its author, one line of a catalog import or export file. The property order is the CSV
+ * column order.
+ */
+@JsonPropertyOrder({"isbn", "title", "publisher", "authorFirstName", "authorLastName"})
+public record CatalogRecord(String isbn, String title, String publisher, String authorFirstName,
+                            String authorLastName) {
+}
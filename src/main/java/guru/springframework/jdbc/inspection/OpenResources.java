@@ -0,0 +1,63 @@
+package guru.springframework.jdbc.inspection;
+
+import net.ttddyy.dsproxy.listener.MethodExecutionContext;
+import net.ttddyy.dsproxy.listener.lifecycle.JdbcLifecycleEventListenerAdapter;
+import org.hibernate.BaseSessionEventListener;
+
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the Hibernate sessions ({@code EntityManager}s) and JPA connections currently open, so leaks show up as a
+ * count that does not return to its previous value. Sessions are counted by {@link SessionCounter}, registered with
+ * {@code hibernate.session.events.auto}, connections by the listener {@link SqlInspectionConfiguration} adds to the
+ * JPA {@code DataSource} proxy.
+ */
+public final class OpenResources {
+
+    private static final AtomicInteger SESSIONS = new AtomicInteger();
+    private static final AtomicInteger CONNECTIONS = new AtomicInteger();
+
+    private OpenResources() {
+    }
+
+    public static int openSessions() {
+        return SESSIONS.get();
+    }
+
+    public static int openConnections() {
+        return CONNECTIONS.get();
+    }
+
+    /**
+     * Hibernate creates one instance per session and calls {@link #end()} when the session is closed.
+     */
+    public static class SessionCounter extends BaseSessionEventListener {
+
+        public SessionCounter() {
+            SESSIONS.incrementAndGet();
+        }
+
+        @Override
+        public void end() {
+            SESSIONS.decrementAndGet();
+        }
+    }
+
+    static class ConnectionCounter extends JdbcLifecycleEventListenerAdapter {
+
+        @Override
+        public void afterGetConnection(MethodExecutionContext executionContext) {
+            if (executionContext.getThrown() == null) {
+                CONNECTIONS.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void afterClose(MethodExecutionContext executionContext) {
+            if (executionContext.getTarget() instanceof Connection && executionContext.getThrown() == null) {
+                CONNECTIONS.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package guru.springframework.jdbc.inspection;
+
+import guru.springframework.jdbc.dao.DaoPointcuts;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Groups the SQL executed by each DAO call so {@link SqlInspectionListener} can report repeated statements. Runs
+ * around the transaction of the call, so the statements flushed on commit are part of it.
+ */
+@Aspect
+@Component
+@Order(DaoPointcuts.INSPECTION_ORDER)
+public class SqlInspectionAspect {
+
+    private final SqlInspectionListener listener;
+
+    public SqlInspectionAspect(SqlInspectionListener listener) {
+        this.listener = listener;
+    }
+
+    @Around("guru.springframework.jdbc.dao.DaoPointcuts.daoOperation()")
+    public Object inspect(ProceedingJoinPoint joinPoint) throws Throwable {
+        SqlInvocation invocation = SqlInvocation.begin(
+                DaoPointcuts.daoName(joinPoint) + "." + joinPoint.getSignature().getName());
+        try {
+            return joinPoint.proceed();
+        } finally {
+            if (invocation.end()) {
+                listener.invocationFinished(invocation);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package guru.springframework.jdbc.inspection;
+
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Hands JPA a datasource-proxy wrapped {@link DataSource} so every statement the DAOs execute goes through
+ * {@link SqlInspectionListener}. The {@code DataSource} bean itself stays unwrapped, Flyway derives its own
+ * {@code DataSource} from it when {@code spring.flyway.user} is set.
+ */
+@Configuration(proxyBeanMethods = false)
+public class SqlInspectionConfiguration {
+
+    @Bean
+    public SqlInspectionListener sqlInspectionListener(
+            @Value("${sdjpa.sql.slow-query-threshold:200ms}") Duration slowQueryThreshold,
+            @Value("${sdjpa.sql.repeated-statement-threshold:5}") int repeatedStatementThreshold) {
+        return new SqlInspectionListener(slowQueryThreshold, repeatedStatementThreshold);
+    }
+
+    @Bean
+    public static BeanPostProcessor sqlInspectionEntityManagerFactoryPostProcessor(
+            ObjectProvider<SqlInspectionListener> listener) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof LocalContainerEntityManagerFactoryBean factory
+                        && factory.getDataSource() != null && !(factory.getDataSource() instanceof ProxyDataSource)) {
+                    factory.setDataSource(ProxyDataSourceBuilder.create(factory.getDataSource())
+                            .name(beanName)
+                            .listener(listener.getObject())
+                            .listener(new OpenResources.ConnectionCounter())
+                            .build());
+                }
+                return bean;
+            }
+        };
+    }
+}
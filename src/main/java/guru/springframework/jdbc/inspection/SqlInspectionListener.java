@@ -0,0 +1,108 @@
+package guru.springframework.jdbc.inspection;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Sees every statement executed through the application {@code DataSource}:
+ * <ul>
+ *     <li>counts the executions per thread, see {@link #executedStatements()}</li>
+ *     <li>logs at debug level how many statements each DAO call executed and how long they took</li>
+ *     <li>logs the statements slower than the slow query threshold with their bind values</li>
+ *     <li>at the end of a DAO call logs the identical statements repeated at least the repeated statement
+ *     threshold times as a likely N+1</li>
+ * </ul>
+ * The counts follow the thread. A DAO call made on a {@code DaoExecutor} thread is counted and inspected there, as a
+ * call of its own; reads a DAO call hands to other threads, like the shard scatter reads, only count for it when they
+ * are wrapped with {@link #attributedToCaller(Supplier)}.
+ */
+public class SqlInspectionListener implements QueryExecutionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SqlInspectionListener.class);
+
+    private static final ThreadLocal<AtomicLong> EXECUTED = ThreadLocal.withInitial(AtomicLong::new);
+
+    private final long slowQueryThresholdMillis;
+    private final int repeatedStatementThreshold;
+
+    public SqlInspectionListener(Duration slowQueryThreshold, int repeatedStatementThreshold) {
+        this.slowQueryThresholdMillis = slowQueryThreshold.toMillis();
+        this.repeatedStatementThreshold = repeatedStatementThreshold;
+    }
+
+    /**
+     * Statements executed by the current thread since it started, a JDBC batch counts as one execution. Callers work
+     * with the difference of two reads.
+     */
+    public static long executedStatements() {
+        return EXECUTED.get().get();
+    }
+
+    /**
+     * Wraps a task the current thread hands to another thread and waits for, so the statements of the task count for
+     * the current thread and its DAO call.
+     */
+    public static <T> Supplier<T> attributedToCaller(Supplier<T> task) {
+        AtomicLong executed = EXECUTED.get();
+        SqlInvocation invocation = SqlInvocation.current();
+        return () -> {
+            AtomicLong ownExecuted = EXECUTED.get();
+            SqlInvocation ownInvocation = SqlInvocation.current();
+            EXECUTED.set(executed);
+            SqlInvocation.attach(invocation);
+            try {
+                return task.get();
+            } finally {
+                EXECUTED.set(ownExecuted);
+                SqlInvocation.attach(ownInvocation);
+            }
+        };
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        EXECUTED.get().incrementAndGet();
+
+        SqlInvocation invocation = SqlInvocation.current();
+        if (invocation != null) {
+            queryInfoList.forEach(queryInfo -> invocation.record(queryInfo.getQuery(), execInfo.getElapsedTime()));
+        }
+
+        if (execInfo.getElapsedTime() >= slowQueryThresholdMillis) {
+            String caller = invocation != null ? invocation.getName() : "-";
+            queryInfoList.forEach(queryInfo -> log.warn("Slow SQL ({} ms) in {}: {} {}", execInfo.getElapsedTime(),
+                    caller, queryInfo.getQuery(), bindValues(queryInfo)));
+        }
+    }
+
+    void invocationFinished(SqlInvocation invocation) {
+        log.debug("{} executed {} SQL statements in {} ms", invocation.getName(), invocation.statementCount(),
+                invocation.getElapsedMillis());
+        invocation.repeatedStatements(repeatedStatementThreshold).forEach((sql, times) ->
+                log.warn("Possible N+1 in {}: same statement executed {} times ({} statements in the call): {}",
+                        invocation.getName(), times, invocation.statementCount(), sql));
+    }
+
+    private static List<List<Object>> bindValues(QueryInfo queryInfo) {
+        return queryInfo.getParametersList().stream()
+                .map(parameters -> parameters.stream()
+                        .map(ParameterSetOperation::getArgs)
+                        .map(args -> args.length > 1 ? args[1] : null)
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,90 @@
+package guru.springframework.jdbc.inspection;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * SQL executed during one DAO call, by the calling thread and by the tasks it hands to other threads through
+ * {@link SqlInspectionListener#attributedToCaller}. Nested DAO calls are part of the outermost invocation.
+ */
+final class SqlInvocation {
+
+    private static final ThreadLocal<SqlInvocation> CURRENT = new ThreadLocal<>();
+
+    private final String name;
+    private final Map<String, Integer> executions = new LinkedHashMap<>();
+    private int depth = 1;
+    private long elapsedMillis;
+
+    private SqlInvocation(String name) {
+        this.name = name;
+    }
+
+    static SqlInvocation begin(String name) {
+        SqlInvocation current = CURRENT.get();
+        if (current != null) {
+            current.enter();
+            return current;
+        }
+        SqlInvocation invocation = new SqlInvocation(name);
+        CURRENT.set(invocation);
+        return invocation;
+    }
+
+    static SqlInvocation current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes {@code invocation} the one of the current thread, {@code null} to leave it without one.
+     */
+    static void attach(SqlInvocation invocation) {
+        if (invocation != null) {
+            CURRENT.set(invocation);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    private synchronized void enter() {
+        depth++;
+    }
+
+    /**
+     * @return {@code true} when the outermost call ended
+     */
+    synchronized boolean end() {
+        if (--depth > 0) {
+            return false;
+        }
+        CURRENT.remove();
+        return true;
+    }
+
+    synchronized void record(String sql, long elapsedMillis) {
+        executions.merge(sql, 1, Integer::sum);
+        this.elapsedMillis += elapsedMillis;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    synchronized long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    synchronized int statementCount() {
+        return executions.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Identical statements executed at least {@code threshold} times, the usual shape of an N+1.
+     */
+    synchronized Map<String, Integer> repeatedStatements(int threshold) {
+        return executions.entrySet().stream()
+                .filter(entry -> entry.getValue() >= threshold)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a, LinkedHashMap::new));
+    }
+}
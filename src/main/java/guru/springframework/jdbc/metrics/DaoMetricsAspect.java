@@ -0,0 +1,94 @@
+package guru.springframework.jdbc.metrics;
+
+import guru.springframework.jdbc.dao.DaoPointcuts;
+import guru.springframework.jdbc.dao.KeysetPage;
+import guru.springframework.jdbc.inspection.SqlInspectionListener;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Metrics of every {@code AuthorDao} and {@code BookDao} call, tagged by dao and method:
+ * <ul>
+ *     <li>{@code dao.invocations}: latency timer, also tagged with the outcome and the exception</li>
+ *     <li>{@code dao.rows}: entities returned per call, not recorded for streams and void methods</li>
+ *     <li>{@code dao.statements}: SQL statements executed per call</li>
+ * </ul>
+ * Percentiles and histograms are configured with the {@code management.metrics.distribution} properties. The call is
+ * measured around its transaction, commit included.
+ */
+@Aspect
+@Component
+@Order(DaoPointcuts.METRICS_ORDER)
+public class DaoMetricsAspect {
+
+    private final MeterRegistry registry;
+
+    public DaoMetricsAspect(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Around("guru.springframework.jdbc.dao.DaoPointcuts.daoOperation()")
+    public Object record(ProceedingJoinPoint joinPoint) throws Throwable {
+        Tags tags = Tags.of("dao", DaoPointcuts.daoName(joinPoint), "method", joinPoint.getSignature().getName());
+        long statementsBefore = SqlInspectionListener.executedStatements();
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "success";
+        String exception = "none";
+        try {
+            Object result = joinPoint.proceed();
+            Long rows = rows(joinPoint, result);
+            if (rows != null) {
+                DistributionSummary.builder("dao.rows").tags(tags).register(registry).record(rows);
+            }
+            return result;
+        } catch (Throwable e) {
+            outcome = "error";
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("dao.invocations").tags(tags)
+                    .tag("outcome", outcome).tag("exception", exception)
+                    .register(registry));
+            DistributionSummary.builder("dao.statements").tags(tags).register(registry)
+                    .record(SqlInspectionListener.executedStatements() - statementsBefore);
+        }
+    }
+
+    private static Long rows(ProceedingJoinPoint joinPoint, Object result) {
+        if (((MethodSignature) joinPoint.getSignature()).getReturnType() == void.class) {
+            return null;
+        }
+        if (result == null) {
+            return 0L;
+        }
+        if (result instanceof Collection<?> collection) {
+            return (long) collection.size();
+        }
+        if (result instanceof Map<?, ?> map) {
+            return (long) map.size();
+        }
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1L : 0L;
+        }
+        if (result instanceof KeysetPage<?> page) {
+            return (long) page.getContent().size();
+        }
+        if (result instanceof Number || result instanceof Boolean || result instanceof AutoCloseable) {
+            // contadores de bulk updates y streams: no son filas devueltas
+            return null;
+        }
+        return 1L;
+    }
+}
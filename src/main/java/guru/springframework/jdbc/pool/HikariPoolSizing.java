@@ -0,0 +1,37 @@
+package guru.springframework.jdbc.pool;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * Sizes every Hikari pool of the application as a fixed-size pool of {@code databaseCores * 2 + effectiveSpindles}
+ * connections, the starting point recommended by HikariCP, capped at the expected number of concurrent DAO callers
+ * when it is known: connections nobody can use only add contention on the database.
+ */
+public class HikariPoolSizing implements BeanPostProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(HikariPoolSizing.class);
+
+    private final int poolSize;
+
+    public HikariPoolSizing(int databaseCores, int effectiveSpindles, int expectedConcurrency) {
+        this.poolSize = poolSize(databaseCores, effectiveSpindles, expectedConcurrency);
+    }
+
+    static int poolSize(int databaseCores, int effectiveSpindles, int expectedConcurrency) {
+        int size = databaseCores * 2 + effectiveSpindles;
+        return expectedConcurrency > 0 ? Math.max(1, Math.min(size, expectedConcurrency)) : size;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource dataSource) {
+            dataSource.setMaximumPoolSize(poolSize);
+            dataSource.setMinimumIdle(poolSize);
+            log.info("Hikari pool {} sized to {} connections", beanName, poolSize);
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,23 @@
+package guru.springframework.jdbc.pool;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Enables {@link HikariPoolSizing} with {@code sdjpa.pool.auto-size=true}, see the {@code perf} profile.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "sdjpa.pool.auto-size", havingValue = "true")
+public class HikariPoolSizingConfiguration {
+
+    @Bean
+    public static HikariPoolSizing hikariPoolSizing(
+            @Value("${sdjpa.pool.database-cores:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+            int databaseCores,
+            @Value("${sdjpa.pool.effective-spindles:1}") int effectiveSpindles,
+            @Value("${sdjpa.pool.expected-concurrency:0}") int expectedConcurrency) {
+        return new HikariPoolSizing(databaseCores, effectiveSpindles, expectedConcurrency);
+    }
+}
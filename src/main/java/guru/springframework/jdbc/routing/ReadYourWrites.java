@@ -0,0 +1,40 @@
+package guru.springframework.jdbc.routing;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Time of the last write of the current thread. While it is within the read-your-writes window the reads go to the
+ * primary, so a caller never reads from a replica that has not caught up with its own write yet.
+ * {@link ReadYourWritesFilter} carries it across the requests of an HTTP session.
+ */
+public final class ReadYourWrites {
+
+    private static final ThreadLocal<Instant> LAST_WRITE = new ThreadLocal<>();
+
+    private ReadYourWrites() {
+    }
+
+    static void markWrite() {
+        LAST_WRITE.set(Instant.now());
+    }
+
+    static boolean isSticky(Duration window) {
+        Instant lastWrite = LAST_WRITE.get();
+        return lastWrite != null && lastWrite.plus(window).isAfter(Instant.now());
+    }
+
+    public static Instant lastWrite() {
+        return LAST_WRITE.get();
+    }
+
+    public static void restore(Instant lastWrite) {
+        if (lastWrite != null) {
+            LAST_WRITE.set(lastWrite);
+        }
+    }
+
+    public static void clear() {
+        LAST_WRITE.remove();
+    }
+}
@@ -0,0 +1,39 @@
+package guru.springframework.jdbc.routing;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Scopes {@link ReadYourWrites} to the request, and to the HTTP session when the request has one, and clears it
+ * before the thread goes back to the pool.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String LAST_WRITE_ATTRIBUTE = ReadYourWritesFilter.class.getName() + ".lastWrite";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            ReadYourWrites.restore((Instant) session.getAttribute(LAST_WRITE_ATTRIBUTE));
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            Instant lastWrite = ReadYourWrites.lastWrite();
+            ReadYourWrites.clear();
+            session = request.getSession(false);
+            if (session != null && lastWrite != null) {
+                session.setAttribute(LAST_WRITE_ATTRIBUTE, lastWrite);
+            }
+        }
+    }
+}
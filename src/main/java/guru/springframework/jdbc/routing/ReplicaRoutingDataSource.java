@@ -0,0 +1,157 @@
+package guru.springframework.jdbc.routing;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Sends the connections of read-only transactions to a replica and everything else to the primary. The lookup
+ * happens when the connection is requested, so the {@code DataSource} must be wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: the transaction manager asks for the
+ * connection before the read-only flag of the transaction is set.
+ * <p>
+ * Reads stay on the primary within the read-your-writes window after a write of the same thread. A replica that
+ * fails to hand out a connection is skipped for the retry interval and the read goes to the primary.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final ReplicaSelectionStrategy strategy;
+    private final Duration readYourWritesWindow;
+    private final Duration retryInterval;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas,
+                                    ReplicaSelectionStrategy strategy, Duration readYourWritesWindow,
+                                    Duration retryInterval) {
+        this.primary = primary;
+        this.replicas = replicas.entrySet().stream()
+                .map(entry -> new Replica(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+        this.strategy = strategy;
+        this.readYourWritesWindow = readYourWritesWindow;
+        this.retryInterval = retryInterval;
+
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return PRIMARY;
+        }
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            ReadYourWrites.markWrite();
+            return PRIMARY;
+        }
+        if (ReadYourWrites.isSticky(readYourWritesWindow)) {
+            return PRIMARY;
+        }
+        Replica replica = selectReplica();
+        return replica != null ? replica.name : PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        DataSource target = determineTargetDataSource();
+        try {
+            return target.getConnection();
+        } catch (SQLException | RuntimeException e) {
+            if (target == primary) {
+                throw e;
+            }
+            markDown(target, e);
+            return primary.getConnection();
+        }
+    }
+
+    /**
+     * Names of the replicas reads are currently routed to.
+     */
+    public List<String> healthyReplicas() {
+        Instant now = Instant.now();
+        return replicas.stream()
+                .filter(replica -> replica.isUp(now))
+                .map(replica -> replica.name)
+                .collect(Collectors.toList());
+    }
+
+    private Replica selectReplica() {
+        Instant now = Instant.now();
+        List<Replica> up = replicas.stream().filter(replica -> replica.isUp(now)).collect(Collectors.toList());
+        if (up.isEmpty()) {
+            return null;
+        }
+        if (strategy == ReplicaSelectionStrategy.LEAST_CONNECTIONS) {
+            return up.stream().min(Comparator.comparingInt(Replica::activeConnections)).orElseThrow();
+        }
+        return up.get(Math.floorMod(next.getAndIncrement(), up.size()));
+    }
+
+    /**
+     * Closes the replica pools, the primary is closed by its owner.
+     */
+    @Override
+    public void close() {
+        replicas.stream()
+                .filter(replica -> replica.dataSource instanceof HikariDataSource)
+                .forEach(replica -> ((HikariDataSource) replica.dataSource).close());
+    }
+
+    private void markDown(DataSource target, Exception cause) {
+        replicas.stream()
+                .filter(replica -> replica.dataSource == target)
+                .forEach(replica -> {
+                    replica.downUntil = Instant.now().plus(retryInterval);
+                    log.warn("Replica {} unavailable, reads go to the primary for {}: {}", replica.name,
+                            retryInterval, cause.getMessage());
+                });
+    }
+
+    private static final class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private volatile Instant downUntil = Instant.MIN;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        private boolean isUp(Instant now) {
+            return !downUntil.isAfter(now);
+        }
+
+        private int activeConnections() {
+            if (dataSource instanceof HikariDataSource hikari) {
+                HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+                return pool != null ? pool.getActiveConnections() : 0;
+            }
+            return 0;
+        }
+    }
+}
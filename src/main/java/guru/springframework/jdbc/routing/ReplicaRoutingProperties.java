@@ -0,0 +1,111 @@
+package guru.springframework.jdbc.routing;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@code sdjpa.routing.*} settings of the read replica routing, the primary is the {@code spring.datasource.*} one.
+ */
+@ConfigurationProperties("sdjpa.routing")
+public class ReplicaRoutingProperties {
+
+    private boolean enabled;
+
+    private ReplicaSelectionStrategy strategy = ReplicaSelectionStrategy.ROUND_ROBIN;
+
+    /**
+     * How long reads stay on the primary after a write of the same thread, request or HTTP session. Should cover
+     * the replication lag.
+     */
+    private Duration readYourWritesWindow = Duration.ofSeconds(5);
+
+    /**
+     * How long a replica that failed to hand out a connection is skipped before it is tried again.
+     */
+    private Duration replicaRetryInterval = Duration.ofSeconds(30);
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public ReplicaSelectionStrategy getStrategy() {
+        return strategy;
+    }
+
+    public void setStrategy(ReplicaSelectionStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public Duration getReadYourWritesWindow() {
+        return readYourWritesWindow;
+    }
+
+    public void setReadYourWritesWindow(Duration readYourWritesWindow) {
+        this.readYourWritesWindow = readYourWritesWindow;
+    }
+
+    public Duration getReplicaRetryInterval() {
+        return replicaRetryInterval;
+    }
+
+    public void setReplicaRetryInterval(Duration replicaRetryInterval) {
+        this.replicaRetryInterval = replicaRetryInterval;
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(List<Replica> replicas) {
+        this.replicas = replicas;
+    }
+
+    public static class Replica {
+
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public int getMaximumPoolSize() {
+            return maximumPoolSize;
+        }
+
+        public void setMaximumPoolSize(int maximumPoolSize) {
+            this.maximumPoolSize = maximumPoolSize;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package guru.springframework.jdbc.routing;
+
+/**
+ * How {@link ReplicaRoutingDataSource} picks a healthy replica for a read-only transaction.
+ */
+public enum ReplicaSelectionStrategy {
+
+    /**
+     * Each read-only transaction goes to the next replica.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * The replica whose pool has the fewest connections in use, ties resolved in configuration order.
+     */
+    LEAST_CONNECTIONS
+}
@@ -0,0 +1,7 @@
+package guru.springframework.jdbc.search;
+
+/**
+ * An author matching a search, with the fields stored in the index.
+ */
+public record AuthorSearchHit(Long id, String firstName, String lastName, float score) {
+}
@@ -0,0 +1,7 @@
+package guru.springframework.jdbc.search;
+
+/**
+ * A book matching a search, with the fields stored in the index.
+ */
+public record BookSearchHit(Long id, String title, String isbn, String publisher, String authorName, float score) {
+}
@@ -0,0 +1,123 @@
+package guru.springframework.jdbc.search;
+
+import guru.springframework.jdbc.dao.CatalogChangedEvent;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.domain.Book;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps {@link CatalogSearchImpl} in sync with the database:
+ * <ul>
+ *     <li>rebuilds the index when the application starts ({@code sdjpa.search.rebuild-on-startup})</li>
+ *     <li>collects the books and authors Hibernate inserts, updates and deletes in a transaction and re-indexes them
+ *     in one go once it commits</li>
+ *     <li>re-indexes the rows of the {@link CatalogChangedEvent}s the DAOs publish for bulk statements</li>
+ * </ul>
+ * Indexing failures are logged and never fail the already committed transaction.
+ */
+@Component
+public class CatalogIndexSynchronizer implements PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogIndexSynchronizer.class);
+
+    private final CatalogSearchImpl index;
+    private final boolean rebuildOnStartup;
+    private final Map<EventSource, Map<Class<?>, Set<Long>>> pendingBySession = new ConcurrentHashMap<>();
+
+    public CatalogIndexSynchronizer(CatalogSearchImpl index, EntityManagerFactory emf,
+                                    @Value("${sdjpa.search.rebuild-on-startup:true}") boolean rebuildOnStartup) {
+        this.index = index;
+        this.rebuildOnStartup = rebuildOnStartup;
+
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class).getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIndex() {
+        if (rebuildOnStartup) {
+            index.rebuild();
+        }
+    }
+
+    @TransactionalEventListener
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        reindex(event.entityType(), event.ids());
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        changed(event.getSession(), event.getEntity(), event.getId());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        changed(event.getSession(), event.getEntity(), event.getId());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        changed(event.getSession(), event.getEntity(), event.getId());
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private void changed(EventSource session, Object entity, Serializable id) {
+        Class<?> entityType = entity instanceof Book ? Book.class : entity instanceof Author ? Author.class : null;
+        if (entityType == null) {
+            return;
+        }
+        pendingBySession.computeIfAbsent(session, key -> {
+            // un solo proceso por transacción, se ejecuta cuando termina
+            session.getActionQueue().registerProcess((success, completedSession) -> {
+                Map<Class<?>, Set<Long>> pending = pendingBySession.remove(session);
+                if (success && pending != null) {
+                    pending.forEach(this::reindex);
+                }
+            });
+            return new HashMap<>();
+        }).computeIfAbsent(entityType, key -> new HashSet<>()).add((Long) id);
+    }
+
+    private void reindex(Class<?> entityType, Collection<Long> ids) {
+        try {
+            index.reindex(entityType, ids);
+        } catch (RuntimeException e) {
+            log.error("Could not re-index {} {}, the search index is stale until the next rebuild",
+                    entityType.getSimpleName(), ids, e);
+        }
+    }
+}
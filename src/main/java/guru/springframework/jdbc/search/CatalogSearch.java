@@ -0,0 +1,22 @@
+package guru.springframework.jdbc.search;
+
+/**
+ * Full-text search over the catalog. Every word of the text must match, as a whole word, a prefix or with a few typos
+ * depending on its length. Results are ranked by relevance.
+ */
+public interface CatalogSearch {
+
+    /**
+     * Searches book titles, author names and publishers, in that order of weight.
+     *
+     * @param page zero based
+     */
+    SearchPage<BookSearchHit> searchBooks(String text, int page, int pageSize);
+
+    /**
+     * Searches author first and last names.
+     *
+     * @param page zero based
+     */
+    SearchPage<AuthorSearchHit> searchAuthors(String text, int page, int pageSize);
+}
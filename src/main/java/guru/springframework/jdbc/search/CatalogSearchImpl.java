@@ -0,0 +1,339 @@
+package guru.springframework.jdbc.search;
+
+import guru.springframework.jdbc.dao.CatalogShards;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.domain.Book;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Lucene index of the books and authors, in {@code sdjpa.search.index-directory} or in memory when it is empty.
+ * The index is rebuilt from the database on startup and kept in sync by {@link CatalogIndexSynchronizer}; changes
+ * are visible to searches right away (near real-time readers) and only committed to disk on rebuild and shutdown,
+ * since the next startup rebuilds it anyway. With sharding one index covers every shard.
+ */
+@Component
+public class CatalogSearchImpl implements CatalogSearch, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogSearchImpl.class);
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final String TYPE = "type";
+    private static final String KEY = "key";
+    private static final String ID = "id";
+    private static final String TITLE = "title";
+    private static final String ISBN = "isbn";
+    private static final String PUBLISHER = "publisher";
+    private static final String AUTHOR_NAME = "authorName";
+    private static final String FIRST_NAME = "firstName";
+    private static final String LAST_NAME = "lastName";
+
+    private static final String BOOK = "book";
+    private static final String AUTHOR = "author";
+
+    private static final Map<String, Float> BOOK_FIELDS = Map.of(TITLE, 3f, AUTHOR_NAME, 2f, PUBLISHER, 1f);
+    private static final Map<String, Float> AUTHOR_FIELDS = Map.of(LAST_NAME, 2f, FIRST_NAME, 1f);
+
+    private static final String BOOK_ROWS = "SELECT b.id, b.title, b.isbn, b.publisher, a.firstName, a.lastName " +
+            "FROM Book b LEFT JOIN b.author a ";
+    private static final String AUTHOR_ROWS = "SELECT a.id, a.firstName, a.lastName FROM Author a ";
+
+    private final EntityManagerFactory emf;
+    private final CatalogShards shards;
+    private final Analyzer analyzer = new CatalogAnalyzer();
+    private final Directory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+
+    public CatalogSearchImpl(EntityManagerFactory emf, ObjectProvider<CatalogShards> catalogShards,
+                             @Value("${sdjpa.search.index-directory:}") String indexDirectory) throws IOException {
+        this.emf = emf;
+        this.shards = catalogShards.getIfAvailable(CatalogShards::single);
+        this.directory = indexDirectory.isBlank() ? new ByteBuffersDirectory()
+                : FSDirectory.open(Path.of(indexDirectory));
+        this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+        this.searcherManager = new SearcherManager(writer, null);
+    }
+
+    @Override
+    public SearchPage<BookSearchHit> searchBooks(String text, int page, int pageSize) {
+        return search(BOOK, BOOK_FIELDS, text, page, pageSize, (document, score) -> new BookSearchHit(
+                document.getField(ID).numericValue().longValue(), document.get(TITLE), document.get(ISBN),
+                document.get(PUBLISHER), document.get(AUTHOR_NAME), score));
+    }
+
+    @Override
+    public SearchPage<AuthorSearchHit> searchAuthors(String text, int page, int pageSize) {
+        return search(AUTHOR, AUTHOR_FIELDS, text, page, pageSize, (document, score) -> new AuthorSearchHit(
+                document.getField(ID).numericValue().longValue(), document.get(FIRST_NAME), document.get(LAST_NAME),
+                score));
+    }
+
+    /**
+     * Replaces the whole index with the current content of the database.
+     */
+    public void rebuild() {
+        try {
+            writer.deleteAll();
+            int books = indexAll(BOOK_ROWS + "WHERE b.id > :lastId ORDER BY b.id", this::bookDocument);
+            int authors = indexAll(AUTHOR_ROWS + "WHERE a.id > :lastId ORDER BY a.id", this::authorDocument);
+            writer.commit();
+            searcherManager.maybeRefreshBlocking();
+            log.info("Search index rebuilt with {} books and {} authors", books, authors);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Re-reads the given rows from the database, indexing the ones that exist and removing the others. The books
+     * of a changed author are re-indexed too, they carry the author name.
+     */
+    public void reindex(Class<?> entityType, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            if (entityType == Author.class) {
+                reindex(AUTHOR, AUTHOR_ROWS + "WHERE a.id IN :ids", ids, this::authorDocument);
+                update(BOOK, BOOK_ROWS + "WHERE a.id IN :ids", ids, this::bookDocument);
+            } else if (entityType == Book.class) {
+                reindex(BOOK, BOOK_ROWS + "WHERE b.id IN :ids", ids, this::bookDocument);
+            }
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    private void reindex(String type, String query, Collection<Long> ids,
+                         Function<Object[], Document> toDocument) throws IOException {
+        Set<Long> missing = new HashSet<>(ids);
+        missing.removeAll(update(type, query, ids, toDocument));
+        for (Long id : missing) {
+            writer.deleteDocuments(key(type, id));
+        }
+    }
+
+    /**
+     * Indexes the rows the query returns for the ids, in whichever shard they are.
+     *
+     * @return ids of the indexed rows
+     */
+    private Set<Long> update(String type, String query, Collection<Long> ids,
+                             Function<Object[], Document> toDocument) throws IOException {
+        Set<Long> indexed = new HashSet<>();
+        for (List<Long> chunk : chunks(ids)) {
+            for (int shard = 0; shard < shards.count(); shard++) {
+                for (Object[] row : rows(shard, query, "ids", chunk, Integer.MAX_VALUE)) {
+                    Long id = (Long) row[0];
+                    indexed.add(id);
+                    writer.updateDocument(key(type, id), toDocument.apply(row));
+                }
+            }
+        }
+        return indexed;
+    }
+
+    private int indexAll(String query, Function<Object[], Document> toDocument) throws IOException {
+        int count = 0;
+        for (int shard = 0; shard < shards.count(); shard++) {
+            // cada shard tiene su propio rango de ids, se recorre por separado
+            long lastId = 0;
+            List<Object[]> rows;
+            do {
+                rows = rows(shard, query, "lastId", lastId, CHUNK_SIZE);
+                for (Object[] row : rows) {
+                    writer.addDocument(toDocument.apply(row));
+                    lastId = (Long) row[0];
+                }
+                count += rows.size();
+            } while (rows.size() == CHUNK_SIZE);
+        }
+        return count;
+    }
+
+    private List<Object[]> rows(int shard, String query, String parameter, Object value, int maxResults) {
+        return shards.onShard(shard, () -> {
+            EntityManager em = emf.createEntityManager();
+            try {
+                return em.createQuery(query, Object[].class)
+                        .setParameter(parameter, value)
+                        .setMaxResults(maxResults)
+                        .getResultList();
+            } finally {
+                em.close();
+            }
+        });
+    }
+
+    private Document bookDocument(Object[] row) {
+        String authorName = row[4] == null && row[5] == null ? null
+                : ((row[4] != null ? row[4] : "") + " " + (row[5] != null ? row[5] : "")).trim();
+        Document document = document(BOOK, (Long) row[0]);
+        addText(document, TITLE, (String) row[1]);
+        if (row[2] != null) {
+            document.add(new StringField(ISBN, (String) row[2], Field.Store.YES));
+        }
+        addText(document, PUBLISHER, (String) row[3]);
+        addText(document, AUTHOR_NAME, authorName);
+        return document;
+    }
+
+    private Document authorDocument(Object[] row) {
+        Document document = document(AUTHOR, (Long) row[0]);
+        addText(document, FIRST_NAME, (String) row[1]);
+        addText(document, LAST_NAME, (String) row[2]);
+        return document;
+    }
+
+    private static Document document(String type, Long id) {
+        Document document = new Document();
+        document.add(new StringField(TYPE, type, Field.Store.NO));
+        document.add(new StringField(KEY, key(type, id).text(), Field.Store.NO));
+        document.add(new StoredField(ID, id));
+        return document;
+    }
+
+    private static void addText(Document document, String field, String value) {
+        if (value != null) {
+            document.add(new TextField(field, value, Field.Store.YES));
+        }
+    }
+
+    private static Term key(String type, Long id) {
+        return new Term(KEY, type + ":" + id);
+    }
+
+    private <T> SearchPage<T> search(String type, Map<String, Float> fields, String text, int page, int pageSize,
+                                     HitMapper<T> mapper) {
+        List<String> words = words(text);
+        if (words.isEmpty()) {
+            return new SearchPage<>(List.of(), page, pageSize, false);
+        }
+
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                int offset = page * pageSize;
+                TopDocs topDocs = searcher.search(query(type, fields, words), offset + pageSize + 1);
+                List<T> content = new ArrayList<>(pageSize);
+                ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+                for (int i = offset; i < Math.min(scoreDocs.length, offset + pageSize); i++) {
+                    content.add(mapper.map(searcher.storedFields().document(scoreDocs[i].doc), scoreDocs[i].score));
+                }
+                return new SearchPage<>(content, page, pageSize, scoreDocs.length > offset + pageSize);
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Every word must match one of the fields. Whole words score above prefixes and prefixes above typos, fuzzy
+     * matching allows one edit from four characters on and two from eight.
+     */
+    private static Query query(String type, Map<String, Float> fields, List<String> words) {
+        BooleanQuery.Builder query = new BooleanQuery.Builder()
+                .add(new TermQuery(new Term(TYPE, type)), BooleanClause.Occur.FILTER);
+        for (String word : words) {
+            BooleanQuery.Builder anyField = new BooleanQuery.Builder();
+            fields.forEach((field, boost) -> {
+                Term term = new Term(field, word);
+                anyField.add(new BoostQuery(new TermQuery(term), boost * 4), BooleanClause.Occur.SHOULD);
+                anyField.add(new BoostQuery(new PrefixQuery(term), boost * 2), BooleanClause.Occur.SHOULD);
+                int maxEdits = word.length() >= 8 ? 2 : word.length() >= 4 ? 1 : 0;
+                if (maxEdits > 0) {
+                    anyField.add(new BoostQuery(new FuzzyQuery(term, maxEdits), boost), BooleanClause.Occur.SHOULD);
+                }
+            });
+            query.add(anyField.build(), BooleanClause.Occur.MUST);
+        }
+        return query.build();
+    }
+
+    private List<String> words(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        if (text == null) {
+            return List.of();
+        }
+        try (TokenStream stream = analyzer.tokenStream(TITLE, text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                words.add(term.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new ArrayList<>(words);
+    }
+
+    private static List<List<Long>> chunks(Collection<Long> ids) {
+        List<Long> all = new ArrayList<>(ids);
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += CHUNK_SIZE) {
+            chunks.add(all.subList(from, Math.min(all.size(), from + CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+
+    @FunctionalInterface
+    private interface HitMapper<T> {
+        T map(Document document, float score);
+    }
+}
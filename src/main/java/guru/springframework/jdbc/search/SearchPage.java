@@ -0,0 +1,11 @@
+package guru.springframework.jdbc.search;
+
+import java.util.List;
+
+/**
+ * One page of search hits, best match first.
+ *
+ * @param page zero based
+ */
+public record SearchPage<T>(List<T> content, int page, int pageSize, boolean hasNext) {
+}
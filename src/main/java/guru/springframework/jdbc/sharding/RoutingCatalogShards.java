@@ -0,0 +1,175 @@
+package guru.springframework.jdbc.sharding;
+
+import guru.springframework.jdbc.dao.CatalogShards;
+import guru.springframework.jdbc.inspection.SqlInspectionListener;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * {@link CatalogShards} over a {@link ShardRoutingDataSource}. A scatter runs the read of every shard on a
+ * {@code scatter-threads} pool, on a thread routed to the shard and in a read-only transaction of its own. A write
+ * to several shards runs one transaction per shard, one after the other on the calling thread.
+ */
+public class RoutingCatalogShards implements CatalogShards, AutoCloseable {
+
+    private final int count;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TransactionTemplate newTransaction;
+    private final ExecutorService scatterExecutor;
+
+    public RoutingCatalogShards(int count, PlatformTransactionManager transactionManager, int scatterThreads) {
+        this.count = count;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        AtomicInteger threads = new AtomicInteger();
+        this.scatterExecutor = Executors.newFixedThreadPool(scatterThreads, runnable -> {
+            Thread thread = new Thread(runnable, "shard-scatter-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public int count() {
+        return count;
+    }
+
+    @Override
+    public void route(int shard) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Routing to shard " + shard + " needs a transaction");
+        }
+        Integer routed = ShardContext.current();
+        if (routed != null) {
+            if (routed != shard) {
+                throw new IllegalStateException("The transaction already uses shard " + routed +
+                        ", it cannot use shard " + shard);
+            }
+            return;
+        }
+        ShardContext.set(shard);
+        // el shard vale hasta el final de la transacción, el commit también escribe en él; una REQUIRES_NEW la
+        // suspende y elige su propio shard
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                ShardContext.clear();
+            }
+
+            @Override
+            public void resume() {
+                ShardContext.set(shard);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                ShardContext.clear();
+            }
+        });
+    }
+
+    @Override
+    public <T> void write(TransactionStatus transaction, Map<Integer, List<T>> byShard, Consumer<List<T>> write) {
+        if (byShard.size() <= 1) {
+            byShard.forEach((shard, rows) -> {
+                route(shard);
+                write.accept(rows);
+            });
+            return;
+        }
+        if (!transaction.isNewTransaction() || ShardContext.current() != null) {
+            throw new IllegalStateException("The rows span shards " + byShard.keySet() +
+                    ", they cannot be written in the transaction of the caller");
+        }
+        // la transacción de la llamada queda sin usar, cada shard confirma la suya
+        byShard.forEach((shard, rows) -> newTransaction.executeWithoutResult(status -> {
+            route(shard);
+            write.accept(rows);
+        }));
+    }
+
+    @Override
+    public void generateIds(Runnable persist) {
+        Integer routed = ShardContext.current();
+        // el generador de tabla trabaja con una conexión propia, que se abre en el shard del hilo
+        ShardContext.set(0);
+        try {
+            persist.run();
+        } finally {
+            if (routed != null) {
+                ShardContext.set(routed);
+            } else {
+                ShardContext.clear();
+            }
+        }
+    }
+
+    @Override
+    public <T> T onShard(int shard, Supplier<T> open) {
+        Integer routed = ShardContext.current();
+        // la conexión del cursor se abre dentro de open y se queda en el shard hasta que se cierra
+        ShardContext.set(shard);
+        try {
+            return open.get();
+        } finally {
+            if (routed != null) {
+                ShardContext.set(routed);
+            } else {
+                ShardContext.clear();
+            }
+        }
+    }
+
+    @Override
+    public <T> List<T> scatter(IntFunction<T> read) {
+        List<CompletableFuture<T>> reads = new ArrayList<>(count);
+        for (int shard = 0; shard < count; shard++) {
+            int target = shard;
+            // las sentencias de cada shard cuentan para la llamada al DAO que espera el scatter
+            reads.add(CompletableFuture.supplyAsync(
+                    SqlInspectionListener.attributedToCaller(() -> readOn(target, read)), scatterExecutor));
+        }
+
+        List<T> results = new ArrayList<>(count);
+        try {
+            reads.forEach(result -> results.add(result.join()));
+        } catch (CompletionException e) {
+            reads.forEach(result -> result.cancel(false));
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        return results;
+    }
+
+    private <T> T readOn(int shard, IntFunction<T> read) {
+        ShardContext.set(shard);
+        try {
+            return readOnlyTransaction.execute(status -> read.apply(shard));
+        } finally {
+            ShardContext.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        scatterExecutor.shutdown();
+    }
+}
@@ -0,0 +1,24 @@
+package guru.springframework.jdbc.sharding;
+
+/**
+ * Shard the connections of the current thread go to, shard 0 when none was chosen.
+ */
+final class ShardContext {
+
+    private static final ThreadLocal<Integer> SHARD = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    static Integer current() {
+        return SHARD.get();
+    }
+
+    static void set(int shard) {
+        SHARD.set(shard);
+    }
+
+    static void clear() {
+        SHARD.remove();
+    }
+}
@@ -0,0 +1,56 @@
+package guru.springframework.jdbc.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends every connection to the shard of the current thread ({@link RoutingCatalogShards#route(int)}). The lookup
+ * happens when the connection is requested, so the {@code DataSource} must be wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: the transaction manager asks for the
+ * connection before the DAO knows which shard it needs.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private final List<DataSource> shards;
+
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        this.shards = List.copyOf(shards);
+
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    DataSource shard(int shard) {
+        return shards.get(shard);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = ShardContext.current();
+        return shard != null ? shard : 0;
+    }
+
+    /**
+     * Closes the pools of shards 1 to N, shard 0 is closed by its owner.
+     */
+    @Override
+    public void close() {
+        shards.stream()
+                .skip(1)
+                .filter(HikariDataSource.class::isInstance)
+                .forEach(shard -> ((HikariDataSource) shard).close());
+    }
+}
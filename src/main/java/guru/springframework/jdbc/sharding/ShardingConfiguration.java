@@ -0,0 +1,122 @@
+package guru.springframework.jdbc.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.Location;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.springframework.boot.autoconfigure.flyway.FlywayConfigurationCustomizer;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the auto-configured {@code DataSource} with a {@link ShardRoutingDataSource} when
+ * {@code sdjpa.sharding.enabled=true}, and gives the DAOs the {@link RoutingCatalogShards} to route with. Shard 0 is
+ * built from {@code spring.datasource.*} and migrated by Boot's Flyway; the other shards are migrated right after it,
+ * with the same configuration. Every shard also runs {@code db/sharding}, which keeps the seed rows in the shard of
+ * their author and gives the id generator of each shard its own range, so ids stay unique across shards.
+ * <p>
+ * Cannot be combined with {@code sdjpa.routing.enabled}, the startup fails when both are enabled.
+ */
+@Configuration(proxyBeanMethods = false)
+@Conditional(ShardingEnabledCondition.class)
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardingConfiguration {
+
+    static final String SHARD_MIGRATIONS = "classpath:db/sharding";
+
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("shard-0");
+        return dataSource;
+    }
+
+    @Bean
+    public FlywayConfigurationCustomizer shardMigrations(ShardingProperties sharding) {
+        return configuration -> shardMigrations(configuration, 0, sharding.shardCount());
+    }
+
+    @Bean
+    public FlywayMigrationStrategy shardMigrationStrategy(ShardRoutingDataSource shardRoutingDataSource) {
+        // el Flyway de Boot migra el shard 0, su configuración sirve para el resto
+        return flyway -> {
+            flyway.migrate();
+            for (int shard = 1; shard < shardRoutingDataSource.shardCount(); shard++) {
+                shardMigrations(Flyway.configure().configuration(flyway.getConfiguration()), shard,
+                        shardRoutingDataSource.shardCount())
+                        .dataSource(shardRoutingDataSource.shard(shard))
+                        .load()
+                        .migrate();
+            }
+        };
+    }
+
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(HikariDataSource primaryDataSource,
+                                                         DataSourceProperties dataSourceProperties,
+                                                         ShardingProperties sharding) {
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(primaryDataSource);
+        List<ShardingProperties.Shard> configured = sharding.getShards();
+        for (int i = 0; i < configured.size(); i++) {
+            shards.add(shardDataSource(i + 1, configured.get(i), dataSourceProperties));
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    @Bean
+    public RoutingCatalogShards catalogShards(ShardingProperties sharding,
+                                              PlatformTransactionManager transactionManager) {
+        return new RoutingCatalogShards(sharding.shardCount(), transactionManager, sharding.getScatterThreads());
+    }
+
+    static FluentConfiguration shardMigrations(FluentConfiguration configuration, int shard, int shards) {
+        List<Location> locations = new ArrayList<>(Arrays.asList(configuration.getLocations()));
+        Location shardLocation = new Location(SHARD_MIGRATIONS);
+        if (!locations.contains(shardLocation)) {
+            locations.add(shardLocation);
+        }
+        Map<String, String> placeholders = new HashMap<>(configuration.getPlaceholders());
+        placeholders.put("shard", String.valueOf(shard));
+        placeholders.put("shards", String.valueOf(shards));
+        return configuration.locations(locations.toArray(new Location[0])).placeholders(placeholders);
+    }
+
+    private static HikariDataSource shardDataSource(int shard, ShardingProperties.Shard properties,
+                                                    DataSourceProperties primary) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("shard-" + shard);
+        dataSource.setDriverClassName(primary.determineDriverClassName());
+        dataSource.setJdbcUrl(properties.getUrl());
+        dataSource.setUsername(properties.getUsername() != null
+                ? properties.getUsername() : primary.determineUsername());
+        dataSource.setPassword(properties.getPassword() != null
+                ? properties.getPassword() : primary.determinePassword());
+        dataSource.setMaximumPoolSize(properties.getMaximumPoolSize());
+        return dataSource;
+    }
+}
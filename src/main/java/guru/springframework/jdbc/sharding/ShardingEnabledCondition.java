@@ -0,0 +1,27 @@
+package guru.springframework.jdbc.sharding;
+
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
+import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.core.env.Environment;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+/**
+ * Matches when {@code sdjpa.sharding.enabled=true}. Fails the startup when {@code sdjpa.routing.enabled=true} as well:
+ * both replace the {@code DataSource}, and the clash would otherwise only show up as a bean override error.
+ */
+class ShardingEnabledCondition extends SpringBootCondition {
+
+    @Override
+    public ConditionOutcome getMatchOutcome(ConditionContext context, AnnotatedTypeMetadata metadata) {
+        Environment environment = context.getEnvironment();
+        if (!environment.getProperty("sdjpa.sharding.enabled", Boolean.class, false)) {
+            return ConditionOutcome.noMatch("sdjpa.sharding.enabled is not true");
+        }
+        if (environment.getProperty("sdjpa.routing.enabled", Boolean.class, false)) {
+            throw new IllegalStateException("sdjpa.sharding.enabled and sdjpa.routing.enabled cannot be combined, " +
+                    "the shards have no replicas: disable one of them");
+        }
+        return ConditionOutcome.match("sdjpa.sharding.enabled is true");
+    }
+}
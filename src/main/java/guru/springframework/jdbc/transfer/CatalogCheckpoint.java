@@ -0,0 +1,52 @@
+package guru.springframework.jdbc.transfer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Number of records of an import file already committed, kept next to it in {@code <file>.checkpoint} so an
+ * interrupted import resumes after them.
+ */
+class CatalogCheckpoint {
+
+    private final Path path;
+    private final Path next;
+
+    CatalogCheckpoint(Path file) {
+        this.path = file.resolveSibling(file.getFileName() + ".checkpoint");
+        this.next = file.resolveSibling(file.getFileName() + ".checkpoint.tmp");
+    }
+
+    /**
+     * @return 0 when there is no checkpoint
+     */
+    long read() {
+        try {
+            return Files.exists(path) ? Long.parseLong(Files.readString(path, StandardCharsets.UTF_8).trim()) : 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void write(long records) {
+        try {
+            // se sustituye de una vez, un corte a mitad de escritura deja el checkpoint anterior
+            Files.writeString(next, Long.toString(records), StandardCharsets.UTF_8);
+            Files.move(next, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void delete() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package guru.springframework.jdbc.transfer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.dto.CatalogRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Dumps the catalog to a CSV or JSON lines file, in the format {@link CatalogImporter} reads. The rows are read
+ * over a forward-only cursor ({@link BookDao#streamCatalog(int)}) {@code batch-size} at a time and written as they
+ * come, nothing is collected in memory. The file is written next to the target and moved over it when complete, so
+ * a failed export never leaves a truncated file behind.
+ */
+@Component
+public class CatalogExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogExporter.class);
+
+    private final BookDao bookDao;
+    private final int batchSize;
+    private final ObjectWriter jsonWriter = new ObjectMapper().writerFor(CatalogRecord.class)
+            .withRootValueSeparator("\n");
+    private final ObjectWriter csvWriter;
+
+    @Autowired
+    public CatalogExporter(BookDao bookDao, @Value("${sdjpa.transfer.batch-size:1000}") int batchSize) {
+        this.bookDao = bookDao;
+        this.batchSize = batchSize;
+        CsvMapper csvMapper = new CsvMapper();
+        this.csvWriter = csvMapper.writerFor(CatalogRecord.class)
+                .with(csvMapper.schemaFor(CatalogRecord.class).withHeader());
+    }
+
+    public TransferProgress export(Path file) {
+        return export(file, progress -> {
+        });
+    }
+
+    /**
+     * @param progress called every {@code batch-size} rows with the rows written so far
+     */
+    public TransferProgress export(Path file, Consumer<TransferProgress> progress) {
+        CatalogFormat format = CatalogFormat.of(file);
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+        long start = System.nanoTime();
+        long rows = 0;
+        try (Stream<CatalogRecord> records = bookDao.streamCatalog(batchSize);
+             BufferedWriter out = Files.newBufferedWriter(partial, StandardCharsets.UTF_8);
+             SequenceWriter writer = (format == CatalogFormat.CSV ? csvWriter : jsonWriter).writeValues(out)) {
+            Iterator<CatalogRecord> iterator = records.iterator();
+            while (iterator.hasNext()) {
+                writer.write(iterator.next());
+                if (++rows % batchSize == 0) {
+                    progress.accept(new TransferProgress(rows, Duration.ofNanos(System.nanoTime() - start)));
+                }
+            }
+            if (format == CatalogFormat.JSONL && rows > 0) {
+                // el separador solo va entre valores, la última línea también acaba en salto de línea
+                writer.flush();
+                out.newLine();
+            }
+        } catch (IOException e) {
+            deletePartial(partial);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            deletePartial(partial);
+            throw e;
+        }
+
+        try {
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        TransferProgress result = new TransferProgress(rows, Duration.ofNanos(System.nanoTime() - start));
+        log.info("Exported {} records to {} at {} rows/s", rows, file, Math.round(result.rowsPerSecond()));
+        return result;
+    }
+
+    private static void deletePartial(Path partial) {
+        try {
+            Files.deleteIfExists(partial);
+        } catch (IOException e) {
+            log.warn("Could not delete the partial export {}", partial, e);
+        }
+    }
+}
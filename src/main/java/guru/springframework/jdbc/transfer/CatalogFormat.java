@@ -0,0 +1,35 @@
+package guru.springframework.jdbc.transfer;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Catalog file formats, told apart by the file extension.
+ */
+public enum CatalogFormat {
+
+    /**
+     * Comma separated values with a header line naming the {@link guru.springframework.jdbc.dto.CatalogRecord}
+     * properties, in any order.
+     */
+    CSV,
+
+    /**
+     * One {@link guru.springframework.jdbc.dto.CatalogRecord} JSON object per line.
+     */
+    JSONL;
+
+    /**
+     * @throws IllegalArgumentException unless the file name ends in {@code .csv}, {@code .jsonl} or {@code .ndjson}
+     */
+    public static CatalogFormat of(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            return JSONL;
+        }
+        throw new IllegalArgumentException("Unknown catalog format: " + file);
+    }
+}
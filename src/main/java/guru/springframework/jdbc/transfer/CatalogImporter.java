@@ -0,0 +1,287 @@
+package guru.springframework.jdbc.transfer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import guru.springframework.jdbc.dao.AuthorDao;
+import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.domain.Book;
+import guru.springframework.jdbc.dto.AuthorSummary;
+import guru.springframework.jdbc.dto.CatalogRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Loads a CSV or JSON lines catalog file into the book and author tables.
+ * <p>
+ * The file is read as a stream of raw records, parsed in batches of {@code batch-size} records on
+ * {@code parse-threads} threads and written in file order, one batch at a time: the authors missing from an
+ * in-memory name to id map, preloaded with the existing ones, are upserted by name and the books are upserted by
+ * ISBN, so an ISBN already in the catalog is updated. After every batch the number of records committed is saved in
+ * a {@code <file>.checkpoint} file; importing the file again after a failure skips them. Upserts are idempotent, a
+ * batch committed after the last checkpoint is simply written again.
+ */
+@Component
+public class CatalogImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogImporter.class);
+
+    private final AuthorDao authorDao;
+    private final BookDao bookDao;
+    private final int batchSize;
+    private final int parseThreads;
+    private final ObjectReader jsonReader = new ObjectMapper().readerFor(CatalogRecord.class);
+    private final ObjectReader csvReader = new CsvMapper().readerFor(CatalogRecord.class)
+            .with(CsvSchema.emptySchema().withHeader())
+            .with(CsvParser.Feature.EMPTY_STRING_AS_NULL);
+
+    @Autowired
+    public CatalogImporter(AuthorDao authorDao, BookDao bookDao,
+                           @Value("${sdjpa.transfer.batch-size:1000}") int batchSize,
+                           @Value("${sdjpa.transfer.parse-threads:0}") int parseThreads) {
+        this.authorDao = authorDao;
+        this.bookDao = bookDao;
+        this.batchSize = batchSize;
+        this.parseThreads = parseThreads > 0 ? parseThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public TransferProgress importFile(Path file) {
+        return importFile(file, progress -> {
+        });
+    }
+
+    /**
+     * @param progress called after every batch with the records imported by this run so far
+     * @return the records imported by this run, not counting the ones skipped from a previous run
+     * @throws IllegalArgumentException if a record cannot be parsed or has no ISBN, the batches before it stay
+     *                                  committed and checkpointed
+     */
+    public TransferProgress importFile(Path file, Consumer<TransferProgress> progress) {
+        CatalogFormat format = CatalogFormat.of(file);
+        CatalogCheckpoint checkpoint = new CatalogCheckpoint(file);
+        long committed = checkpoint.read();
+        if (committed > 0) {
+            log.info("Resuming the import of {} after {} records", file, committed);
+        }
+
+        long start = System.nanoTime();
+        long rows = 0;
+        Map<List<String>, Long> authorIds = authorIds();
+        ExecutorService parsers = parsers();
+        // lotes en orden de lectura, a lo sumo uno por hilo esperando a escribirse
+        Deque<CompletableFuture<Batch>> parsing = new ArrayDeque<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = format == CatalogFormat.CSV ? readRecord(reader, format) : null;
+            for (long skipped = 0; skipped < committed; skipped++) {
+                if (readRecord(reader, format) == null) {
+                    break;
+                }
+            }
+
+            long position = committed;
+            List<String> records;
+            while (!(records = readBatch(reader, format)).isEmpty()) {
+                long first = position;
+                List<String> batch = records;
+                parsing.add(CompletableFuture.supplyAsync(() -> parse(file, format, header, first, batch), parsers));
+                position += records.size();
+                if (parsing.size() > parseThreads) {
+                    rows += write(parsing.remove(), authorIds, checkpoint);
+                    progress.accept(new TransferProgress(rows, Duration.ofNanos(System.nanoTime() - start)));
+                }
+            }
+            while (!parsing.isEmpty()) {
+                rows += write(parsing.remove(), authorIds, checkpoint);
+                progress.accept(new TransferProgress(rows, Duration.ofNanos(System.nanoTime() - start)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            parsing.forEach(batch -> batch.cancel(false));
+            parsers.shutdown();
+        }
+
+        checkpoint.delete();
+        TransferProgress result = new TransferProgress(rows, Duration.ofNanos(System.nanoTime() - start));
+        log.info("Imported {} records from {} at {} rows/s", rows, file, Math.round(result.rowsPerSecond()));
+        return result;
+    }
+
+    private Map<List<String>, Long> authorIds() {
+        Map<List<String>, Long> ids = new HashMap<>();
+        for (AuthorSummary author : authorDao.findAllSummaries()) {
+            ids.put(List.of(author.firstName(), author.lastName()), author.id());
+        }
+        return ids;
+    }
+
+    private long write(CompletableFuture<Batch> parsed, Map<List<String>, Long> authorIds,
+                       CatalogCheckpoint checkpoint) {
+        Batch batch;
+        try {
+            batch = parsed.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+
+        Map<List<String>, Author> newAuthors = new LinkedHashMap<>();
+        for (CatalogRecord record : batch.records()) {
+            List<String> name = authorName(record);
+            if (name != null && !authorIds.containsKey(name)) {
+                newAuthors.computeIfAbsent(name, CatalogImporter::author);
+            }
+        }
+        if (!newAuthors.isEmpty()) {
+            authorDao.upsertAllAuthorsByName(newAuthors.values());
+            newAuthors.forEach((name, author) -> authorIds.put(name, author.getId()));
+        }
+
+        List<Book> books = new ArrayList<>(batch.records().size());
+        for (CatalogRecord record : batch.records()) {
+            Book book = new Book(record.title(), record.isbn(), record.publisher());
+            List<String> name = authorName(record);
+            if (name != null) {
+                Author author = new Author();
+                author.setId(authorIds.get(name));
+                book.setAuthor(author);
+            }
+            books.add(book);
+        }
+        if (!books.isEmpty()) {
+            bookDao.upsertAllByIsbn(books);
+        }
+        checkpoint.write(batch.end());
+        return batch.records().size();
+    }
+
+    private Batch parse(Path file, CatalogFormat format, String header, long first, List<String> records) {
+        List<CatalogRecord> parsed = new ArrayList<>(records.size());
+        try {
+            if (format == CatalogFormat.CSV) {
+                // cada lote se lee como un documento con la cabecera del fichero
+                parsed.addAll(csvReader.<CatalogRecord>readValues(header + "\n" + String.join("\n", records))
+                        .readAll());
+            } else {
+                for (String record : records) {
+                    parsed.add(jsonReader.readValue(record));
+                }
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed record in " + file + " after record " + first + ": " +
+                    e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        for (int i = 0; i < parsed.size(); i++) {
+            CatalogRecord record = parsed.get(i);
+            if (record.isbn() == null || record.isbn().isBlank()) {
+                throw new IllegalArgumentException("Record " + (first + i + 1) + " of " + file + " has no ISBN");
+            }
+            if ((record.authorFirstName() == null) != (record.authorLastName() == null)) {
+                throw new IllegalArgumentException("Record " + (first + i + 1) + " of " + file +
+                        " needs both the first and the last name of the author");
+            }
+        }
+        return new Batch(parsed, first + records.size());
+    }
+
+    private List<String> readBatch(BufferedReader reader, CatalogFormat format) throws IOException {
+        List<String> records = new ArrayList<>(batchSize);
+        String record;
+        while (records.size() < batchSize && (record = readRecord(reader, format)) != null) {
+            records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * Next non-blank record of the file, {@code null} at the end. A CSV record spans several lines when a quoted
+     * field has line breaks.
+     */
+    private static String readRecord(BufferedReader reader, CatalogFormat format) throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+        } while (line != null && line.isBlank());
+        if (line == null || format != CatalogFormat.CSV) {
+            return line;
+        }
+
+        // con un número impar de comillas el campo sigue abierto en la línea siguiente
+        int quotes = quotes(line);
+        if (quotes % 2 == 0) {
+            return line;
+        }
+        StringBuilder record = new StringBuilder(line);
+        while (quotes % 2 != 0 && (line = reader.readLine()) != null) {
+            record.append('\n').append(line);
+            quotes += quotes(line);
+        }
+        return record.toString();
+    }
+
+    private static int quotes(String line) {
+        int quotes = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        return quotes;
+    }
+
+    private ExecutorService parsers() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(parseThreads, runnable -> {
+            Thread thread = new Thread(runnable, "catalog-parse-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static List<String> authorName(CatalogRecord record) {
+        return record.authorFirstName() != null ? List.of(record.authorFirstName(), record.authorLastName()) : null;
+    }
+
+    private static Author author(List<String> name) {
+        Author author = new Author();
+        author.setFirstName(name.get(0));
+        author.setLastName(name.get(1));
+        return author;
+    }
+
+    /**
+     * Parsed records of a batch, {@code end} is the number of records of the file up to its last one.
+     */
+    private record Batch(List<CatalogRecord> records, long end) {
+    }
+}
@@ -0,0 +1,13 @@
+package guru.springframework.jdbc.transfer;
+
+import java.time.Duration;
+
+/**
+ * Rows imported or exported so far by a transfer and how long it has been running.
+ */
+public record TransferProgress(long rows, Duration elapsed) {
+
+    public double rowsPerSecond() {
+        return elapsed.isZero() ? 0 : rows * 1_000_000_000d / elapsed.toNanos();
+    }
+}
@@ -0,0 +1,95 @@
+package guru.springframework.jdbc.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import guru.springframework.jdbc.async.AsyncAuthorDao;
+import guru.springframework.jdbc.dao.AuthorDao;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.search.AuthorSearchHit;
+import guru.springframework.jdbc.search.CatalogSearch;
+import guru.springframework.jdbc.search.SearchPage;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.CompletableFuture;
+
+import static guru.springframework.jdbc.web.BookController.pageSize;
+
+/**
+ * Authors over HTTP. Lookups and pages run on the {@link AsyncAuthorDao}, so no request thread waits for the
+ * database.
+ */
+@RestController
+@RequestMapping("/api/authors")
+public class AuthorController {
+
+    private final AsyncAuthorDao asyncAuthorDao;
+    private final AuthorDao authorDao;
+    private final CatalogSearch catalogSearch;
+    private final ObjectWriter authorWriter;
+
+    public AuthorController(AsyncAuthorDao asyncAuthorDao, AuthorDao authorDao, CatalogSearch catalogSearch,
+                            ObjectMapper objectMapper) {
+        this.asyncAuthorDao = asyncAuthorDao;
+        this.authorDao = authorDao;
+        this.catalogSearch = catalogSearch;
+        this.authorWriter = objectMapper.writerFor(AuthorView.class);
+    }
+
+    @GetMapping("/{id}")
+    public CompletableFuture<ResponseEntity<AuthorView>> getById(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return asyncAuthorDao.getById(id).thenApply(author -> conditional(author, ifNoneMatch));
+    }
+
+    /**
+     * Keyset paginated authors sorted by last name, all of them without {@code lastName}.
+     *
+     * @param lastName prefix of the last name
+     */
+    @GetMapping
+    public CompletableFuture<PageView<AuthorView>> list(@RequestParam(defaultValue = "") String lastName,
+                                                        @RequestParam(defaultValue = "50") int pageSize,
+                                                        @RequestParam(required = false) String pageToken) {
+        return asyncAuthorDao.listAuthorByLastNameLike(lastName, pageSize(pageSize), pageToken)
+                .thenApply(page -> PageView.of(page, AuthorView::of));
+    }
+
+    /**
+     * @param page zero based
+     */
+    @GetMapping("/search")
+    public SearchPage<AuthorSearchHit> search(@RequestParam String q, @RequestParam(defaultValue = "0") int page,
+                                              @RequestParam(defaultValue = "20") int pageSize) {
+        return catalogSearch.searchAuthors(q, page, pageSize(pageSize));
+    }
+
+    /**
+     * Every author as JSON lines, in id order.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> stream(HttpServletRequest request,
+                                                        @RequestParam(defaultValue = "500") int fetchSize) {
+        int rowsPerFetch = pageSize(fetchSize);
+        return NdjsonResponses.of(request, () -> authorDao.streamAll(rowsPerFetch).map(AuthorView::of),
+                authorWriter, rowsPerFetch);
+    }
+
+    private static ResponseEntity<AuthorView> conditional(Author author, String ifNoneMatch) {
+        if (author == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ConditionalResponses.ok(AuthorView.of(author),
+                ConditionalResponses.etag("author", author.getId(), author.getVersion()), ifNoneMatch);
+    }
+}
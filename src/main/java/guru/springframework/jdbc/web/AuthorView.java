@@ -0,0 +1,14 @@
+package guru.springframework.jdbc.web;
+
+import guru.springframework.jdbc.domain.Author;
+
+/**
+ * JSON representation of an author, with the materialized book count instead of the books.
+ */
+public record AuthorView(Long id, String firstName, String lastName, int bookCount, long version) {
+
+    static AuthorView of(Author author) {
+        return new AuthorView(author.getId(), author.getFirstName(), author.getLastName(), author.getBookCount(),
+                author.getVersion());
+    }
+}
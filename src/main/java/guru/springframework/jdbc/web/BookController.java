@@ -0,0 +1,107 @@
+package guru.springframework.jdbc.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import guru.springframework.jdbc.async.AsyncBookDao;
+import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.domain.Book;
+import guru.springframework.jdbc.dto.BookSummary;
+import guru.springframework.jdbc.dto.CatalogRecord;
+import guru.springframework.jdbc.search.BookSearchHit;
+import guru.springframework.jdbc.search.CatalogSearch;
+import guru.springframework.jdbc.search.SearchPage;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Books over HTTP. Lookups and pages run on the {@link AsyncBookDao}, so no request thread waits for the database.
+ */
+@RestController
+@RequestMapping("/api/books")
+public class BookController {
+
+    static final int MAX_PAGE_SIZE = 500;
+
+    private final AsyncBookDao asyncBookDao;
+    private final BookDao bookDao;
+    private final CatalogSearch catalogSearch;
+    private final ObjectWriter catalogWriter;
+
+    public BookController(AsyncBookDao asyncBookDao, BookDao bookDao, CatalogSearch catalogSearch,
+                          ObjectMapper objectMapper) {
+        this.asyncBookDao = asyncBookDao;
+        this.bookDao = bookDao;
+        this.catalogSearch = catalogSearch;
+        this.catalogWriter = objectMapper.writerFor(CatalogRecord.class);
+    }
+
+    @GetMapping("/{id}")
+    public CompletableFuture<ResponseEntity<BookView>> getById(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return asyncBookDao.getById(id).thenApply(book -> conditional(book, ifNoneMatch));
+    }
+
+    @GetMapping("/isbn/{isbn}")
+    public CompletableFuture<ResponseEntity<BookView>> getByIsbn(
+            @PathVariable String isbn,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // un isbn que no existe no cuesta ni consulta ni excepción mientras siga en la cache negativa
+        return asyncBookDao.lookupByISBN(isbn).thenApply(book -> conditional(book.orElse(null), ifNoneMatch));
+    }
+
+    /**
+     * Keyset paginated summaries sorted by id.
+     */
+    @GetMapping
+    public CompletableFuture<PageView<BookSummary>> list(@RequestParam(defaultValue = "50") int pageSize,
+                                                         @RequestParam(required = false) String pageToken) {
+        return asyncBookDao.findSummaryPage(pageSize(pageSize), pageToken)
+                .thenApply(page -> PageView.of(page, summary -> summary));
+    }
+
+    /**
+     * @param page zero based
+     */
+    @GetMapping("/search")
+    public SearchPage<BookSearchHit> search(@RequestParam String q, @RequestParam(defaultValue = "0") int page,
+                                            @RequestParam(defaultValue = "20") int pageSize) {
+        return catalogSearch.searchBooks(q, page, pageSize(pageSize));
+    }
+
+    /**
+     * Every book with the name of its author as JSON lines, in id order.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> stream(HttpServletRequest request,
+                                                        @RequestParam(defaultValue = "500") int fetchSize) {
+        int rowsPerFetch = pageSize(fetchSize);
+        return NdjsonResponses.of(request, () -> bookDao.streamCatalog(rowsPerFetch), catalogWriter, rowsPerFetch);
+    }
+
+    private static ResponseEntity<BookView> conditional(Book book, String ifNoneMatch) {
+        if (book == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ConditionalResponses.ok(BookView.of(book),
+                ConditionalResponses.etag("book", book.getId(), book.getVersion()), ifNoneMatch);
+    }
+
+    static int pageSize(int pageSize) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE + ": " + pageSize);
+        }
+        return pageSize;
+    }
+}
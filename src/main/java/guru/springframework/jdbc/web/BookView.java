@@ -0,0 +1,16 @@
+package guru.springframework.jdbc.web;
+
+import guru.springframework.jdbc.domain.Book;
+
+/**
+ * JSON representation of a book, with the id of its author so the lazy association is never loaded.
+ */
+public record BookView(Long id, String isbn, String title, String publisher, Long authorId, long version) {
+
+    static BookView of(Book book) {
+        // el id de un proxy sin inicializar no necesita ir a la base de datos
+        Long authorId = book.getAuthor() != null ? book.getAuthor().getId() : null;
+        return new BookView(book.getId(), book.getIsbn(), book.getTitle(), book.getPublisher(), authorId,
+                book.getVersion());
+    }
+}
@@ -0,0 +1,39 @@
+package guru.springframework.jdbc.web;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import javax.persistence.NoResultException;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Maps the DAO exceptions to HTTP statuses. A full DAO executor or a timed out call is a {@code 503} the client may
+ * retry.
+ */
+@RestControllerAdvice(basePackageClasses = CatalogExceptionHandler.class)
+public class CatalogExceptionHandler {
+
+    @ExceptionHandler(NoResultException.class)
+    public ResponseEntity<Map<String, String>> notFound(NoResultException e) {
+        return error(HttpStatus.NOT_FOUND, e);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> badRequest(IllegalArgumentException e) {
+        return error(HttpStatus.BAD_REQUEST, e);
+    }
+
+    @ExceptionHandler({RejectedExecutionException.class, TimeoutException.class})
+    public ResponseEntity<Map<String, String>> unavailable(Exception e) {
+        return error(HttpStatus.SERVICE_UNAVAILABLE, e);
+    }
+
+    private static ResponseEntity<Map<String, String>> error(HttpStatus status, Exception e) {
+        return ResponseEntity.status(status)
+                .body(Map.of("error", status.getReasonPhrase(), "message", String.valueOf(e.getMessage())));
+    }
+}
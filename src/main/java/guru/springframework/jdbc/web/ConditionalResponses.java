@@ -0,0 +1,46 @@
+package guru.springframework.jdbc.web;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Conditional GET of a single entity. The ETag is the entity type, id and {@code @Version}, so a revalidation is
+ * answered with {@code 304 Not Modified} from the version alone, without serializing the entity. The entity itself
+ * usually comes from the second-level cache.
+ */
+final class ConditionalResponses {
+
+    private ConditionalResponses() {
+    }
+
+    static String etag(String type, Long id, long version) {
+        return "\"" + type + "-" + id + "-" + version + "\"";
+    }
+
+    /**
+     * @param ifNoneMatch the {@code If-None-Match} header of the request, may be {@code null}
+     */
+    static <T> ResponseEntity<T> ok(T view, String etag, String ifNoneMatch) {
+        if (matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(view);
+    }
+
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            // comparación débil, como pide RFC 7232 para If-None-Match
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,48 @@
+package guru.springframework.jdbc.web;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Newline delimited JSON responses written from a database cursor, one row at a time. The body is written on the
+ * MVC async executor once the request thread is released; the cursor, and its connection, is opened there and closed
+ * when the last row is written or the client goes away.
+ */
+final class NdjsonResponses {
+
+    private NdjsonResponses() {
+    }
+
+    /**
+     * @param rows       opens the cursor, {@link guru.springframework.jdbc.dao.BookDao#streamCatalog(int)} and the
+     *                   like
+     * @param flushEvery rows buffered before they are sent
+     */
+    static <T> ResponseEntity<StreamingResponseBody> of(HttpServletRequest request, Supplier<Stream<T>> rows,
+                                                        ObjectWriter writer, int flushEvery) {
+        // sin buffer de la respuesta completa, no hay ETag
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+        StreamingResponseBody body = out -> {
+            try (Stream<T> stream = rows.get()) {
+                Iterator<T> iterator = stream.iterator();
+                long count = 0;
+                while (iterator.hasNext()) {
+                    out.write(writer.writeValueAsBytes(iterator.next()));
+                    out.write('\n');
+                    if (++count % flushEvery == 0) {
+                        out.flush();
+                    }
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+}
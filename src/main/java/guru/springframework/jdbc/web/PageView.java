@@ -0,0 +1,16 @@
+package guru.springframework.jdbc.web;
+
+import guru.springframework.jdbc.dao.KeysetPage;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * JSON representation of a keyset page, {@code nextPageToken} is {@code null} on the last page.
+ */
+public record PageView<T>(List<T> content, String nextPageToken) {
+
+    static <E, T> PageView<T> of(KeysetPage<E> page, Function<E, T> view) {
+        return new PageView<>(page.getContent().stream().map(view).toList(), page.getNextPageToken());
+    }
+}
@@ -0,0 +1,58 @@
+package guru.springframework.jdbc.writebehind;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.domain.Book;
+import guru.springframework.jdbc.domain.IsbnNormalizer;
+
+/**
+ * A write accepted by the {@link WriteBehindWriter} and not committed yet, also the line format of the journal.
+ * Writes with the same {@link #key()} coalesce, the last one wins.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = PendingWrite.BookWrite.class, name = "book"),
+        @JsonSubTypes.Type(value = PendingWrite.AuthorWrite.class, name = "author")
+})
+sealed interface PendingWrite {
+
+    @JsonIgnore
+    String key();
+
+    /**
+     * Book upsert by ISBN.
+     */
+    record BookWrite(String isbn, String title, String publisher, Long authorId) implements PendingWrite {
+
+        static BookWrite of(Book book) {
+            String isbn = IsbnNormalizer.normalize(book.getIsbn());
+            if (isbn == null || isbn.isEmpty()) {
+                throw new IllegalArgumentException("Write-behind book writes need an ISBN: " + book);
+            }
+            Author author = book.getAuthor();
+            return new BookWrite(isbn, book.getTitle(), book.getPublisher(), author != null ? author.getId() : null);
+        }
+
+        @Override
+        public String key() {
+            return "book:" + isbn;
+        }
+    }
+
+    /**
+     * Author upsert by name.
+     */
+    record AuthorWrite(String firstName, String lastName) implements PendingWrite {
+
+        static AuthorWrite of(Author author) {
+            return new AuthorWrite(author.getFirstName(), author.getLastName());
+        }
+
+        @Override
+        public String key() {
+            return "author:" + firstName + "\u0000" + lastName;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package guru.springframework.jdbc.writebehind;
+
+import guru.springframework.jdbc.dao.CatalogShards;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Enables the {@link WriteBehindWriter} with {@code sdjpa.write-behind.enabled=true}.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "sdjpa.write-behind.enabled", havingValue = "true")
+@EnableConfigurationProperties(WriteBehindProperties.class)
+public class WriteBehindConfiguration {
+
+    @Bean(initMethod = "start")
+    public WriteBehindWriter writeBehindWriter(EntityManagerFactory emf, PlatformTransactionManager transactionManager,
+                                               ObjectProvider<CatalogShards> catalogShards, MeterRegistry registry,
+                                               WriteBehindProperties properties) {
+        return new WriteBehindWriter(emf, transactionManager, catalogShards.getIfAvailable(CatalogShards::single),
+                registry, properties);
+    }
+}
@@ -0,0 +1,134 @@
+package guru.springframework.jdbc.writebehind;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Append-only JSON lines file of the writes accepted and not committed yet. Every append is forced to disk, once per
+ * group of writes, before they are acknowledged; after a flush the file is rewritten with the writes still pending.
+ * Also the format of the dead-letter journal, which is only appended to. Not thread safe, {@link WriteBehindWriter}
+ * never lets an append and a rewrite run at the same time.
+ */
+class WriteBehindJournal implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindJournal.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path path;
+    private FileChannel channel;
+
+    WriteBehindJournal(Path path) {
+        this.path = path;
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            this.channel = open(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes left by the previous run, in the order they were accepted.
+     */
+    List<PendingWrite> read() {
+        List<PendingWrite> writes = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    writes.add(objectMapper.readValue(line, PendingWrite.class));
+                } catch (JsonProcessingException e) {
+                    // la última línea queda a medias si el proceso murió escribiéndola, no llegó a confirmarse
+                    log.warn("Skipping unreadable write-behind journal line: {}", line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writes;
+    }
+
+    void append(PendingWrite write) {
+        append(List.of(write));
+    }
+
+    /**
+     * Appends the writes in order and forces the file once for all of them.
+     */
+    void append(List<PendingWrite> writes) {
+        try {
+            for (PendingWrite write : writes) {
+                ByteBuffer line = line(write);
+                while (line.hasRemaining()) {
+                    channel.write(line);
+                }
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replaces the content of the journal with {@code writes}, atomically.
+     */
+    void rewrite(Collection<PendingWrite> writes) {
+        Path next = path.resolveSibling(path.getFileName() + ".next");
+        try (FileChannel nextChannel = FileChannel.open(next, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (PendingWrite write : writes) {
+                ByteBuffer line = line(write);
+                while (line.hasRemaining()) {
+                    nextChannel.write(line);
+                }
+            }
+            nextChannel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            channel.close();
+            try {
+                Files.move(next, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                // si no se ha podido mover se sigue añadiendo al journal anterior, que aún tiene todo lo pendiente
+                channel = open(path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer line(PendingWrite write) throws JsonProcessingException {
+        return ByteBuffer.wrap((objectMapper.writeValueAsString(write) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,103 @@
+package guru.springframework.jdbc.writebehind;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * {@code sdjpa.write-behind.*} settings of the {@link WriteBehindWriter}.
+ */
+@ConfigurationProperties("sdjpa.write-behind")
+public class WriteBehindProperties {
+
+    private boolean enabled;
+
+    /**
+     * Maximum number of distinct pending writes, writers wait for a flush beyond it.
+     */
+    private int capacity = 10_000;
+
+    /**
+     * Writes committed per transaction, also the number of pending writes that triggers a flush.
+     */
+    private int batchSize = 500;
+
+    /**
+     * Longest time a write waits to be flushed when the batch does not fill up.
+     */
+    private Duration flushInterval = Duration.ofSeconds(1);
+
+    /**
+     * How long a writer waits for room in a full queue before the write is rejected.
+     */
+    private Duration offerTimeout = Duration.ofSeconds(5);
+
+    private Path journal = Path.of(System.getProperty("java.io.tmpdir"), "sdjpa-write-behind.jsonl");
+
+    /**
+     * Writes that failed on their own and were dropped from the queue, by default next to the journal with a
+     * {@code .dead} suffix.
+     */
+    private Path deadLetterJournal;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Duration flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public Duration getOfferTimeout() {
+        return offerTimeout;
+    }
+
+    public void setOfferTimeout(Duration offerTimeout) {
+        this.offerTimeout = offerTimeout;
+    }
+
+    public Path getJournal() {
+        return journal;
+    }
+
+    public void setJournal(Path journal) {
+        this.journal = journal;
+    }
+
+    public Path getDeadLetterJournal() {
+        return deadLetterJournal;
+    }
+
+    public void setDeadLetterJournal(Path deadLetterJournal) {
+        this.deadLetterJournal = deadLetterJournal;
+    }
+
+    Path deadLetterJournal() {
+        return deadLetterJournal != null ? deadLetterJournal : journal.resolveSibling(journal.getFileName() + ".dead");
+    }
+}
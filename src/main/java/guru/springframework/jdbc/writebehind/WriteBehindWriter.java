@@ -0,0 +1,484 @@
+package guru.springframework.jdbc.writebehind;
+
+import guru.springframework.jdbc.dao.CatalogShards;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.domain.Book;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind upserts for high-rate ingest: a write is acknowledged once it is in the journal, and a background
+ * thread commits the pending writes in batched transactions when {@code batch-size} of them are waiting or every
+ * {@code flush-interval}. Pending writes coalesce by ISBN or author name, the last one wins.
+ * <p>
+ * Appends to the journal are group committed: the first writer to arrive writes the lines of every writer waiting
+ * behind it and forces the file once for all of them, then they are all acknowledged.
+ * <p>
+ * When {@code capacity} writes are pending the writers wait up to {@code offer-timeout} for a flush to make room and
+ * then get a {@link RejectedExecutionException}. A batch that fails is split in halves until the writes that fail on
+ * their own are found; those are moved to the dead-letter journal ({@code dead-letter-journal}) and the rest is
+ * committed. A batch that fails because the database cannot be reached is put back instead, behind any newer write of
+ * the same key, and retried on the next trigger. Writes left in the journal by a crash are replayed on startup.
+ * <p>
+ * With sharding the books of each shard are written in a transaction routed to it ({@link CatalogShards#write}).
+ * Author writes are rejected: the shard of a new author follows from an id that is not generated yet.
+ * <p>
+ * Metrics: {@code writebehind.queue.depth} gauge, {@code writebehind.flush} latency timer tagged with the outcome,
+ * {@code writebehind.writes}, {@code writebehind.coalesced} and {@code writebehind.dead.letters} counters.
+ */
+public class WriteBehindWriter implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindWriter.class);
+
+    private final EntityManager em;
+    private final TransactionTemplate transactions;
+    private final CatalogShards shards;
+    private final WriteBehindJournal journal;
+    private final WriteBehindJournal deadLetters;
+    private final int capacity;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration offerTimeout;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final Condition groupSynced = lock.newCondition();
+    // aceptadas y esperando su turno en el journal, todavía no están en pending
+    private final List<JournalAppend> unjournaled = new ArrayList<>();
+    private boolean syncing;
+    // orden de llegada, una escritura posterior con la misma clave reemplaza el valor sin cambiar la posición
+    private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+    private final Thread flusher = new Thread(this::run, "write-behind-flusher");
+    private boolean running = true;
+    private boolean flushRequested;
+    private int inFlight;
+    private RuntimeException lastFailure;
+
+    private final Counter writes;
+    private final Counter coalesced;
+    private final Counter deadLettered;
+    private final MeterRegistry registry;
+
+    public WriteBehindWriter(EntityManagerFactory emf, PlatformTransactionManager transactionManager,
+                             CatalogShards shards, MeterRegistry registry, WriteBehindProperties properties) {
+        this.em = SharedEntityManagerCreator.createSharedEntityManager(emf);
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.shards = shards;
+        this.journal = new WriteBehindJournal(properties.getJournal());
+        this.deadLetters = new WriteBehindJournal(properties.deadLetterJournal());
+        this.capacity = properties.getCapacity();
+        this.batchSize = properties.getBatchSize();
+        this.flushInterval = properties.getFlushInterval();
+        this.offerTimeout = properties.getOfferTimeout();
+        this.registry = registry;
+        this.writes = registry.counter("writebehind.writes");
+        this.coalesced = registry.counter("writebehind.coalesced");
+        this.deadLettered = registry.counter("writebehind.dead.letters");
+        Gauge.builder("writebehind.queue.depth", this, WriteBehindWriter::depth).register(registry);
+    }
+
+    /**
+     * Replays the journal of the previous run and starts the flusher.
+     */
+    public void start() {
+        List<PendingWrite> replayed = journal.read();
+        replayed.forEach(write -> pending.put(write.key(), write));
+        // compacta el journal a las escrituras que quedan tras coalescer
+        journal.rewrite(pending.values());
+        if (!replayed.isEmpty()) {
+            log.info("Replaying {} write-behind writes from the journal", pending.size());
+        }
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Queues an upsert of the book by ISBN: title, publisher and author are replaced.
+     *
+     * @throws RejectedExecutionException if the queue stays full for {@code offer-timeout}
+     */
+    public void saveBook(Book book) {
+        accept(PendingWrite.BookWrite.of(book));
+    }
+
+    /**
+     * Queues an insert of the author unless one with the same name exists.
+     *
+     * @throws RejectedExecutionException if the queue stays full for {@code offer-timeout}
+     * @throws IllegalStateException with sharding
+     */
+    public void saveAuthor(Author author) {
+        checkUnsharded();
+        accept(PendingWrite.AuthorWrite.of(author));
+    }
+
+    /**
+     * Waits until every write accepted so far is committed.
+     *
+     * @throws IllegalStateException if a flush fails meanwhile because the database cannot be reached or the journal
+     *                               cannot be rewritten, the writes stay queued; or if the flusher has stopped
+     */
+    public void flush() throws InterruptedException {
+        lock.lock();
+        try {
+            lastFailure = null;
+            while (!pending.isEmpty() || inFlight > 0) {
+                if (!running || !flusher.isAlive()) {
+                    throw new IllegalStateException("Write-behind writer stopped");
+                }
+                flushRequested = true;
+                flushNeeded.signal();
+                // espera acotada, si el flusher muere sin avisar se detecta en la siguiente vuelta
+                flushed.await(flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+                // también cuando el lote se confirmó pero el journal no se pudo reescribir
+                if (lastFailure != null) {
+                    throw new IllegalStateException("Write-behind flush failed", lastFailure);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int depth() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void accept(PendingWrite write) {
+        JournalAppend append = new JournalAppend(write);
+        lock.lock();
+        try {
+            long nanos = offerTimeout.toNanos();
+            while (running && pending.size() + unjournaled.size() >= capacity && !pending.containsKey(write.key())) {
+                if (nanos <= 0) {
+                    throw new RejectedExecutionException("Write-behind queue full with " + capacity + " writes");
+                }
+                flushRequested = true;
+                flushNeeded.signal();
+                nanos = flushed.awaitNanos(nanos);
+            }
+            if (!running) {
+                throw new RejectedExecutionException("Write-behind writer stopped");
+            }
+            unjournaled.add(append);
+            // confirmada una vez en disco: o la escribe este hilo con su grupo o la escribe el que ya está forzando
+            while (!append.done) {
+                if (syncing) {
+                    groupSynced.awaitUninterruptibly();
+                } else {
+                    syncGroup();
+                }
+            }
+            if (append.failure != null) {
+                throw append.failure;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for room in the write-behind queue", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends every waiting write with a single force, outside the lock so that more writers can queue behind the
+     * group meanwhile. The writes enter the queue in journal order once they are on disk. Called holding the lock.
+     */
+    private void syncGroup() {
+        List<JournalAppend> group = new ArrayList<>(unjournaled);
+        unjournaled.clear();
+        syncing = true;
+        RuntimeException failure = null;
+        lock.unlock();
+        try {
+            journal.append(group.stream().map(JournalAppend::write).collect(Collectors.toList()));
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            lock.lock();
+        }
+        syncing = false;
+        for (JournalAppend append : group) {
+            if (failure == null) {
+                if (pending.put(append.write.key(), append.write) != null) {
+                    coalesced.increment();
+                }
+                writes.increment();
+            }
+            append.failure = failure;
+            append.done = true;
+        }
+        if (pending.size() >= batchSize) {
+            flushNeeded.signal();
+        }
+        groupSynced.signalAll();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                List<PendingWrite> batch;
+                lock.lock();
+                try {
+                    long nanos = flushInterval.toNanos();
+                    while (running && !flushRequested && pending.size() < batchSize && nanos > 0) {
+                        nanos = flushNeeded.awaitNanos(nanos);
+                    }
+                    if (!running && pending.isEmpty()) {
+                        return;
+                    }
+                    flushRequested = false;
+                    batch = drain();
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    lock.unlock();
+                }
+                boolean committed;
+                try {
+                    committed = batch.isEmpty() || flushBatch(batch);
+                } catch (RuntimeException e) {
+                    // p. ej. el journal no se puede reescribir: lo confirmado sigue en él y se vuelve a aplicar
+                    log.error("Write-behind flush of {} writes failed, retrying on the next trigger", batch.size(), e);
+                    committed = false;
+                }
+                if (!committed) {
+                    if (!running) {
+                        // la base de datos no responde al parar, lo pendiente sigue en el journal
+                        return;
+                    }
+                    try {
+                        Thread.sleep(flushInterval.toMillis());
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            // un flusher parado no deja esperando a flush() ni a los escritores
+            lock.lock();
+            try {
+                running = false;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private List<PendingWrite> drain() {
+        List<PendingWrite> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        Iterator<PendingWrite> iterator = pending.values().iterator();
+        while (iterator.hasNext() && batch.size() < batchSize) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        inFlight = batch.size();
+        return batch;
+    }
+
+    private boolean flushBatch(List<PendingWrite> batch) {
+        Timer.Sample sample = Timer.start(registry);
+        List<PendingWrite> retry = new ArrayList<>();
+        RuntimeException failure = commit(batch, retry);
+        if (failure != null) {
+            log.error("Write-behind flush of {} writes failed, retrying on the next trigger", retry.size(), failure);
+        }
+        sample.stop(registry.timer("writebehind.flush", "outcome", failure == null ? "success" : "error"));
+
+        lock.lock();
+        try {
+            if (failure != null) {
+                // vuelven por delante de las nuevas, salvo las que ya tienen una escritura posterior
+                Map<String, PendingWrite> requeued = new LinkedHashMap<>();
+                retry.forEach(write -> requeued.put(write.key(), write));
+                requeued.putAll(pending);
+                pending.clear();
+                pending.putAll(requeued);
+                lastFailure = failure;
+            }
+            // el fichero no se sustituye con un grupo a medio escribir en él
+            while (syncing) {
+                groupSynced.awaitUninterruptibly();
+            }
+            // fuera del journal lo confirmado y lo que ha ido al de dead letters
+            journal.rewrite(pending.values());
+        } catch (RuntimeException e) {
+            lastFailure = e;
+            throw e;
+        } finally {
+            inFlight = 0;
+            flushed.signalAll();
+            lock.unlock();
+        }
+        return failure == null;
+    }
+
+    /**
+     * Commits the writes in one transaction. When it fails they are committed in two halves, down to single writes: a
+     * write that fails on its own goes to the dead-letter journal. A failure to reach the database stops the split.
+     *
+     * @param retry the writes left to retry, when the database could not be reached
+     * @return the failure to reach the database, {@code null} if every write was committed or dead-lettered
+     */
+    private RuntimeException commit(List<PendingWrite> writes, List<PendingWrite> retry) {
+        try {
+            transactions.executeWithoutResult(status -> apply(status, writes));
+            return null;
+        } catch (RuntimeException e) {
+            if (isTransient(e)) {
+                retry.addAll(writes);
+                return e;
+            }
+            if (writes.size() == 1) {
+                log.error("Write-behind write cannot be committed, moved to the dead-letter journal: {}",
+                        writes.get(0), e);
+                deadLetters.append(writes.get(0));
+                deadLettered.increment();
+                return null;
+            }
+            int half = writes.size() / 2;
+            RuntimeException failure = commit(writes.subList(0, half), retry);
+            if (failure != null) {
+                retry.addAll(writes.subList(half, writes.size()));
+                return failure;
+            }
+            return commit(writes.subList(half, writes.size()), retry);
+        }
+    }
+
+    private static boolean isTransient(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CannotCreateTransactionException || cause instanceof DataAccessResourceFailureException
+                    || cause instanceof TransientDataAccessException || cause instanceof RecoverableDataAccessException
+                    || cause instanceof SQLTransientException || cause instanceof SQLRecoverableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void apply(TransactionStatus transaction, List<PendingWrite> batch) {
+        List<PendingWrite.BookWrite> bookWrites = new ArrayList<>();
+        for (PendingWrite write : batch) {
+            if (write instanceof PendingWrite.AuthorWrite author) {
+                applyAuthor(author);
+            } else if (write instanceof PendingWrite.BookWrite book) {
+                bookWrites.add(book);
+            }
+        }
+        shards.write(transaction, shards.byShard(bookWrites, PendingWrite.BookWrite::authorId), this::applyBooks);
+    }
+
+    private void applyBooks(List<PendingWrite.BookWrite> bookWrites) {
+        // una sola query para todos los libros existentes del lote
+        List<String> isbns = bookWrites.stream().map(PendingWrite.BookWrite::isbn).collect(Collectors.toList());
+        Map<String, Book> existing = em.createQuery("SELECT b FROM Book b WHERE b.isbn IN :isbns", Book.class)
+                .setParameter("isbns", isbns)
+                .getResultStream()
+                .collect(Collectors.toMap(Book::getIsbn, Function.identity()));
+        for (PendingWrite.BookWrite write : bookWrites) {
+            Book book = existing.get(write.isbn());
+            if (book == null) {
+                book = new Book();
+                book.setIsbn(write.isbn());
+                em.persist(book);
+            }
+            book.setTitle(write.title());
+            book.setPublisher(write.publisher());
+            book.setAuthor(write.authorId() != null ? em.getReference(Author.class, write.authorId()) : null);
+        }
+    }
+
+    private void applyAuthor(PendingWrite.AuthorWrite write) {
+        // las del journal de una ejecución sin sharding acaban en el de dead letters
+        checkUnsharded();
+        boolean exists = !em.createNamedQuery("Author.findByName", Author.class)
+                .setParameter("first_name", write.firstName())
+                .setParameter("last_name", write.lastName())
+                .setMaxResults(1)
+                .getResultList().isEmpty();
+        if (!exists) {
+            Author author = new Author();
+            author.setFirstName(write.firstName());
+            author.setLastName(write.lastName());
+            em.persist(author);
+        }
+    }
+
+    private void checkUnsharded() {
+        if (shards.count() > 1) {
+            throw new IllegalStateException("Write-behind author writes cannot be routed to a shard, " +
+                    "upsert the authors by name instead");
+        }
+    }
+
+    /**
+     * Flushes what is pending and stops the flusher. Writes that cannot be committed stay in the journal.
+     */
+    @Override
+    public void destroy() throws Exception {
+        lock.lock();
+        try {
+            running = false;
+            flushNeeded.signal();
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flusher.join(TimeUnit.SECONDS.toMillis(30));
+        journal.close();
+        deadLetters.close();
+    }
+
+    private static final class JournalAppend {
+
+        private final PendingWrite write;
+        private boolean done;
+        private RuntimeException failure;
+
+        private JournalAppend(PendingWrite write) {
+            this.write = write;
+        }
+
+        private PendingWrite write() {
+            return write;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+create table id_generator
+(
+    sequence_name varchar(255) not null primary key,
+    next_val      bigint
+) engine = InnoDB;
+
+insert into id_generator (sequence_name, next_val) select 'author', coalesce(max(id), 0) + 1 from author;
+
+insert into id_generator (sequence_name, next_val) select 'book', coalesce(max(id), 0) + 1 from book;
@@ -0,0 +1,3 @@
+create index author_last_name_id_idx on author (last_name, id);
+
+create index book_title_id_idx on book (title, id);
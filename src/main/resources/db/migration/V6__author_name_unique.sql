@@ -0,0 +1 @@
+create unique index author_name_uq on author (first_name, last_name);
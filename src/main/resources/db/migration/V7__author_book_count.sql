@@ -0,0 +1,3 @@
+alter table author add column book_count int not null default 0;
+
+update author set book_count = (select count(*) from book where book.author_id = author.id);
@@ -0,0 +1,8 @@
+delete from book where mod(author_id, ${shards}) <> ${shard}
+    and isbn in ('9781617294945', '9781617292545', '9781617297571', '9780321125217', '9780134494166');
+
+delete from author where mod(id, ${shards}) <> ${shard}
+    and ((first_name = 'Craig' and last_name = 'Walls') or (first_name = 'Eric' and last_name = 'Evans')
+        or (first_name = 'Robert' and last_name = 'Martin'));
+
+update id_generator set next_val = next_val + ${shard} * 1000000000000;
@@ -0,0 +1,119 @@
+package guru.springframework.jdbc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.domain.Book;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("local")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "sdjpa.search.index-directory=")
+class CatalogApiIntegrationTest {
+
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Autowired
+    BookDao bookDao;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    void testGetBookWithConditionalRevalidation() {
+        Book book = bookDao.findAll().get(0);
+
+        ResponseEntity<JsonNode> response = restTemplate.getForEntity("/api/books/{id}", JsonNode.class, book.getId());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().get("isbn").asText()).isEqualTo(book.getIsbn());
+        String etag = response.getHeaders().getETag();
+        assertThat(etag).isEqualTo("\"book-" + book.getId() + "-" + book.getVersion() + "\"");
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(etag);
+        ResponseEntity<JsonNode> revalidated = restTemplate.exchange("/api/books/isbn/{isbn}", HttpMethod.GET,
+                new HttpEntity<>(headers), JsonNode.class, book.getIsbn());
+
+        assertThat(revalidated.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(revalidated.getBody()).isNull();
+    }
+
+    @Test
+    void testMissingBookAndBadPageSize() {
+        assertThat(restTemplate.getForEntity("/api/books/{id}", String.class, Long.MAX_VALUE).getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(restTemplate.getForEntity("/api/books/isbn/none", String.class).getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(restTemplate.getForEntity("/api/books?pageSize=0", String.class).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(restTemplate.getForEntity("/api/books?pageToken=broken", String.class).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void testKeysetPagesWithEtag() {
+        List<Long> ids = new ArrayList<>();
+        String pageToken = null;
+        do {
+            ResponseEntity<JsonNode> page = restTemplate.getForEntity(
+                    "/api/books?pageSize=2" + (pageToken != null ? "&pageToken=" + pageToken : ""), JsonNode.class);
+            assertThat(page.getHeaders().getETag()).isNotNull();
+            page.getBody().get("content").forEach(book -> ids.add(book.get("id").asLong()));
+            pageToken = page.getBody().get("nextPageToken").isNull() ? null
+                    : page.getBody().get("nextPageToken").asText();
+        } while (pageToken != null);
+
+        assertThat(ids).isSorted().hasSize(bookDao.findAll().size());
+
+        ResponseEntity<String> first = restTemplate.getForEntity("/api/books?pageSize=2", String.class);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(first.getHeaders().getETag());
+        assertThat(restTemplate.exchange("/api/books?pageSize=2", HttpMethod.GET, new HttpEntity<>(headers),
+                String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    }
+
+    @Test
+    void testStreamBooksAsNdjson() throws Exception {
+        ResponseEntity<String> response = restTemplate.getForEntity("/api/books/stream?fetchSize=2", String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getContentType().isCompatibleWith(MediaType.APPLICATION_NDJSON)).isTrue();
+        assertThat(response.getHeaders().getETag()).isNull();
+        String[] lines = response.getBody().split("\n");
+        assertThat(lines).hasSize(bookDao.findAll().size());
+        assertThat(objectMapper.readTree(lines[0]).has("authorLastName")).isTrue();
+    }
+
+    @Test
+    void testAuthorsAndSearch() {
+        ResponseEntity<JsonNode> authors = restTemplate.getForEntity("/api/authors?lastName=Walls", JsonNode.class);
+        JsonNode walls = authors.getBody().get("content").get(0);
+        assertThat(walls.get("bookCount").asInt()).isPositive();
+
+        ResponseEntity<JsonNode> author = restTemplate.getForEntity("/api/authors/{id}", JsonNode.class,
+                walls.get("id").asLong());
+        assertThat(author.getHeaders().getETag()).startsWith("\"author-");
+
+        ResponseEntity<JsonNode> hits = restTemplate.getForEntity("/api/books/search?q=spring", JsonNode.class);
+        assertThat(hits.getBody().get("content").size()).isPositive();
+        assertThat(restTemplate.getForEntity("/api/authors/stream", String.class).getBody().split("\n"))
+                .isNotEmpty();
+    }
+}
@@ -0,0 +1,147 @@
+package guru.springframework.jdbc;
+
+import guru.springframework.jdbc.dao.AuthorBookCountListener;
+import guru.springframework.jdbc.dao.AuthorDao;
+import guru.springframework.jdbc.dao.AuthorDaoImpl;
+import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.dao.BookDaoImpl;
+import guru.springframework.jdbc.dao.NegativeLookupCache;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.transfer.CatalogExporter;
+import guru.springframework.jdbc.transfer.CatalogImporter;
+import guru.springframework.jdbc.transfer.TransferProgress;
+import net.bytebuddy.utility.RandomString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@ActiveProfiles("local")
+@DataJpaTest(properties = "sdjpa.transfer.batch-size=2")
+@Import({AuthorDaoImpl.class, BookDaoImpl.class, AuthorBookCountListener.class, NegativeLookupCache.class,
+        CatalogImporter.class, CatalogExporter.class})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CatalogTransferIntegrationTest {
+
+    @TempDir
+    Path files;
+
+    @Autowired
+    CatalogImporter importer;
+
+    @Autowired
+    CatalogExporter exporter;
+
+    @Autowired
+    BookDao bookDao;
+
+    @Autowired
+    AuthorDao authorDao;
+
+    @Test
+    void testImportCsvAndExportJsonLines() throws Exception {
+        String key = RandomString.make().toUpperCase(Locale.ROOT);
+        Author existing = authorDao.saveNewAuthor(author("Existing", key));
+        Path csv = files.resolve("catalog.csv");
+        // columnas en otro orden, un título entre comillas con coma y salto de línea, un libro sin autor
+        Files.writeString(csv, String.join("\n",
+                "title,isbn,publisher,authorFirstName,authorLastName",
+                "Plain," + key + "1,Transfer " + key + ",New," + key,
+                "\"Quoted, with\nline break\"," + key + "2,Transfer " + key + ",New," + key,
+                "",
+                "Anonymous," + key + "3,Transfer " + key + ",,",
+                "Existing author," + key + "4,Transfer " + key + ",Existing," + key,
+                ""));
+
+        List<TransferProgress> progress = new ArrayList<>();
+        TransferProgress imported = importer.importFile(csv, progress::add);
+
+        assertThat(imported.rows()).isEqualTo(4);
+        assertThat(progress).extracting(TransferProgress::rows).containsExactly(2L, 4L);
+        assertThat(Files.exists(files.resolve("catalog.csv.checkpoint"))).isFalse();
+        Author created = authorDao.findAuthorByName("New", key);
+        assertThat(bookDao.findByISBN(key + "1").getAuthor().getId()).isEqualTo(created.getId());
+        assertThat(bookDao.findByISBN(key + "2").getTitle()).isEqualTo("Quoted, with\nline break");
+        assertThat(bookDao.findByISBN(key + "3").getAuthor()).isNull();
+        assertThat(bookDao.findByISBN(key + "4").getAuthor().getId()).isEqualTo(existing.getId());
+
+        Path jsonl = files.resolve("catalog.jsonl");
+        TransferProgress exported = exporter.export(jsonl);
+
+        List<String> lines = Files.readAllLines(jsonl).stream()
+                .filter(line -> line.contains("Transfer " + key))
+                .collect(Collectors.toList());
+        assertThat(exported.rows()).isGreaterThanOrEqualTo(4);
+        assertThat(lines).hasSize(4);
+        assertThat(lines.get(1)).isEqualTo("{\"isbn\":\"" + key + "2\",\"title\":\"Quoted, with\\nline break\"," +
+                "\"publisher\":\"Transfer " + key + "\",\"authorFirstName\":\"New\"," +
+                "\"authorLastName\":\"" + key + "\"}");
+        assertThat(Files.exists(files.resolve("catalog.jsonl.part"))).isFalse();
+
+        // reimportar lo exportado no cambia nada
+        bookDao.updatePublisher("Transfer " + key, "Renamed " + key);
+        Path ours = files.resolve("ours.ndjson");
+        Files.write(ours, lines);
+        assertThat(importer.importFile(ours).rows()).isEqualTo(4);
+        assertThat(bookDao.findByISBN(key + "2").getPublisher()).isEqualTo("Transfer " + key);
+        assertThat(authorDao.findAuthorByName("New", key).getId()).isEqualTo(created.getId());
+
+        assertThat(bookDao.deleteBooksByPublisher("Transfer " + key)).isEqualTo(4);
+        authorDao.deleteAuthorsByIds(List.of(existing.getId(), created.getId()));
+    }
+
+    @Test
+    void testImportResumesFromCheckpoint() throws Exception {
+        String key = RandomString.make().toUpperCase(Locale.ROOT);
+        List<String> lines = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            lines.add("{\"isbn\":\"" + key + i + "\",\"title\":\"Resumed " + i + "\",\"publisher\":\"Resume " + key +
+                    "\",\"authorFirstName\":\"Resume\",\"authorLastName\":\"" + key + "\"}");
+        }
+        lines.set(3, "{\"title\":\"No ISBN\"}");
+        Path jsonl = files.resolve("resume.jsonl");
+        Files.write(jsonl, lines);
+
+        // el primer lote se confirma, el segundo tiene el registro sin isbn
+        assertThatThrownBy(() -> importer.importFile(jsonl))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Record 4");
+        assertThat(Files.readString(files.resolve("resume.jsonl.checkpoint"))).isEqualTo("2");
+        assertThat(bookDao.findByISBN(key + "2").getTitle()).isEqualTo("Resumed 2");
+
+        lines.set(3, lines.get(4).replace(key + "5", key + "4").replace("Resumed 5", "Resumed 4"));
+        Files.write(jsonl, lines);
+        assertThat(importer.importFile(jsonl).rows()).isEqualTo(3);
+
+        assertThat(Files.exists(files.resolve("resume.jsonl.checkpoint"))).isFalse();
+        assertThat(bookDao.findByISBN(key + "4").getTitle()).isEqualTo("Resumed 4");
+        Author author = authorDao.findAuthorByName("Resume", key);
+        assertThat(authorDao.getById(author.getId()).getBookCount()).isEqualTo(5);
+
+        assertThat(bookDao.deleteBooksByPublisher("Resume " + key)).isEqualTo(5);
+        authorDao.deleteAuthorById(author.getId());
+    }
+
+    private static Author author(String firstName, String lastName) {
+        Author author = new Author();
+        author.setFirstName(firstName);
+        author.setLastName(lastName);
+        return author;
+    }
+}
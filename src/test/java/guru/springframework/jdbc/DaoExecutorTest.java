@@ -0,0 +1,88 @@
+package guru.springframework.jdbc;
+
+import guru.springframework.jdbc.async.DaoExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+class DaoExecutorTest {
+
+    private final DaoExecutor executor = new DaoExecutor(2, 100, false);
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        executor.destroy();
+    }
+
+    @Test
+    void testConcurrencyLimited() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<Integer>> calls = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            calls.add(executor.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(20);
+                return running.decrementAndGet();
+            }, null));
+        }
+
+        CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new)).join();
+        assertThat(maxRunning.get()).isEqualTo(2);
+    }
+
+    @Test
+    void testTimeoutSkipsQueuedCalls() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> await(release), null);
+        executor.submit(() -> await(release), null);
+        AtomicBoolean called = new AtomicBoolean();
+
+        CompletableFuture<Boolean> queued = executor.submit(() -> called.getAndSet(true), Duration.ofMillis(50));
+
+        assertThatThrownBy(queued::get).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(TimeoutException.class);
+        release.countDown();
+        executor.destroy();
+        assertThat(called.get()).isFalse();
+    }
+
+    @Test
+    void testFailureCompletesExceptionally() {
+        CompletableFuture<Object> call = executor.submit(() -> {
+            throw new IllegalStateException("boom");
+        }, null);
+
+        assertThatThrownBy(call::join).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
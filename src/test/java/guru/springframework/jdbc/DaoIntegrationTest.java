@@ -1,28 +1,79 @@
 package guru.springframework.jdbc;
 
+import guru.springframework.jdbc.async.AsyncAuthorDao;
+import guru.springframework.jdbc.async.AsyncAuthorDaoImpl;
+import guru.springframework.jdbc.async.AsyncBookDao;
+import guru.springframework.jdbc.async.AsyncBookDaoImpl;
+import guru.springframework.jdbc.async.AsyncDaoConfiguration;
+import guru.springframework.jdbc.dao.AuthorBookCountListener;
 import guru.springframework.jdbc.dao.AuthorDao;
+import guru.springframework.jdbc.dao.AuthorDaoImpl;
+import guru.springframework.jdbc.dao.AuthorFetchPlan;
 import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.dao.BookDaoImpl;
+import guru.springframework.jdbc.dao.BookFetchPlan;
+import guru.springframework.jdbc.dao.KeysetPage;
+import guru.springframework.jdbc.dao.LookupResult;
+import guru.springframework.jdbc.dao.NegativeLookupCache;
+import guru.springframework.jdbc.dao.OptimisticConflictException;
+import guru.springframework.jdbc.dao.UpsertOutcome;
 import guru.springframework.jdbc.domain.Author;
 import guru.springframework.jdbc.domain.Book;
+import guru.springframework.jdbc.dto.AuthorSummary;
+import guru.springframework.jdbc.dto.BookSummary;
+import guru.springframework.jdbc.inspection.OpenResources;
+import guru.springframework.jdbc.inspection.SqlInspectionConfiguration;
+import guru.springframework.jdbc.search.AuthorSearchHit;
+import guru.springframework.jdbc.search.BookSearchHit;
+import guru.springframework.jdbc.search.CatalogIndexSynchronizer;
+import guru.springframework.jdbc.search.CatalogSearch;
+import guru.springframework.jdbc.search.CatalogSearchImpl;
+import guru.springframework.jdbc.search.SearchPage;
 import net.bytebuddy.utility.RandomString;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
-import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static guru.springframework.jdbc.SqlStatementBudget.assertMaxStatements;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 
 /**
  * Created by jt on 8/28/21.
  */
 @ActiveProfiles("local")
-@DataJpaTest
-@ComponentScan(basePackages = {"guru.springframework.jdbc.dao"})
+@DataJpaTest(properties = "sdjpa.search.index-directory=")
+@Import({AuthorDaoImpl.class, BookDaoImpl.class, AuthorBookCountListener.class, NegativeLookupCache.class,
+        SqlInspectionConfiguration.class,
+        CatalogSearchImpl.class,
+        CatalogIndexSynchronizer.class, AsyncDaoConfiguration.class, AsyncAuthorDaoImpl.class, AsyncBookDaoImpl.class})
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestExecutionListeners(listeners = ResourceLeakTestExecutionListener.class,
+        mergeMode = TestExecutionListeners.MergeMode.MERGE_WITH_DEFAULTS)
+// cada llamada al DAO en su propia transacción, como en la aplicación
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
 class DaoIntegrationTest {
     @Autowired
     AuthorDao authorDao;
@@ -30,6 +81,21 @@ class DaoIntegrationTest {
     @Autowired
     BookDao bookDao;
 
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    CatalogSearch catalogSearch;
+
+    @Autowired
+    AsyncAuthorDao asyncAuthorDao;
+
+    @Autowired
+    AsyncBookDao asyncBookDao;
+
     @Test
     void testFindAllAuthors() {
         List<Author> authors = authorDao.findAllNamed();
@@ -244,4 +310,767 @@ class DaoIntegrationTest {
         assertThat(authors.size()).isPositive();
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSaveAllBooks() {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            books.add(new Book("batch book " + i, "batch" + RandomString.make(), "Self"));
+        }
+
+        List<Book> saved = bookDao.saveAll(books);
+
+        assertThat(saved.size()).isEqualTo(120);
+        saved.forEach(book -> assertThat(book.getId()).isNotNull());
+        assertThat(bookDao.findByISBN(saved.get(119).getIsbn())).isNotNull();
+
+        saved.forEach(book -> bookDao.deleteBookById(book.getId()));
+    }
+
+    @Test
+    void testSaveAllKeepsTheCallerEntitiesManaged() {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            books.add(new Book("managed book " + i, "managed" + RandomString.make(), "Self"));
+        }
+
+        List<Long> ids = new TransactionTemplate(transactionManager).execute(status -> {
+            Author author = authorDao.findAuthorByName("Craig", "Walls");
+            List<Book> saved = bookDao.saveAll(books);
+            // el autor que el llamador ya tenía sigue en el contexto, sus cambios no se pierden
+            assertThat(authorDao.findAuthorByName("Craig", "Walls")).isSameAs(author);
+            return saved.stream().map(Book::getId).collect(Collectors.toList());
+        });
+
+        assertThat(bookDao.deleteBooksByIds(ids)).isEqualTo(60);
+    }
+
+    @Test
+    void testFailedSaveDoesNotRollBackTheCallerTransaction() {
+        Book existing = bookDao.saveNewBook(new Book("existing", "save" + RandomString.make(), "Self"));
+
+        Book saved = new TransactionTemplate(transactionManager).execute(status -> {
+            // isbn duplicado: book_isbn_uq
+            assertThat(bookDao.save(new Book("duplicate", existing.getIsbn(), "Self"))).isEmpty();
+            return bookDao.saveNewBook(new Book("after the failed save", "save" + RandomString.make(), "Self"));
+        });
+
+        assertThat(bookDao.getById(saved.getId())).isNotNull();
+        bookDao.deleteBookById(saved.getId());
+        bookDao.deleteBookById(existing.getId());
+    }
+
+    @Test
+    void testSaveAllAuthors() {
+        List<Author> authors = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            Author author = new Author();
+            author.setFirstName("batch" + i);
+            author.setLastName(RandomString.make());
+            author.addBook(new Book("batch author book " + i, "batch" + RandomString.make(), "Self"));
+            authors.add(author);
+        }
+
+        List<Author> saved = authorDao.saveAll(authors);
+
+        assertThat(saved.size()).isEqualTo(60);
+        saved.forEach(author -> {
+            assertThat(author.getId()).isNotNull();
+            assertThat(author.getBooks().get(0).getId()).isNotNull();
+        });
+
+        saved.forEach(author -> authorDao.deleteAuthorById(author.getId()));
+        assertThat(authorDao.getById(saved.get(0).getId())).isNull();
+    }
+
+    @Test
+    void testStreamAllBooks() {
+        List<Long> ids;
+        try (Stream<Book> books = bookDao.streamAll(2)) {
+            ids = books.map(Book::getId).collect(Collectors.toList());
+        }
+
+        assertThat(ids.size()).isEqualTo(bookDao.findAll().size());
+    }
+
+    @Test
+    void testStreamAllAuthors() {
+        long count;
+        try (Stream<Author> authors = authorDao.streamAll(2)) {
+            count = authors.count();
+        }
+
+        assertThat(count).isEqualTo(authorDao.findAll().size());
+    }
+
+    @Test
+    void testFindAllBooksByPages() {
+        List<Long> ids = new ArrayList<>();
+        KeysetPage<Book> page = bookDao.findAllPage(2, null);
+        page.getContent().forEach(book -> ids.add(book.getId()));
+        while (page.hasNext()) {
+            page = bookDao.findAllPage(2, page.getNextPageToken());
+            page.getContent().forEach(book -> ids.add(book.getId()));
+        }
+
+        assertThat(ids.size()).isEqualTo(bookDao.findAll().size());
+        assertThat(ids.stream().distinct().count()).isEqualTo(ids.size());
+    }
+
+    @Test
+    void testFindAllBooksOrderByTitle() {
+        KeysetPage<Book> first = bookDao.findAllOrderByTitle(2, null);
+        KeysetPage<Book> second = bookDao.findAllOrderByTitle(2, first.getNextPageToken());
+
+        assertThat(first.getContent().size()).isEqualTo(2);
+        assertThat(first.hasNext()).isTrue();
+        assertThat(second.getContent().get(0).getTitle()).isGreaterThanOrEqualTo(first.getContent().get(1).getTitle());
+    }
+
+    @Test
+    void testFindAllBooksOrderByTitleListsUntitledBooksFirst() {
+        Book first = new Book();
+        first.setIsbn("1234" + RandomString.make());
+        bookDao.saveNewBook(first);
+        Book second = new Book();
+        second.setIsbn("1234" + RandomString.make());
+        bookDao.saveNewBook(second);
+
+        KeysetPage<Book> page = bookDao.findAllOrderByTitle(1, null);
+        KeysetPage<Book> next = bookDao.findAllOrderByTitle(1, page.getNextPageToken());
+        KeysetPage<Book> titled = bookDao.findAllOrderByTitle(1, next.getNextPageToken());
+
+        assertThat(page.getContent().get(0).getId()).isEqualTo(first.getId());
+        assertThat(next.getContent().get(0).getId()).isEqualTo(second.getId());
+        assertThat(titled.getContent().get(0).getTitle()).isNotNull();
+    }
+
+    @Test
+    void testKeysetPageSizeMustBePositive() {
+        assertThatThrownBy(() -> bookDao.findAllPage(0, null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> bookDao.findAllOrderByTitle(-1, null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> bookDao.findSummaryPage(0, null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> authorDao.listAuthorByLastNameLike("Wall", 0, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testListAuthorByLastNameLikeByPages() {
+        List<Author> authors = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Author author = new Author();
+            author.setFirstName("page" + i);
+            author.setLastName("Keyset");
+            authors.add(author);
+        }
+        authorDao.saveAll(authors);
+
+        KeysetPage<Author> first = authorDao.listAuthorByLastNameLike("Keyset", 3, null);
+        KeysetPage<Author> second = authorDao.listAuthorByLastNameLike("Keyset", 3, first.getNextPageToken());
+
+        assertThat(first.getContent().size()).isEqualTo(3);
+        assertThat(second.getContent().size()).isEqualTo(2);
+        assertThat(second.hasNext()).isFalse();
+        assertThat(second.getContent().get(0).getId()).isGreaterThan(first.getContent().get(2).getId());
+
+        authors.forEach(author -> authorDao.deleteAuthorById(author.getId()));
+    }
+
+    @Test
+    void testFindAllAuthorsFetchPlans() {
+        Statistics statistics = statistics();
+
+        List<Author> authors = authorDao.findAll(AuthorFetchPlan.AUTHOR_ONLY);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(Hibernate.isInitialized(authors.get(0).getBooks())).isFalse();
+
+        statistics.clear();
+        List<Author> withBooks = authorDao.findAll(AuthorFetchPlan.WITH_BOOKS);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(withBooks.size()).isEqualTo(authors.size());
+        withBooks.forEach(author -> assertThat(Hibernate.isInitialized(author.getBooks())).isTrue());
+    }
+
+    @Test
+    void testFindAuthorByNameFetchPlans() {
+        Statistics statistics = statistics();
+
+        Author author = authorDao.findAuthorByName("Craig", "Walls", AuthorFetchPlan.WITH_BOOKS);
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(author.getBooks().size()).isEqualTo(3);
+    }
+
+    @Test
+    void testFindAllBooksFetchPlans() {
+        Statistics statistics = statistics();
+
+        List<Book> books = bookDao.findAll(BookFetchPlan.BOOK_ONLY);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        statistics.clear();
+        List<Book> withAuthor = bookDao.findAll(BookFetchPlan.WITH_AUTHOR);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(withAuthor.size()).isEqualTo(books.size());
+        withAuthor.stream()
+                .filter(book -> book.getAuthor() != null)
+                .forEach(book -> assertThat(Hibernate.isInitialized(book.getAuthor())).isTrue());
+    }
+
+    @Test
+    void testGetBookFetchPlans() {
+        Statistics statistics = statistics();
+
+        Book book = bookDao.getById(3L, BookFetchPlan.WITH_AUTHOR);
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(book.getAuthor().getLastName()).isEqualTo("Walls");
+    }
+
+    @Test
+    void testGetAuthorFromSecondLevelCache() {
+        authorDao.getById(1L);
+        Statistics statistics = statistics();
+
+        Author author = authorDao.getById(1L);
+
+        assertThat(author).isNotNull();
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getCacheRegionStatistics("author").getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testFindAllNamedFromQueryCache() {
+        bookDao.findAllNamed();
+        Statistics statistics = statistics();
+
+        List<Book> books = bookDao.findAllNamed();
+
+        assertThat(books.size()).isPositive();
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getQueryCacheHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testUpdateBookEvictsCachedBook() {
+        Book book = bookDao.saveNewBook(new Book("cached book", "cache" + RandomString.make(), "Self"));
+        bookDao.getById(book.getId());
+
+        book.setTitle("updated cached book");
+        bookDao.updateBook(book);
+
+        assertThat(bookDao.getById(book.getId()).getTitle()).isEqualTo("updated cached book");
+        assertThat(bookDao.findBookByTitle("updated cached book")).isNotNull();
+
+        bookDao.deleteBookById(book.getId());
+        assertThat(bookDao.getById(book.getId())).isNull();
+    }
+
+    @Test
+    void testFindBookByNormalizedISBN() {
+        Book book = bookDao.findByISBN("978-1617294945");
+        Book byIsbn10 = bookDao.findByISBN("1-61729-494-2");
+
+        assertThat(book.getTitle()).isEqualTo("Spring in Action, 5th Edition");
+        assertThat(byIsbn10.getId()).isEqualTo(book.getId());
+    }
+
+    @Test
+    void testFindBookByISBNFromNaturalIdCache() {
+        bookDao.findByISBN("9780134494166");
+        Statistics statistics = statistics();
+
+        Book book = bookDao.findByISBN("978-0134494166");
+
+        assertThat(book.getTitle()).isEqualTo("Clean Code");
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getNaturalIdCacheHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testFindBookByISBNWithAuthor() {
+        Book book = bookDao.findByISBN("978-0321125217", BookFetchPlan.WITH_AUTHOR);
+
+        assertThat(book.getAuthor().getLastName()).isEqualTo("Evans");
+    }
+
+    @Test
+    void testFetchPlansStayWithinStatementBudget() {
+        List<Author> authors = assertMaxStatements(1, () -> authorDao.findAll(AuthorFetchPlan.WITH_BOOKS));
+        assertMaxStatements(0, () -> authors.forEach(author -> author.getBooks().size()));
+
+        List<Book> books = assertMaxStatements(1, () -> bookDao.findAll(BookFetchPlan.WITH_AUTHOR));
+        assertThat(books.size()).isPositive();
+    }
+
+    @Test
+    void testSaveAllStaysWithinStatementBudget() {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            books.add(new Book("budget book " + i, "budget" + RandomString.make(), "Self"));
+        }
+
+        // un lote de inserts, como mucho una lectura del generador de ids
+        assertMaxStatements(3, () -> bookDao.saveAll(books));
+
+        books.forEach(book -> bookDao.deleteBookById(book.getId()));
+    }
+
+    @Test
+    void testUpdateAndDeleteBooksByPublisher() {
+        String publisher = "bulk" + RandomString.make();
+        Book cached = bookDao.saveNewBook(new Book("bulk book 1", "bulk" + RandomString.make(), publisher));
+        bookDao.saveNewBook(new Book("bulk book 2", "bulk" + RandomString.make(), publisher));
+        bookDao.getById(cached.getId());
+
+        String renamed = publisher + " renamed";
+        // ids afectados, el update y la recarga de esos libros para el índice de búsqueda
+        assertThat(assertMaxStatements(3, () -> bookDao.updatePublisher(publisher, renamed))).isEqualTo(2);
+        assertThat(bookDao.getById(cached.getId()).getPublisher()).isEqualTo(renamed);
+
+        assertThat(bookDao.deleteBooksByPublisher(renamed)).isEqualTo(2);
+        assertThat(bookDao.getById(cached.getId())).isNull();
+    }
+
+    @Test
+    void testDeleteBooksByIds() {
+        List<Book> books = bookDao.saveAll(List.of(
+                new Book("bulk delete 1", "bulk" + RandomString.make(), "Self"),
+                new Book("bulk delete 2", "bulk" + RandomString.make(), "Self")));
+        List<Long> ids = books.stream().map(Book::getId).collect(Collectors.toList());
+        bookDao.getById(ids.get(0));
+
+        assertThat(bookDao.deleteBooksByIds(ids)).isEqualTo(2);
+        assertThat(bookDao.getById(ids.get(0))).isNull();
+        assertThat(bookDao.deleteBooksByIds(List.of())).isZero();
+    }
+
+    @Test
+    void testReassignBooksAndDeleteAuthorsByIds() {
+        Author from = new Author();
+        from.setFirstName("bulk");
+        from.setLastName("from" + RandomString.make());
+        Book book = new Book("bulk reassigned", "bulk" + RandomString.make(), "Self");
+        book.setAuthor(from);
+        from.setBooks(new ArrayList<>(List.of(book)));
+        authorDao.saveNewAuthor(from);
+
+        Author to = new Author();
+        to.setFirstName("bulk");
+        to.setLastName("to" + RandomString.make());
+        authorDao.saveNewAuthor(to);
+
+        assertThat(bookDao.reassignBooks(from.getId(), to.getId())).isEqualTo(1);
+        assertThat(authorDao.getById(to.getId(), AuthorFetchPlan.WITH_BOOKS).getBooks().size()).isEqualTo(1);
+        assertThat(authorDao.getById(from.getId(), AuthorFetchPlan.WITH_BOOKS).getBooks().size()).isZero();
+
+        assertThat(authorDao.deleteAuthorsByIds(List.of(from.getId(), to.getId()))).isEqualTo(2);
+        assertThat(authorDao.getById(to.getId())).isNull();
+        assertThat(bookDao.getById(book.getId())).isNull();
+    }
+
+    @Test
+    void testFindAllBookSummaries() {
+        Statistics statistics = statistics();
+
+        List<BookSummary> summaries = assertMaxStatements(1, () -> bookDao.findAllSummaries());
+
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(summaries.size()).isEqualTo(bookDao.findAll().size());
+        assertThat(summaries.stream().anyMatch(summary -> "Clean Code".equals(summary.title()))).isTrue();
+    }
+
+    @Test
+    void testFindBookSummaryPages() {
+        KeysetPage<BookSummary> first = bookDao.findSummaryPage(2, null);
+        KeysetPage<BookSummary> second = bookDao.findSummaryPage(2, first.getNextPageToken());
+
+        assertThat(first.getContent().size()).isEqualTo(2);
+        assertThat(second.getContent().get(0).id()).isGreaterThan(first.getContent().get(1).id());
+    }
+
+    @Test
+    void testAuthorSummariesCountBooks() {
+        Statistics statistics = statistics();
+
+        List<AuthorSummary> summaries = assertMaxStatements(1,
+                () -> authorDao.listAuthorSummariesByLastNameLike("Walls"));
+
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(summaries.get(0).firstName()).isEqualTo("Craig");
+        assertThat(summaries.get(0).bookCount()).isEqualTo(3);
+        assertThat(authorDao.findAllSummaries().size()).isEqualTo(authorDao.findAll().size());
+    }
+
+    @Test
+    void testStreamHoldsEntityManagerUntilClosed() {
+        int sessions = OpenResources.openSessions();
+        int connections = OpenResources.openConnections();
+
+        try (Stream<Book> books = bookDao.streamAll(10)) {
+            assertThat(books.findFirst()).isPresent();
+            assertThat(OpenResources.openSessions()).isEqualTo(sessions + 1);
+            assertThat(OpenResources.openConnections()).isEqualTo(connections + 1);
+        }
+
+        assertThat(OpenResources.openSessions()).isEqualTo(sessions);
+        assertThat(OpenResources.openConnections()).isEqualTo(connections);
+    }
+
+    @Test
+    void testSearchBooksWithTypos() {
+        SearchPage<BookSearchHit> hits = catalogSearch.searchBooks("sprng acton", 0, 10);
+
+        assertThat(hits.content().get(0).title()).isEqualTo("Spring in Action, 5th Edition");
+        assertThat(hits.content().get(0).authorName()).isEqualTo("Craig Walls");
+    }
+
+    @Test
+    void testSearchBooksByAuthorName() {
+        SearchPage<BookSearchHit> hits = catalogSearch.searchBooks("walls", 0, 2);
+
+        assertThat(hits.content().size()).isEqualTo(2);
+        assertThat(hits.hasNext()).isTrue();
+        assertThat(catalogSearch.searchBooks("walls", 1, 2).content().size()).isPositive();
+    }
+
+    @Test
+    void testSearchAuthors() {
+        SearchPage<AuthorSearchHit> hits = catalogSearch.searchAuthors("Wals", 0, 10);
+
+        assertThat(hits.content().get(0).firstName()).isEqualTo("Craig");
+    }
+
+    @Test
+    void testSearchIndexFollowsDaoWrites() {
+        Book book = bookDao.saveNewBook(new Book("Zanzibar chronicles", "search" + RandomString.make(), "Self"));
+        assertThat(titles(catalogSearch.searchBooks("zanzibar", 0, 10))).asList().contains("Zanzibar chronicles");
+
+        book.setTitle("Timbuktu chronicles");
+        bookDao.updateBook(book);
+        assertThat(titles(catalogSearch.searchBooks("zanzibar", 0, 10))).asList().doesNotContain("Zanzibar chronicles");
+        assertThat(titles(catalogSearch.searchBooks("timbuktu", 0, 10))).asList().contains("Timbuktu chronicles");
+
+        bookDao.deleteBookById(book.getId());
+        assertThat(catalogSearch.searchBooks("timbuktu", 0, 10).content().size()).isZero();
+    }
+
+    @Test
+    void testSearchIndexFollowsBulkUpdates() {
+        Book book = bookDao.saveNewBook(new Book("Bulk searched", "search" + RandomString.make(), "Ouagadougou"));
+
+        bookDao.updatePublisher("Ouagadougou", "Nouakchott");
+        assertThat(titles(catalogSearch.searchBooks("nouakchott", 0, 10))).asList().contains("Bulk searched");
+
+        bookDao.deleteBooksByIds(List.of(book.getId()));
+        assertThat(catalogSearch.searchBooks("nouakchott", 0, 10).content().size()).isZero();
+    }
+
+    @Test
+    void testAsyncFanOut() {
+        CompletableFuture<Book> book = asyncBookDao.findBookByTitle("Clean Code");
+        CompletableFuture<Author> author = asyncAuthorDao.findAuthorByName("Craig", "Walls");
+        CompletableFuture<Author> withBooks = author.thenCompose(found ->
+                asyncAuthorDao.getById(found.getId(), AuthorFetchPlan.WITH_BOOKS));
+
+        CompletableFuture.allOf(book, withBooks).join();
+        assertThat(book.join().getTitle()).isEqualTo("Clean Code");
+        assertThat(withBooks.join().getBooks().size()).isGreaterThanOrEqualTo(3);
+    }
+
+    @Test
+    void testAsyncWrites() {
+        Book book = asyncBookDao.saveNewBook(new Book("async book", "async" + RandomString.make(), "Self")).join();
+        asyncBookDao.withTimeout(Duration.ofSeconds(5)).deleteBookById(book.getId()).join();
+
+        assertThat(bookDao.getById(book.getId())).isNull();
+    }
+
+    @Test
+    void testUpdateWithStaleVersionConflicts() {
+        Book saved = bookDao.saveNewBook(new Book("versioned book", "version" + RandomString.make(), "Self"));
+        Book first = bookDao.getById(saved.getId());
+        Book second = bookDao.getById(saved.getId());
+
+        first.setTitle("first editor");
+        assertThat(bookDao.updateBook(first).getVersion()).isEqualTo(first.getVersion() + 1);
+        second.setTitle("second editor");
+        assertThatThrownBy(() -> bookDao.updateBook(second)).isInstanceOf(OptimisticConflictException.class);
+        assertThat(bookDao.getById(saved.getId()).getTitle()).isEqualTo("first editor");
+
+        bookDao.deleteBookById(saved.getId());
+        assertThatThrownBy(() -> bookDao.updateBook(first)).isInstanceOf(OptimisticConflictException.class);
+
+        Author author = new Author();
+        author.setFirstName("Versioned");
+        author.setLastName("Author");
+        Author stale = authorDao.saveNewAuthor(author);
+        authorDao.updateAuthor(stale.getId(), fresh -> fresh.setLastName("Author Renamed"));
+        stale.setFirstName("Stale");
+        assertThatThrownBy(() -> authorDao.updateAuthor(stale)).isInstanceOf(OptimisticConflictException.class);
+
+        authorDao.deleteAuthorById(stale.getId());
+    }
+
+    @Test
+    void testUpdateRetriesWithFreshStateOnConflict() {
+        Book saved = bookDao.saveNewBook(new Book("retried book", "retry" + RandomString.make(), "Self"));
+        AtomicInteger attempts = new AtomicInteger();
+
+        Book updated = bookDao.updateBook(saved.getId(), book -> {
+            if (attempts.incrementAndGet() == 1) {
+                // otro escritor gana mientras este intento tiene el libro leído
+                CompletableFuture.runAsync(() -> bookDao.updateBook(saved.getId(),
+                        concurrent -> concurrent.setPublisher("Concurrent"))).join();
+            }
+            book.setTitle("retried book, 2nd edition");
+        });
+
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(updated.getVersion()).isEqualTo(saved.getVersion() + 2);
+        Book fetched = bookDao.getById(saved.getId());
+        assertThat(fetched.getTitle()).isEqualTo("retried book, 2nd edition");
+        assertThat(fetched.getPublisher()).isEqualTo("Concurrent");
+        assertThat(bookDao.updateBook(-1L, book -> book.setTitle("none"))).isNull();
+
+        bookDao.deleteBookById(saved.getId());
+    }
+
+    @Test
+    void testBulkUpdateBumpsVersion() {
+        String publisher = "versioned" + RandomString.make();
+        Book saved = bookDao.saveNewBook(new Book("bulk versioned", "version" + RandomString.make(), publisher));
+
+        bookDao.updatePublisher(publisher, publisher + " renamed");
+
+        assertThat(bookDao.getById(saved.getId()).getVersion()).isEqualTo(saved.getVersion() + 1);
+        assertThatThrownBy(() -> bookDao.updateBook(saved)).isInstanceOf(OptimisticConflictException.class);
+        bookDao.deleteBookById(saved.getId());
+    }
+
+    @Test
+    void testUpsertByIsbn() {
+        String isbn = "upsert" + RandomString.make();
+        Book book = new Book("upserted", isbn, "Self");
+        assertThat(bookDao.upsertByIsbn(book)).isEqualTo(UpsertOutcome.INSERTED);
+        assertThat(book.getId()).isNotNull();
+        Book cached = bookDao.getById(book.getId());
+
+        Book replacement = new Book("upserted again", isbn, "Other");
+        assertThat(bookDao.upsertByIsbn(replacement)).isEqualTo(UpsertOutcome.UPDATED);
+
+        assertThat(replacement.getId()).isEqualTo(book.getId());
+        Book fetched = bookDao.getById(book.getId());
+        assertThat(fetched.getTitle()).isEqualTo("upserted again");
+        assertThat(fetched.getPublisher()).isEqualTo("Other");
+        assertThat(fetched.getVersion()).isEqualTo(cached.getVersion() + 1);
+        assertThat(titles(catalogSearch.searchBooks("upserted again", 0, 10))).asList().contains("upserted again");
+
+        bookDao.deleteBookById(book.getId());
+    }
+
+    @Test
+    void testUpsertAllByIsbnInOrder() {
+        Book existing = bookDao.saveNewBook(new Book("existing", "upsert" + RandomString.make(), "Self"));
+        String isbn = "upsert" + RandomString.make();
+        Author author = authorDao.findAuthorByName("Craig", "Walls");
+        Book withAuthor = new Book("new with author", isbn, "Self");
+        withAuthor.setAuthor(author);
+
+        List<UpsertOutcome> outcomes = bookDao.upsertAllByIsbn(List.of(
+                new Book("new", isbn, "Self"),
+                new Book("existing renamed", existing.getIsbn(), "Self"),
+                withAuthor));
+
+        assertThat(outcomes).asList().containsExactly(UpsertOutcome.INSERTED, UpsertOutcome.UPDATED,
+                UpsertOutcome.INSERTED);
+        assertThat(bookDao.getById(existing.getId()).getTitle()).isEqualTo("existing renamed");
+        Book inserted = bookDao.findByISBN(isbn, BookFetchPlan.WITH_AUTHOR);
+        assertThat(inserted.getTitle()).isEqualTo("new with author");
+        assertThat(inserted.getAuthor().getId()).isEqualTo(author.getId());
+
+        bookDao.deleteBooksByIds(List.of(existing.getId(), inserted.getId()));
+    }
+
+    @Test
+    void testUpsertAuthorByName() {
+        Author author = new Author();
+        author.setFirstName("Upserted");
+        author.setLastName("Author" + RandomString.make());
+        Author again = new Author();
+        again.setFirstName(author.getFirstName());
+        again.setLastName(author.getLastName());
+
+        assertThat(authorDao.upsertAuthorByName(author)).isEqualTo(UpsertOutcome.INSERTED);
+        assertThat(authorDao.upsertAllAuthorsByName(List.of(again))).asList().containsExactly(UpsertOutcome.UNCHANGED);
+
+        assertThat(again.getId()).isEqualTo(author.getId());
+        assertThat(authorDao.findAuthorByName(author.getFirstName(), author.getLastName()).getId())
+                .isEqualTo(author.getId());
+        authorDao.deleteAuthorById(author.getId());
+    }
+
+    @Test
+    void testCountBooksByAuthorAndPublisher() {
+        Long wallsId = authorDao.findAuthorByName("Craig", "Walls").getId();
+        Author walls = authorDao.getById(wallsId, AuthorFetchPlan.WITH_BOOKS);
+
+        Map<Long, Long> byAuthor = authorDao.countBooksByAuthor();
+        Map<String, Long> byPublisher = bookDao.countBooksByPublisher();
+
+        assertThat(byAuthor.get(walls.getId())).isEqualTo(walls.getBooks().size());
+        assertThat(byAuthor.values().stream().mapToLong(Long::longValue).sum())
+                .isEqualTo(bookDao.findAll().stream().filter(book -> book.getAuthor() != null).count());
+        assertThat(byPublisher.values().stream().mapToLong(Long::longValue).sum()).isEqualTo(bookDao.findAll().size());
+    }
+
+    @Test
+    void testTopAuthorsByBookCount() {
+        List<AuthorSummary> top = authorDao.topAuthorsByBookCount(2);
+
+        assertThat(top.size()).isEqualTo(2);
+        assertThat(top.get(0).bookCount()).isEqualTo(authorDao.countBooksByAuthor().values().stream()
+                .mapToLong(Long::longValue).max().orElseThrow());
+        assertThat(top.get(0).bookCount()).isGreaterThanOrEqualTo(top.get(1).bookCount());
+    }
+
+    @Test
+    void testMaterializedBookCount() {
+        Author author = new Author();
+        author.setFirstName("Counted");
+        author.setLastName("Author" + RandomString.make());
+        Author saved = authorDao.saveNewAuthor(author);
+        Author other = authorDao.findAuthorByName("Craig", "Walls");
+        int otherCount = authorDao.getById(other.getId()).getBookCount();
+
+        Book first = new Book("counted 1", "count" + RandomString.make(), "Self");
+        first.setAuthor(saved);
+        bookDao.saveNewBook(first);
+        Book second = new Book("counted 2", "count" + RandomString.make(), "Self");
+        second.setAuthor(saved);
+        bookDao.saveNewBook(second);
+        assertThat(authorDao.getById(saved.getId()).getBookCount()).isEqualTo(2);
+
+        // mover un libro con merge y con un upsert
+        Book moved = bookDao.getById(first.getId());
+        moved.setAuthor(other);
+        bookDao.updateBook(moved);
+        assertThat(authorDao.getById(saved.getId()).getBookCount()).isEqualTo(1);
+        assertThat(authorDao.getById(other.getId()).getBookCount()).isEqualTo(otherCount + 1);
+        Book upserted = new Book("counted 2", second.getIsbn(), "Self");
+        upserted.setAuthor(other);
+        bookDao.upsertByIsbn(upserted);
+        assertThat(authorDao.getById(saved.getId()).getBookCount()).isZero();
+
+        bookDao.deleteBooksByIds(List.of(first.getId()));
+        bookDao.deleteBookById(second.getId());
+        assertThat(authorDao.getById(other.getId()).getBookCount()).isEqualTo(otherCount);
+
+        assertThat(authorDao.recountBooks()).isPositive();
+        authorDao.findAll().forEach(each -> assertThat(each.getBookCount())
+                .isEqualTo(authorDao.countBooksByAuthor().get(each.getId()).intValue()));
+        authorDao.deleteAuthorById(saved.getId());
+    }
+
+    @Test
+    void testFindAllByIdsInBatches() {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            books.add(new Book("Multi get " + i, "MG" + RandomString.make(), "Multi Get"));
+        }
+        List<Long> ids = bookDao.saveAll(books).stream().map(Book::getId).collect(Collectors.toList());
+        emf.getCache().evict(Book.class);
+        List<Long> requested = new ArrayList<>(ids);
+        Collections.reverse(requested);
+        requested.add(2, Long.MAX_VALUE);
+        requested.add(ids.get(0));
+        Statistics statistics = statistics();
+
+        // 30 ids en una sola query con la lista IN rellenada a 64
+        LookupResult<Book> result = bookDao.findAllByIds(requested);
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(result.getFound().stream().map(Book::getId).collect(Collectors.toList()))
+                .isEqualTo(requested.stream().filter(ids::contains).distinct().collect(Collectors.toList()));
+        assertThat(result.getMissingIds()).asList().containsExactly(Long.MAX_VALUE);
+
+        // ahora salen de la cache de segundo nivel, solo el id que no existe vuelve a la base de datos
+        statistics = statistics();
+        assertThat(bookDao.findAllByIds(requested).getFound()).asList().hasSize(30);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getCacheRegionStatistics("book").getHitCount()).isEqualTo(30);
+
+        LookupResult<Author> authors = authorDao.findAllByIds(List.of(2L, 1L, -1L));
+        assertThat(authors.getFound().stream().map(Author::getId).collect(Collectors.toList()))
+                .asList().containsExactly(2L, 1L);
+        assertThat(authors.hasMissing()).isTrue();
+
+        assertThat(bookDao.deleteBooksByIds(ids)).isEqualTo(30);
+    }
+
+    @Test
+    void testMissingLookupsAreCachedUntilInserted() {
+        String isbn = "NEG" + RandomString.make();
+        String upserted = "NEG" + RandomString.make();
+        String lastName = "Negative " + RandomString.make();
+
+        assertThat(bookDao.lookupByISBN(isbn).isPresent()).isFalse();
+        assertThat(bookDao.lookupByISBN(upserted).isPresent()).isFalse();
+        assertThat(bookDao.findByTitle("Negative " + isbn).isPresent()).isFalse();
+        assertThat(authorDao.findByName("Nobody", lastName).isPresent()).isFalse();
+
+        // los fallos repetidos no llegan a la base de datos
+        assertThat(assertMaxStatements(0, () -> bookDao.lookupByISBN(isbn)).isPresent()).isFalse();
+        assertThat(assertMaxStatements(0, () -> bookDao.findByTitle("Negative " + isbn)).isPresent()).isFalse();
+        assertThat(assertMaxStatements(0, () -> authorDao.findByName("Nobody", lastName)).isPresent()).isFalse();
+
+        // el insert por Hibernate y el upsert nativo invalidan sus claves
+        Book book = bookDao.saveNewBook(new Book("Negative " + isbn, isbn, "Negative Lookups"));
+        bookDao.upsertByIsbn(new Book("Negative upsert", upserted, "Negative Lookups"));
+        Author nobody = new Author();
+        nobody.setFirstName("Nobody");
+        nobody.setLastName(lastName);
+        Author author = authorDao.saveNewAuthor(nobody);
+
+        assertThat(bookDao.lookupByISBN(isbn).map(Book::getId).orElse(null)).isEqualTo(book.getId());
+        assertThat(bookDao.lookupByISBN(upserted).isPresent()).isTrue();
+        assertThat(bookDao.findByTitle("Negative " + isbn).isPresent()).isTrue();
+        assertThat(authorDao.findByName("Nobody", lastName).map(Author::getId).orElse(null))
+                .isEqualTo(author.getId());
+
+        assertThat(bookDao.deleteBooksByPublisher("Negative Lookups")).isEqualTo(2);
+        authorDao.deleteAuthorById(author.getId());
+    }
+
+    @Test
+    void testCriteriaAndNativeLookupsShareTheMissCache() {
+        String title = "Negative " + RandomString.make();
+        String lastName = "Negative " + RandomString.make();
+
+        assertThat(bookDao.lookupBookByTitleCriteria(title).isPresent()).isFalse();
+        assertThat(authorDao.lookupAuthorByNameCriteria("Nobody", lastName).isPresent()).isFalse();
+
+        // la misma clave sirve para todas las variantes de la consulta
+        assertThat(assertMaxStatements(0, () -> bookDao.lookupBookByTitleNative(title)).isPresent()).isFalse();
+        assertThat(assertMaxStatements(0, () -> authorDao.lookupAuthorByNameNative("Nobody", lastName)).isPresent())
+                .isFalse();
+        assertThat(assertMaxStatements(0, () -> authorDao.lookupAuthorByName("Nobody", lastName,
+                AuthorFetchPlan.WITH_BOOKS)).isPresent()).isFalse();
+
+        assertThat(bookDao.lookupBookByTitleNative("Clean Code").map(Book::getTitle).orElse(null))
+                .isEqualTo("Clean Code");
+        assertThat(authorDao.lookupAuthorByNameCriteria("Craig", "Walls").map(Author::getLastName).orElse(null))
+                .isEqualTo("Walls");
+    }
+
+    private static List<String> titles(SearchPage<BookSearchHit> hits) {
+        return hits.content().stream().map(BookSearchHit::title).collect(Collectors.toList());
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        return statistics;
+    }
+}
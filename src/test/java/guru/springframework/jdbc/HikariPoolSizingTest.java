@@ -0,0 +1,29 @@
+package guru.springframework.jdbc;
+
+import com.zaxxer.hikari.HikariDataSource;
+import guru.springframework.jdbc.pool.HikariPoolSizing;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class HikariPoolSizingTest {
+
+    @Test
+    void testPoolSizedFromDatabaseCores() {
+        HikariDataSource dataSource = size(new HikariPoolSizing(4, 1, 0));
+
+        assertThat(dataSource.getMaximumPoolSize()).isEqualTo(9);
+        assertThat(dataSource.getMinimumIdle()).isEqualTo(9);
+    }
+
+    @Test
+    void testPoolCappedAtExpectedConcurrency() {
+        HikariDataSource dataSource = size(new HikariPoolSizing(16, 1, 5));
+
+        assertThat(dataSource.getMaximumPoolSize()).isEqualTo(5);
+    }
+
+    private static HikariDataSource size(HikariPoolSizing sizing) {
+        return (HikariDataSource) sizing.postProcessBeforeInitialization(new HikariDataSource(), "dataSource");
+    }
+}
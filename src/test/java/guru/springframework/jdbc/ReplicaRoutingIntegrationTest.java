@@ -0,0 +1,101 @@
+package guru.springframework.jdbc;
+
+import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.domain.Book;
+import guru.springframework.jdbc.dto.BookSummary;
+import guru.springframework.jdbc.routing.ReadYourWrites;
+import guru.springframework.jdbc.routing.ReplicaRoutingDataSource;
+import net.bytebuddy.utility.RandomString;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two in-memory H2 databases stand in for the primary and a replica, both migrated by Flyway but never replicated,
+ * so a row written through the DAOs is only visible when the read goes to the primary. A second replica is
+ * unreachable.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReplicaRoutingIntegrationTest.PRIMARY_URL,
+        "spring.datasource.username=sa",
+        "spring.datasource.password=password",
+        "sdjpa.routing.enabled=true",
+        "sdjpa.routing.replicas[0].url=" + ReplicaRoutingIntegrationTest.REPLICA_URL,
+        "sdjpa.routing.replicas[1].url=jdbc:h2:tcp://localhost:1/unreachable",
+        "sdjpa.routing.replica-retry-interval=1h",
+        "sdjpa.search.index-directory="})
+class ReplicaRoutingIntegrationTest {
+
+    static final String PRIMARY_URL =
+            "jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1;MODE=MYSQL;" +
+                    "DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE";
+    static final String REPLICA_URL =
+            "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1;MODE=MYSQL;" +
+                    "DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE";
+
+    @Autowired
+    BookDao bookDao;
+
+    @Autowired
+    ReplicaRoutingDataSource routingDataSource;
+
+    @BeforeAll
+    static void migrateReplica() {
+        Flyway.configure().dataSource(REPLICA_URL, "sa", "password").load().migrate();
+    }
+
+    @BeforeEach
+    void skipUnreachableReplica() {
+        // round robin: una de las dos lecturas va a la réplica caída, que queda descartada
+        bookDao.findAllSummaries();
+        bookDao.findAllSummaries();
+    }
+
+    @AfterEach
+    void clearReadYourWrites() {
+        ReadYourWrites.clear();
+    }
+
+    @Test
+    void testUnreachableReplicaIsSkipped() {
+        assertThat(routingDataSource.healthyReplicas()).containsExactly("replica-0");
+    }
+
+    @Test
+    void testReadOnlyCallsGoToReplica() {
+        Book book = CompletableFuture.supplyAsync(() -> bookDao.saveNewBook(newBook())).join();
+
+        List<Long> ids = summaryIds();
+
+        assertThat(ids).isNotEmpty();
+        assertThat(ids).doesNotContain(book.getId());
+    }
+
+    @Test
+    void testReadsFollowOwnWritesToPrimary() {
+        Book book = bookDao.saveNewBook(newBook());
+
+        assertThat(summaryIds()).contains(book.getId());
+
+        ReadYourWrites.clear();
+        assertThat(summaryIds()).doesNotContain(book.getId());
+    }
+
+    private List<Long> summaryIds() {
+        return bookDao.findAllSummaries().stream().map(BookSummary::id).collect(Collectors.toList());
+    }
+
+    private static Book newBook() {
+        return new Book("routing " + RandomString.make(), "routing" + RandomString.make(), "Self");
+    }
+}
@@ -0,0 +1,37 @@
+package guru.springframework.jdbc;
+
+import guru.springframework.jdbc.inspection.OpenResources;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.support.AbstractTestExecutionListener;
+
+/**
+ * Fails a test that leaves an {@code EntityManager} or a JPA connection open. Runs outside the test-managed
+ * transaction, so the connection of a {@code @Transactional} test is not reported.
+ */
+class ResourceLeakTestExecutionListener extends AbstractTestExecutionListener {
+
+    private static final String SESSIONS = ResourceLeakTestExecutionListener.class.getName() + ".sessions";
+    private static final String CONNECTIONS = ResourceLeakTestExecutionListener.class.getName() + ".connections";
+
+    @Override
+    public int getOrder() {
+        // antes que TransactionalTestExecutionListener (4000)
+        return 3000;
+    }
+
+    @Override
+    public void beforeTestMethod(TestContext testContext) {
+        testContext.setAttribute(SESSIONS, OpenResources.openSessions());
+        testContext.setAttribute(CONNECTIONS, OpenResources.openConnections());
+    }
+
+    @Override
+    public void afterTestMethod(TestContext testContext) {
+        int sessions = OpenResources.openSessions() - (int) testContext.getAttribute(SESSIONS);
+        int connections = OpenResources.openConnections() - (int) testContext.getAttribute(CONNECTIONS);
+        if (sessions != 0 || connections != 0) {
+            throw new AssertionError(testContext.getTestMethod().getName() + " left " + sessions +
+                    " EntityManager(s) and " + connections + " connection(s) open");
+        }
+    }
+}
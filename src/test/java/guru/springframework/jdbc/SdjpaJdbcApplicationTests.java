@@ -1,7 +1,12 @@
 package guru.springframework.jdbc;
 
+import guru.springframework.jdbc.dao.AuthorDao;
+import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.domain.Book;
 import guru.springframework.jdbc.repositories.AuthorRepository;
 import guru.springframework.jdbc.repositories.BookRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -19,6 +24,12 @@ class SdjpaJdbcApplicationTests {
 	BookRepository bookRepository;
 	@Autowired
 	AuthorRepository authorRepository;
+	@Autowired
+	AuthorDao authorDao;
+	@Autowired
+	BookDao bookDao;
+	@Autowired
+	MeterRegistry meterRegistry;
 
 
 	@Test
@@ -27,4 +38,49 @@ class SdjpaJdbcApplicationTests {
 		assertThat(authorRepository).isNotNull();
 	}
 
+	@Test
+	void daoCallsAreMeasured() {
+		bookDao.findAll();
+
+		assertThat(meterRegistry.get("dao.invocations").tags("dao", "BookDao", "method", "findAll").timer().count())
+				.isPositive();
+		assertThat(meterRegistry.get("dao.rows").tags("dao", "BookDao", "method", "findAll").summary().totalAmount())
+				.isPositive();
+		assertThat(meterRegistry.get("dao.statements").tags("dao", "BookDao", "method", "findAll").summary().max())
+				.isEqualTo(1);
+		assertThat(meterRegistry.find("hibernate.statements").meter()).isNotNull();
+	}
+
+	@Test
+	void cacheRegionsAreMeasured() {
+		assertThat(meterRegistry.find("hibernate.second.level.cache.requests").tag("result", "hit").meters().size())
+				.isPositive();
+		assertThat(meterRegistry.find("hibernate.second.level.cache.requests").tag("result", "miss").meters().size())
+				.isPositive();
+	}
+
+	@Test
+	void commitTimeStatementsAreMeasured() {
+		Author author = new Author();
+		author.setFirstName("Commit");
+		author.setLastName("Measured");
+		authorDao.saveNewAuthor(author);
+		Book book = new Book("Commit Measured", null, "Self");
+		book.setAuthor(author);
+		bookDao.saveNewBook(book);
+
+		double before = deleteBookByIdStatements();
+		bookDao.deleteBookById(book.getId());
+
+		// el DELETE del libro y el UPDATE de author.book_count solo se ejecutan en el commit
+		assertThat(deleteBookByIdStatements() - before).isGreaterThanOrEqualTo(2);
+
+		authorDao.deleteAuthorById(author.getId());
+	}
+
+	private double deleteBookByIdStatements() {
+		return meterRegistry.find("dao.statements").tags("dao", "BookDao", "method", "deleteBookById").summaries()
+				.stream().mapToDouble(summary -> summary.totalAmount()).sum();
+	}
+
 }
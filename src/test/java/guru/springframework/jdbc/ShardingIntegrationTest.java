@@ -0,0 +1,530 @@
+package guru.springframework.jdbc;
+
+import guru.springframework.jdbc.dao.AuthorDao;
+import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.dao.CatalogShards;
+import guru.springframework.jdbc.dao.KeysetPage;
+import guru.springframework.jdbc.dao.LookupResult;
+import guru.springframework.jdbc.dao.UpsertOutcome;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.domain.Book;
+import guru.springframework.jdbc.dto.AuthorSummary;
+import guru.springframework.jdbc.dto.CatalogRecord;
+import guru.springframework.jdbc.inspection.SqlInspectionListener;
+import guru.springframework.jdbc.routing.ReplicaRoutingConfiguration;
+import guru.springframework.jdbc.search.AuthorSearchHit;
+import guru.springframework.jdbc.search.BookSearchHit;
+import guru.springframework.jdbc.search.CatalogSearchImpl;
+import guru.springframework.jdbc.sharding.ShardingConfiguration;
+import guru.springframework.jdbc.writebehind.WriteBehindProperties;
+import guru.springframework.jdbc.writebehind.WriteBehindWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.bytebuddy.utility.RandomString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.NoResultException;
+import javax.persistence.NonUniqueResultException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Three in-memory H2 databases are the shards of the catalog. The rows of each shard are checked over plain JDBC,
+ * behind the back of the DAOs.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ShardingIntegrationTest.SHARD_0,
+        "spring.datasource.username=sa",
+        "spring.datasource.password=password",
+        "sdjpa.sharding.enabled=true",
+        "sdjpa.sharding.shards[0].url=" + ShardingIntegrationTest.SHARD_1,
+        "sdjpa.sharding.shards[1].url=" + ShardingIntegrationTest.SHARD_2,
+        "sdjpa.search.index-directory="})
+class ShardingIntegrationTest {
+
+    static final String SHARD_0 =
+            "jdbc:h2:mem:shard-0;DB_CLOSE_DELAY=-1;MODE=MYSQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE";
+    static final String SHARD_1 =
+            "jdbc:h2:mem:shard-1;DB_CLOSE_DELAY=-1;MODE=MYSQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE";
+    static final String SHARD_2 =
+            "jdbc:h2:mem:shard-2;DB_CLOSE_DELAY=-1;MODE=MYSQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE";
+
+    @Autowired
+    AuthorDao authorDao;
+
+    @Autowired
+    BookDao bookDao;
+
+    @Autowired
+    CatalogShards shards;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    CatalogSearchImpl catalogSearch;
+
+    @Test
+    void testSeedDataIsSplitByAuthor() {
+        assertThat(shards.count()).isEqualTo(3);
+        assertThat(authorDao.listAuthorByLastNameLike("Walls")).hasSize(1);
+        assertThat(bookDao.findAll().stream().filter(book -> book.getIsbn().equals("9780134494166"))).hasSize(1);
+
+        // cada shard reparte ids de su propio rango
+        for (int shard = 0; shard < 3; shard++) {
+            Long seedAuthors = jdbc(shard).queryForObject("SELECT COUNT(*) FROM author", Long.class);
+            Long nextId = jdbc(shard).queryForObject(
+                    "SELECT next_val FROM id_generator WHERE sequence_name = 'author'", Long.class);
+            assertThat(seedAuthors).isEqualTo(1);
+            assertThat(nextId).isGreaterThanOrEqualTo(shard * 1_000_000_000_000L);
+        }
+    }
+
+    @Test
+    void testScatterReadsCountForTheCaller() {
+        long before = SqlInspectionListener.executedStatements();
+        bookDao.findAll();
+
+        // una select en cada shard, en los hilos del scatter
+        assertThat(SqlInspectionListener.executedStatements() - before).isGreaterThanOrEqualTo(3);
+    }
+
+    @Test
+    void testAuthorsAndTheirBooksShareAShard() {
+        String lastName = "Sharded " + RandomString.make();
+        List<Author> authors = new ArrayList<>();
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Author author = new Author();
+            author.setFirstName("Author " + i);
+            author.setLastName(lastName);
+            authors.add(authorDao.saveNewAuthor(author));
+
+            Book book = new Book("Sharded " + i, "SH" + RandomString.make(), "Shards");
+            book.setAuthor(author);
+            books.add(bookDao.saveNewBook(book));
+        }
+
+        // ids consecutivos: un autor en cada shard
+        assertThat(authors.stream().map(author -> shards.shardOf(author.getId())).distinct()).hasSize(3);
+        for (int i = 0; i < 3; i++) {
+            Long authorId = authors.get(i).getId();
+            for (int shard = 0; shard < 3; shard++) {
+                Long rows = jdbc(shard).queryForObject("SELECT COUNT(*) FROM book WHERE author_id = ?", Long.class,
+                        authorId);
+                assertThat(rows).isEqualTo(shard == shards.shardOf(authorId) ? 1L : 0L);
+            }
+            assertThat(bookDao.findByAuthor(authorId)).extracting(Book::getId).containsExactly(books.get(i).getId());
+            assertThat(authorDao.getById(authorId).getBookCount()).isEqualTo(1);
+        }
+
+        // las consultas sin autor recogen los tres shards
+        assertThat(authorDao.listAuthorByLastNameLike(lastName)).extracting(Author::getId)
+                .containsExactlyElementsOf(ids(authors.stream().map(Author::getId).collect(Collectors.toList())));
+        assertThat(bookDao.findAll()).extracting(Book::getId)
+                .containsAll(books.stream().map(Book::getId).collect(Collectors.toList()));
+        for (Book book : books) {
+            assertThat(bookDao.getById(book.getId()).getTitle()).isEqualTo(book.getTitle());
+            assertThat(bookDao.findByISBN(book.getIsbn()).getId()).isEqualTo(book.getId());
+        }
+        assertThat(bookDao.lookupByISBN("SH" + RandomString.make())).isEmpty();
+
+        for (int i = 0; i < 3; i++) {
+            bookDao.deleteBookById(books.get(i).getId());
+            authorDao.deleteAuthorById(authors.get(i).getId());
+        }
+        assertThat(authorDao.listAuthorByLastNameLike(lastName)).isEmpty();
+        assertThat(books.stream().map(book -> bookDao.getById(book.getId()))).containsOnlyNulls();
+    }
+
+    @Test
+    void testSaveLeavesTheShardOfTheCallerTransaction() {
+        Author walls = authorDao.listAuthorByLastNameLike("Walls").get(0);
+        String lastName = "Saved " + RandomString.make();
+
+        List<Author> saved = new TransactionTemplate(transactionManager).execute(status -> {
+            assertThat(bookDao.findByAuthor(walls.getId())).isNotEmpty();
+            List<Author> authors = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                Author author = new Author();
+                author.setFirstName("Author " + i);
+                author.setLastName(lastName);
+                authors.add(authorDao.save(author).orElseThrow());
+            }
+            // la transacción del llamador sigue en el shard de Walls
+            assertThat(bookDao.findByAuthor(walls.getId())).isNotEmpty();
+            return authors;
+        });
+
+        assertThat(saved.stream().map(author -> shards.shardOf(author.getId())).distinct()).hasSize(3);
+        for (Author author : saved) {
+            // ids del rango del shard 0, cada autor en su shard
+            assertThat(author.getId()).isLessThan(1_000_000_000_000L);
+            assertThat(jdbc(shards.shardOf(author.getId())).queryForObject(
+                    "SELECT last_name FROM author WHERE id = ?", String.class, author.getId())).isEqualTo(lastName);
+            authorDao.deleteAuthorById(author.getId());
+        }
+    }
+
+    @Test
+    void testBatchWritesGoToTheShardOfTheAuthor() {
+        String lastName = "Batched " + RandomString.make();
+        List<Author> authors = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Author author = new Author();
+            author.setFirstName("Author " + i);
+            author.setLastName(lastName);
+            authors.add(author);
+        }
+        assertThat(authorDao.upsertAllAuthorsByName(authors)).containsOnly(UpsertOutcome.INSERTED);
+        assertThat(authors.stream().map(author -> shards.shardOf(author.getId())).distinct()).hasSize(3);
+        for (Author author : authors) {
+            assertThat(rows(shards.shardOf(author.getId()), "SELECT COUNT(*) FROM author WHERE id = ?",
+                    author.getId())).isEqualTo(1);
+        }
+
+        // el nombre se busca en todos los shards, no se duplica en el de un id nuevo
+        List<Author> again = authors.stream().map(author -> {
+            Author copy = new Author();
+            copy.setFirstName(author.getFirstName());
+            copy.setLastName(author.getLastName());
+            return copy;
+        }).collect(Collectors.toList());
+        assertThat(authorDao.upsertAllAuthorsByName(again)).containsOnly(UpsertOutcome.UNCHANGED);
+        assertThat(again).extracting(Author::getId).containsExactlyElementsOf(
+                authors.stream().map(Author::getId).collect(Collectors.toList()));
+        long named = 0;
+        for (int shard = 0; shard < 3; shard++) {
+            named += rows(shard, "SELECT COUNT(*) FROM author WHERE last_name = ?", lastName);
+        }
+        assertThat(named).isEqualTo(3);
+
+        List<Book> saved = new ArrayList<>();
+        List<Book> upserted = new ArrayList<>();
+        for (Author author : authors) {
+            saved.add(book("Saved", author));
+            upserted.add(book("Upserted", author));
+        }
+        bookDao.saveAll(saved);
+        assertThat(bookDao.upsertAllByIsbn(upserted)).containsOnly(UpsertOutcome.INSERTED);
+        Book renamed = book("Renamed", authors.get(1));
+        renamed.setIsbn(upserted.get(1).getIsbn());
+        assertThat(bookDao.upsertByIsbn(renamed)).isEqualTo(UpsertOutcome.UPDATED);
+
+        for (int i = 0; i < 3; i++) {
+            Long authorId = authors.get(i).getId();
+            int shard = shards.shardOf(authorId);
+            for (Book book : List.of(saved.get(i), upserted.get(i))) {
+                assertThat(rows(shard, "SELECT COUNT(*) FROM book WHERE id = ? AND author_id = ?", book.getId(),
+                        authorId)).isEqualTo(1);
+            }
+            assertThat(authorDao.getById(authorId).getBookCount()).isEqualTo(2);
+        }
+        assertThat(rows(shards.shardOf(authors.get(1).getId()), "SELECT COUNT(*) FROM book WHERE title = ?",
+                renamed.getTitle())).isEqualTo(1);
+
+        // una transacción no puede abarcar shards
+        List<Book> spanning = authors.stream().map(author -> book("Spanning", author)).collect(Collectors.toList());
+        assertThatThrownBy(() -> new TransactionTemplate(transactionManager)
+                .executeWithoutResult(status -> bookDao.saveAll(spanning)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> authorDao.saveAll(List.of(new Author())))
+                .isInstanceOf(IllegalStateException.class);
+
+        for (int i = 0; i < 3; i++) {
+            bookDao.deleteBookById(saved.get(i).getId());
+            bookDao.deleteBookById(upserted.get(i).getId());
+            authorDao.deleteAuthorById(authors.get(i).getId());
+        }
+    }
+
+    @Test
+    void testReadsAndBulkStatementsCoverEveryShard() {
+        String lastName = "Bulk " + RandomString.make();
+        String publisher = "Bulk " + RandomString.make();
+        List<Author> authors = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Author author = new Author();
+            author.setFirstName("Author " + i);
+            author.setLastName(lastName);
+            authors.add(author);
+        }
+        authorDao.upsertAllAuthorsByName(authors);
+        List<Book> books = new ArrayList<>();
+        for (Author author : authors) {
+            for (int i = 0; i < 2; i++) {
+                Book book = book("Bulk", author);
+                book.setPublisher(publisher);
+                books.add(book);
+            }
+        }
+        bookDao.saveAll(books);
+        List<Long> bookIds = books.stream().map(Book::getId).collect(Collectors.toList());
+
+        List<Long> lookup = new ArrayList<>(bookIds);
+        lookup.add(-1L);
+        LookupResult<Book> found = bookDao.findAllByIds(lookup);
+        assertThat(found.getFound()).extracting(Book::getId).containsExactlyElementsOf(bookIds);
+        assertThat(found.getMissingIds()).containsExactly(-1L);
+        assertThat(authorDao.findAllByIds(authors.stream().map(Author::getId).collect(Collectors.toList()))
+                .hasMissing()).isFalse();
+
+        // las páginas juntan los tres shards sin saltarse ni repetir filas
+        List<Long> paged = new ArrayList<>();
+        KeysetPage<Book> page = bookDao.findAllPage(2, null);
+        paged.addAll(page.getContent().stream().map(Book::getId).collect(Collectors.toList()));
+        while (page.hasNext()) {
+            page = bookDao.findAllPage(2, page.getNextPageToken());
+            paged.addAll(page.getContent().stream().map(Book::getId).collect(Collectors.toList()));
+        }
+        assertThat(paged).isSorted().doesNotHaveDuplicates().containsAll(bookIds);
+
+        assertThat(bookDao.countBooksByPublisher()).containsEntry(publisher, 6L);
+        assertThat(bookDao.findByTitle(books.get(5).getTitle())).map(Book::getId).contains(books.get(5).getId());
+        assertThat(authorDao.countBooksByAuthor()).containsEntry(authors.get(2).getId(), 2L);
+        assertThat(authorDao.recountBooks()).isGreaterThanOrEqualTo(6);
+
+        assertThat(bookDao.updatePublisher(publisher, publisher + " Renamed")).isEqualTo(6);
+        assertThatThrownBy(() -> bookDao.reassignBooks(authors.get(0).getId(), authors.get(1).getId()))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(bookDao.deleteBooksByIds(List.of(bookIds.get(0), bookIds.get(2), bookIds.get(4)))).isEqualTo(3);
+        for (Author author : authors) {
+            assertThat(rows(shards.shardOf(author.getId()), "SELECT COUNT(*) FROM book WHERE author_id = ?",
+                    author.getId())).isEqualTo(1);
+            assertThat(authorDao.getById(author.getId()).getBookCount()).isEqualTo(1);
+        }
+
+        assertThat(authorDao.deleteAuthorsByIds(authors.stream().map(Author::getId).collect(Collectors.toList())))
+                .isEqualTo(3);
+        for (int shard = 0; shard < 3; shard++) {
+            assertThat(rows(shard, "SELECT COUNT(*) FROM author WHERE last_name = ?", lastName)).isZero();
+            assertThat(rows(shard, "SELECT COUNT(*) FROM book WHERE publisher = ?", publisher + " Renamed")).isZero();
+        }
+    }
+
+    @Test
+    void testConsumerUpdatesGoToTheShardOfTheRow() {
+        List<Author> authors = authors("Updated " + RandomString.make());
+        List<Book> books = authors.stream().map(author -> book("Updated", author)).collect(Collectors.toList());
+        bookDao.saveAll(books);
+
+        for (int i = 0; i < 3; i++) {
+            Long authorId = authors.get(i).getId();
+            int shard = shards.shardOf(authorId);
+            assertThat(authorDao.updateAuthor(authorId, author -> author.setFirstName("Renamed"))).isNotNull();
+            assertThat(bookDao.updateBook(books.get(i).getId(), book -> book.setPublisher("Renamed"))).isNotNull();
+
+            assertThat(rows(shard, "SELECT COUNT(*) FROM author WHERE id = ? AND first_name = 'Renamed'", authorId))
+                    .isEqualTo(1);
+            assertThat(rows(shard, "SELECT COUNT(*) FROM book WHERE id = ? AND publisher = 'Renamed'",
+                    books.get(i).getId())).isEqualTo(1);
+        }
+        assertThat(bookDao.updateBook(-1L, book -> book.setPublisher("Renamed"))).isNull();
+
+        books.forEach(book -> bookDao.deleteBookById(book.getId()));
+        authors.forEach(author -> authorDao.deleteAuthorById(author.getId()));
+    }
+
+    @Test
+    void testNameAndTitleFindersReadEveryShard() {
+        String lastName = "Named " + RandomString.make();
+        List<Author> authors = authors(lastName);
+        List<Book> books = authors.stream().map(author -> book("Named", author)).collect(Collectors.toList());
+        bookDao.saveAll(books);
+
+        // los autores 1 y 2 no están en el shard 0
+        for (int i = 0; i < 3; i++) {
+            Author author = authors.get(i);
+            String first = author.getFirstName();
+            assertThat(authorDao.findByName(first, lastName)).map(Author::getId).contains(author.getId());
+            assertThat(authorDao.findByNamedName(first, lastName)).map(Author::getId).contains(author.getId());
+            assertThat(authorDao.findAuthorByNameCriteria(first, lastName).getId()).isEqualTo(author.getId());
+            assertThat(authorDao.findAuthorByNameNative(first, lastName).getId()).isEqualTo(author.getId());
+            assertThat(authorDao.findAuthorByName(first, lastName).getId()).isEqualTo(author.getId());
+            assertThat(authorDao.lookupAuthorByNameCriteria(first, lastName)).map(Author::getId)
+                    .contains(author.getId());
+            assertThat(authorDao.lookupAuthorByNameNative(first, lastName)).map(Author::getId)
+                    .contains(author.getId());
+
+            Book book = books.get(i);
+            String title = book.getTitle();
+            assertThat(bookDao.findByTitleNamedQuery(title)).map(Book::getId).contains(book.getId());
+            assertThat(bookDao.findBookByTitleCriteria(title).getId()).isEqualTo(book.getId());
+            assertThat(bookDao.findBookByTitleNative(title).getId()).isEqualTo(book.getId());
+            assertThat(bookDao.findBookByTitle(title).getId()).isEqualTo(book.getId());
+            assertThat(bookDao.lookupBookByTitleCriteria(title)).map(Book::getId).contains(book.getId());
+            assertThat(bookDao.lookupBookByTitleNative(title)).map(Book::getId).contains(book.getId());
+        }
+        assertThatThrownBy(() -> authorDao.findAuthorByNameCriteria("Nobody", lastName))
+                .isInstanceOf(NoResultException.class);
+        assertThatThrownBy(() -> bookDao.findBookByTitleNative("Nobody " + lastName))
+                .isInstanceOf(NoResultException.class);
+
+        // el mismo título en dos shards no es un resultado único
+        Book twin = book("Twin", authors.get(1));
+        twin.setTitle(books.get(2).getTitle());
+        bookDao.saveNewBook(twin);
+        assertThatThrownBy(() -> bookDao.findBookByTitle(twin.getTitle()))
+                .isInstanceOf(NonUniqueResultException.class);
+
+        List<Long> authorIds = authors.stream().map(Author::getId).collect(Collectors.toList());
+        List<Long> bookIds = books.stream().map(Book::getId).collect(Collectors.toList());
+        assertThat(authorDao.findAllNamed()).extracting(Author::getId).isSorted().containsAll(authorIds);
+        assertThat(bookDao.findAllNamed()).extracting(Book::getId).isSorted().containsAll(bookIds);
+        assertThat(authorDao.findAllSummaries()).extracting(AuthorSummary::id).containsAll(authorIds);
+        assertThat(authorDao.listAuthorSummariesByLastNameLike(lastName)).extracting(AuthorSummary::id)
+                .containsExactlyElementsOf(authorIds);
+
+        bookDao.deleteBookById(twin.getId());
+        books.forEach(book -> bookDao.deleteBookById(book.getId()));
+        authors.forEach(author -> authorDao.deleteAuthorById(author.getId()));
+    }
+
+    @Test
+    void testStreamsReadEveryShard() {
+        List<Author> authors = authors("Streamed " + RandomString.make());
+        List<Book> books = authors.stream().map(author -> book("Streamed", author)).collect(Collectors.toList());
+        bookDao.saveAll(books);
+
+        try (Stream<Author> stream = authorDao.streamAll(2)) {
+            assertThat(stream.map(Author::getId).collect(Collectors.toList())).doesNotHaveDuplicates()
+                    .containsAll(authors.stream().map(Author::getId).collect(Collectors.toList()));
+        }
+        try (Stream<Book> stream = bookDao.streamAll(2)) {
+            assertThat(stream.map(Book::getId).collect(Collectors.toList())).doesNotHaveDuplicates()
+                    .containsAll(books.stream().map(Book::getId).collect(Collectors.toList()));
+        }
+        // cada registro trae el autor de su shard
+        try (Stream<CatalogRecord> stream = bookDao.streamCatalog(2)) {
+            assertThat(stream.filter(record -> record.title().startsWith("Streamed "))
+                    .map(CatalogRecord::authorFirstName).collect(Collectors.toList()))
+                    .containsExactlyInAnyOrder("Author 0", "Author 1", "Author 2");
+        }
+
+        books.forEach(book -> bookDao.deleteBookById(book.getId()));
+        authors.forEach(author -> authorDao.deleteAuthorById(author.getId()));
+    }
+
+    @Test
+    void testSearchIndexCoversEveryShard() {
+        String word = "Indexed" + RandomString.make().toLowerCase();
+        List<Author> authors = authors(word);
+        List<Book> books = authors.stream().map(author -> book(word, author)).collect(Collectors.toList());
+        bookDao.saveAll(books);
+        List<Long> authorIds = authors.stream().map(Author::getId).collect(Collectors.toList());
+        List<Long> bookIds = books.stream().map(Book::getId).collect(Collectors.toList());
+
+        // los cambios se reindexan leyendo el shard de cada fila
+        assertThat(catalogSearch.searchAuthors(word, 0, 10).content()).extracting(AuthorSearchHit::id)
+                .containsExactlyInAnyOrderElementsOf(authorIds);
+        assertThat(catalogSearch.searchBooks(word, 0, 10).content()).extracting(BookSearchHit::id)
+                .containsExactlyInAnyOrderElementsOf(bookIds);
+
+        catalogSearch.rebuild();
+        assertThat(catalogSearch.searchAuthors(word, 0, 10).content()).extracting(AuthorSearchHit::id)
+                .containsExactlyInAnyOrderElementsOf(authorIds);
+        assertThat(catalogSearch.searchBooks(word, 0, 10).content()).extracting(BookSearchHit::id)
+                .containsExactlyInAnyOrderElementsOf(bookIds);
+        assertThat(catalogSearch.searchAuthors("Walls", 0, 10).content()).isNotEmpty();
+
+        // una fila de otro shard no desaparece del índice al reindexarla
+        catalogSearch.reindex(Book.class, bookIds);
+        assertThat(catalogSearch.searchBooks(word, 0, 10).content()).hasSize(3);
+
+        books.forEach(book -> bookDao.deleteBookById(book.getId()));
+        authors.forEach(author -> authorDao.deleteAuthorById(author.getId()));
+        assertThat(catalogSearch.searchBooks(word, 0, 10).content()).isEmpty();
+        assertThat(catalogSearch.searchAuthors(word, 0, 10).content()).isEmpty();
+    }
+
+    @Test
+    void testWriteBehindBooksGoToTheShardOfTheAuthor(@TempDir Path journals) throws Exception {
+        List<Author> authors = authors("Behind " + RandomString.make());
+        WriteBehindProperties properties = new WriteBehindProperties();
+        properties.setJournal(journals.resolve("sharded.jsonl"));
+        WriteBehindWriter writer = new WriteBehindWriter(emf, transactionManager, shards, new SimpleMeterRegistry(),
+                properties);
+        writer.start();
+        List<Book> books = authors.stream().map(author -> book("Behind", author)).collect(Collectors.toList());
+        try {
+            books.forEach(writer::saveBook);
+            writer.flush();
+            assertThatThrownBy(() -> writer.saveAuthor(new Author())).isInstanceOf(IllegalStateException.class);
+        } finally {
+            writer.destroy();
+        }
+
+        // un lote con libros de los tres shards, cada uno escrito en el de su autor
+        for (int i = 0; i < 3; i++) {
+            Long authorId = authors.get(i).getId();
+            for (int shard = 0; shard < 3; shard++) {
+                assertThat(rows(shard, "SELECT COUNT(*) FROM book WHERE isbn = ? AND author_id = ?",
+                        books.get(i).getIsbn(), authorId)).isEqualTo(shard == shards.shardOf(authorId) ? 1L : 0L);
+            }
+        }
+
+        books.forEach(book -> bookDao.deleteBookById(bookDao.findByISBN(book.getIsbn()).getId()));
+        authors.forEach(author -> authorDao.deleteAuthorById(author.getId()));
+    }
+
+    @Test
+    void testShardingCannotBeCombinedWithReplicaRouting() {
+        new ApplicationContextRunner()
+                .withPropertyValues("sdjpa.sharding.enabled=true", "sdjpa.routing.enabled=true")
+                .withUserConfiguration(ReplicaRoutingConfiguration.class, ShardingConfiguration.class)
+                .run(context -> assertThat(context).getFailure()
+                        .hasStackTraceContaining("cannot be combined"));
+    }
+
+    /**
+     * Three authors with the last name, one in each shard.
+     */
+    private List<Author> authors(String lastName) {
+        List<Author> authors = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Author author = new Author();
+            author.setFirstName("Author " + i);
+            author.setLastName(lastName);
+            authors.add(author);
+        }
+        authorDao.upsertAllAuthorsByName(authors);
+        return authors;
+    }
+
+    private static Book book(String title, Author author) {
+        Book book = new Book(title + " " + RandomString.make(), "SH" + RandomString.make(), "Shards");
+        book.setAuthor(author);
+        return book;
+    }
+
+    private static long rows(int shard, String sql, Object... args) {
+        return jdbc(shard).queryForObject(sql, Long.class, args);
+    }
+
+    private static List<Long> ids(List<Long> ids) {
+        return ids.stream().sorted().collect(Collectors.toList());
+    }
+
+    private static JdbcTemplate jdbc(int shard) {
+        String url = List.of(SHARD_0, SHARD_1, SHARD_2).get(shard);
+        return new JdbcTemplate(new DriverManagerDataSource(url, "sa", "password"));
+    }
+}
@@ -0,0 +1,34 @@
+package guru.springframework.jdbc;
+
+import guru.springframework.jdbc.inspection.SqlInspectionListener;
+
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Fails a test when a call executes more SQL statements than it is allowed to. Needs the
+ * {@link guru.springframework.jdbc.inspection.SqlInspectionConfiguration} in the test context.
+ */
+final class SqlStatementBudget {
+
+    private SqlStatementBudget() {
+    }
+
+    static <T> T assertMaxStatements(int maxStatements, Supplier<T> call) {
+        long before = SqlInspectionListener.executedStatements();
+        T result = call.get();
+        long executed = SqlInspectionListener.executedStatements() - before;
+        assertThat(executed)
+                .as("SQL statements executed, budget is %d", maxStatements)
+                .isLessThanOrEqualTo(maxStatements);
+        return result;
+    }
+
+    static void assertMaxStatements(int maxStatements, Runnable call) {
+        assertMaxStatements(maxStatements, () -> {
+            call.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,263 @@
+package guru.springframework.jdbc;
+
+import guru.springframework.jdbc.dao.AuthorDao;
+import guru.springframework.jdbc.dao.AuthorDaoImpl;
+import guru.springframework.jdbc.dao.BookDao;
+import guru.springframework.jdbc.dao.BookDaoImpl;
+import guru.springframework.jdbc.dao.CatalogShards;
+import guru.springframework.jdbc.dao.NegativeLookupCache;
+import guru.springframework.jdbc.domain.Author;
+import guru.springframework.jdbc.domain.Book;
+import guru.springframework.jdbc.writebehind.WriteBehindConfiguration;
+import guru.springframework.jdbc.writebehind.WriteBehindProperties;
+import guru.springframework.jdbc.writebehind.WriteBehindWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.bytebuddy.utility.RandomString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@ActiveProfiles("local")
+@DataJpaTest(properties = {"sdjpa.write-behind.enabled=true", "sdjpa.write-behind.flush-interval=1h"})
+@Import({AuthorDaoImpl.class, BookDaoImpl.class, NegativeLookupCache.class, WriteBehindConfiguration.class,
+        SimpleMeterRegistry.class})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class WriteBehindIntegrationTest {
+
+    @TempDir
+    static Path journals;
+
+    @DynamicPropertySource
+    static void journal(DynamicPropertyRegistry registry) {
+        registry.add("sdjpa.write-behind.journal", () -> journals.resolve("context.jsonl").toString());
+    }
+
+    @Autowired
+    WriteBehindWriter writer;
+
+    @Autowired
+    BookDao bookDao;
+
+    @Autowired
+    AuthorDao authorDao;
+
+    @Autowired
+    MeterRegistry registry;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    void testWritesCoalescedAndFlushed() throws Exception {
+        String isbn = "wb" + RandomString.make();
+        double coalesced = registry.counter("writebehind.coalesced").count();
+        writer.saveBook(new Book("first draft", isbn, "Self"));
+        writer.saveBook(new Book("second draft", isbn, "Self"));
+        writer.saveBook(new Book("final title", isbn, "Write Behind"));
+        Author author = author("Write", "Behind" + RandomString.make());
+        writer.saveAuthor(author);
+
+        assertThat(writer.depth()).isEqualTo(2);
+        assertThat(registry.counter("writebehind.coalesced").count()).isEqualTo(coalesced + 2);
+
+        writer.flush();
+
+        assertThat(writer.depth()).isZero();
+        Book book = bookDao.findByISBN(isbn);
+        assertThat(book.getTitle()).isEqualTo("final title");
+        assertThat(book.getPublisher()).isEqualTo("Write Behind");
+        assertThat(authorDao.findByName(author.getFirstName(), author.getLastName())).isPresent();
+        assertThat(Files.readAllLines(journals.resolve("context.jsonl"))).isEmpty();
+        assertThat(registry.timer("writebehind.flush", "outcome", "success").count()).isPositive();
+
+        // un upsert sobre un libro existente lo actualiza
+        writer.saveBook(new Book("second edition", isbn, "Write Behind"));
+        writer.flush();
+        assertThat(bookDao.findByISBN(isbn).getTitle()).isEqualTo("second edition");
+
+        bookDao.deleteBookById(book.getId());
+        authorDao.deleteAuthorById(authorDao.findAuthorByName(author.getFirstName(), author.getLastName()).getId());
+    }
+
+    @Test
+    void testJournalReplayedOnStartup() throws Exception {
+        String isbn = "wb" + RandomString.make();
+        Path journal = journals.resolve("crashed.jsonl");
+        // la última línea quedó a medias, no llegó a confirmarse
+        Files.write(journal, List.of(
+                "{\"type\":\"book\",\"isbn\":\"" + isbn + "\",\"title\":\"before crash\",\"publisher\":\"Self\"}",
+                "{\"type\":\"book\",\"isbn\":\"" + isbn + "\",\"title\":\"replayed\",\"publisher\":\"Self\"}",
+                "{\"type\":\"book\",\"isbn\":\"" + isbn + "\",\"title\":\"torn"));
+
+        WriteBehindWriter restarted = writer(journal, 10);
+        restarted.start();
+        try {
+            restarted.flush();
+        } finally {
+            restarted.destroy();
+        }
+
+        Book book = bookDao.findByISBN(isbn);
+        assertThat(book.getTitle()).isEqualTo("replayed");
+        assertThat(Files.readAllLines(journal)).isEmpty();
+        bookDao.deleteBookById(book.getId());
+    }
+
+    @Test
+    void testFailingWriteDoesNotBlockTheBatch() throws Exception {
+        Path journal = journals.resolve("poisoned.jsonl");
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        WriteBehindWriter poisoned = writer(journal, 10, meters);
+        List<String> isbns = List.of("wb" + RandomString.make(), "wb" + RandomString.make(),
+                "wb" + RandomString.make());
+        String badIsbn = "wb" + RandomString.make();
+        poisoned.start();
+        try {
+            poisoned.saveBook(new Book("good", isbns.get(0), "Self"));
+            // el autor no existe, falla la FK book_author_fk
+            Book bad = new Book("bad", badIsbn, "Self");
+            bad.setAuthor(new Author());
+            bad.getAuthor().setId(Long.MAX_VALUE);
+            poisoned.saveBook(bad);
+            poisoned.saveBook(new Book("good", isbns.get(1), "Self"));
+            poisoned.saveBook(new Book("good", isbns.get(2), "Self"));
+
+            poisoned.flush();
+        } finally {
+            poisoned.destroy();
+        }
+
+        assertThat(poisoned.depth()).isZero();
+        isbns.forEach(isbn -> assertThat(bookDao.lookupByISBN(isbn)).isPresent());
+        assertThat(bookDao.lookupByISBN(badIsbn)).isEmpty();
+        assertThat(Files.readAllLines(journal)).isEmpty();
+        assertThat(Files.readAllLines(journals.resolve("poisoned.jsonl.dead"))).singleElement()
+                .satisfies(line -> assertThat(line).contains(badIsbn));
+        assertThat(meters.counter("writebehind.dead.letters").count()).isEqualTo(1);
+
+        isbns.forEach(isbn -> bookDao.deleteBookById(bookDao.findByISBN(isbn).getId()));
+    }
+
+    @Test
+    void testFullQueueRejectsWrites() throws Exception {
+        Path journal = journals.resolve("full.jsonl");
+        // sin arrancar no hay flusher que haga sitio
+        WriteBehindWriter stalled = writer(journal, 1);
+        try {
+            stalled.saveBook(new Book("queued", "wb" + RandomString.make(), "Self"));
+
+            assertThatThrownBy(() -> stalled.saveBook(new Book("rejected", "wb" + RandomString.make(), "Self")))
+                    .isInstanceOf(RejectedExecutionException.class);
+            assertThat(stalled.depth()).isEqualTo(1);
+            assertThat(Files.readAllLines(journal)).hasSize(1);
+        } finally {
+            stalled.destroy();
+            Files.delete(journal);
+        }
+    }
+
+    @Test
+    void testConcurrentWritesAreAllJournaled() throws Exception {
+        Path journal = journals.resolve("group.jsonl");
+        // sin arrancar, todo lo aceptado sigue en el journal
+        WriteBehindWriter stalled = writer(journal, 1000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                writers.add(executor.submit(() -> {
+                    for (int j = 0; j < 50; j++) {
+                        stalled.saveBook(new Book("grouped", "wb" + RandomString.make(), "Self"));
+                    }
+                }));
+            }
+            for (Future<?> future : writers) {
+                future.get();
+            }
+
+            assertThat(stalled.depth()).isEqualTo(400);
+            assertThat(Files.readAllLines(journal)).hasSize(400);
+        } finally {
+            executor.shutdown();
+            stalled.destroy();
+            Files.delete(journal);
+        }
+    }
+
+    @Test
+    void testFlushFailsWhenTheJournalCannotBeRewritten() throws Exception {
+        Path journal = journals.resolve("unwritable.jsonl");
+        Path next = journals.resolve("unwritable.jsonl.next");
+        String isbn = "wb" + RandomString.make();
+        String later = "wb" + RandomString.make();
+        WriteBehindWriter unwritable = writer(journal, 10);
+        unwritable.start();
+        try {
+            // el journal nuevo no se puede crear donde hay un directorio
+            Files.createDirectory(next);
+            unwritable.saveBook(new Book("committed", isbn, "Self"));
+
+            assertThatThrownBy(unwritable::flush).isInstanceOf(IllegalStateException.class)
+                    .hasRootCauseInstanceOf(IOException.class);
+
+            // el flusher sigue vivo
+            Files.delete(next);
+            unwritable.saveBook(new Book("committed later", later, "Self"));
+            unwritable.flush();
+        } finally {
+            unwritable.destroy();
+        }
+
+        assertThat(bookDao.findByISBN(later).getTitle()).isEqualTo("committed later");
+        bookDao.deleteBookById(bookDao.findByISBN(isbn).getId());
+        bookDao.deleteBookById(bookDao.findByISBN(later).getId());
+    }
+
+    private WriteBehindWriter writer(Path journal, int capacity) {
+        return writer(journal, capacity, new SimpleMeterRegistry());
+    }
+
+    private WriteBehindWriter writer(Path journal, int capacity, MeterRegistry meters) {
+        WriteBehindProperties properties = new WriteBehindProperties();
+        properties.setJournal(journal);
+        properties.setCapacity(capacity);
+        properties.setOfferTimeout(Duration.ofMillis(50));
+        return new WriteBehindWriter(emf, transactionManager, CatalogShards.single(), meters, properties);
+    }
+
+    private static Author author(String firstName, String lastName) {
+        Author author = new Author();
+        author.setFirstName(firstName);
+        author.setLastName(lastName);
+        return author;
+    }
+}